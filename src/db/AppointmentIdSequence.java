@@ -0,0 +1,97 @@
+package db;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AppointmentIdSequence
+ * Monotonically increasing allocator of appointment IDs.
+ *
+ * IDs are taken from an atomic counter, so allocation is constant time and two
+ * concurrent bookings never receive the same ID. The counter is persisted by
+ * reserving IDs in blocks: before the first ID of a new block is handed out, the
+ * end of the block is recorded through the Store, so only one record is written
+ * per block. After a crash the counter resumes at the end of the last recorded
+ * block, skipping the unused rest of it rather than reusing an ID.
+ */
+public class AppointmentIdSequence {
+    private static final int BLOCK_SIZE = 64; /**< Number of IDs reserved per persisted record. */
+
+    /**
+     * Persists the end of a reserved block of IDs.
+     */
+    public interface Store {
+        void reserve(int limit) throws IOException;
+    }
+
+    private final AtomicInteger next = new AtomicInteger(1); /**< Next ID to hand out. */
+    private volatile int limit = 1; /**< First ID not covered by a persisted reservation. */
+    private final Store store; /**< Persists reservations. */
+
+    /**
+     * Constructs a sequence that persists its reservations to the given store.
+     *
+     * @param store Store for reserved blocks.
+     */
+    public AppointmentIdSequence(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Allocates the next appointment ID.
+     *
+     * @return A new, unique appointment ID.
+     * @throws IOException If a new block of IDs cannot be reserved.
+     */
+    public int next() throws IOException {
+        int id = next.getAndIncrement();
+        if (id >= limit) {
+            reserveThrough(id);
+        }
+        return id;
+    }
+
+    /**
+     * Reserves a block of IDs starting at or before an ID that is about to be handed out.
+     *
+     * @param id The ID being allocated.
+     * @throws IOException If the reservation cannot be persisted.
+     */
+    private synchronized void reserveThrough(int id) throws IOException {
+        if (id >= limit) {
+            int newLimit = id + BLOCK_SIZE;
+            store.reserve(newLimit);
+            limit = newLimit;
+        }
+    }
+
+    /**
+     * Moves the counter past an ID that is already in use, such as one loaded from disk.
+     *
+     * @param id An existing appointment ID.
+     */
+    public void advancePast(int id) {
+        next.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Restores the counter from a persisted reservation.
+     *
+     * @param reservedLimit End of a block reserved before a restart.
+     */
+    public synchronized void restore(int reservedLimit) {
+        next.accumulateAndGet(reservedLimit, Math::max);
+        limit = next.get();
+    }
+
+    /**
+     * Starts a new reservation period after the data files have been checkpointed.
+     * The next allocation reserves a fresh block.
+     *
+     * @return The next ID to hand out, to be persisted as the restart point.
+     */
+    public synchronized int checkpoint() {
+        limit = next.get();
+        return limit;
+    }
+}
@@ -0,0 +1,395 @@
+package db;
+
+import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
+import items.appointments.TimeSlot;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * AppointmentIndex
+ * Secondary indexes over the appointment list of TextDB.
+ *
+ * Appointments are indexed by ID, by doctor and date, by patient, by status and by
+ * doctor and status, so queries cost O(result) instead of a scan of every appointment.
+ * Each appointment remembers the keys it was indexed under; after an appointment is
+ * changed in place (status, doctor or time slot), refresh moves it to its new keys.
+ *
+ * Every entry carries its position in the appointment list, and query results are
+ * returned in list order, exactly like the stream filters they replace. The number of
+ * appointments with a status, overall or per doctor, is the size of its bucket, so
+ * counting costs O(1).
+ *
+ * The index also keeps an OccupancyMap current: an entry holds its time slot there
+ * while its status occupies the slot.
+ *
+ * Every method is synchronized on the index, so queries may run alongside changes
+ * made by other threads.
+ */
+public class AppointmentIndex {
+
+    /**
+     * An indexed appointment together with the keys it is filed under.
+     */
+    private static class Entry {
+        private final Appointment appointment; /**< The indexed appointment. */
+        private final long order; /**< Position of the appointment in the appointment list. */
+        private int id; /**< ID the entry is filed under. */
+        private String doctorId; /**< Doctor ID the entry is filed under. */
+        private LocalDate date; /**< Date the entry is filed under. */
+        private String patientId; /**< Patient ID the entry is filed under. */
+        private AppointmentStatus status; /**< Status the entry is filed under. */
+        private TimeSlot held; /**< Occupancy key held by the entry, or null if it holds no slot. */
+
+        private Entry(Appointment appointment, long order) {
+            this.appointment = appointment;
+            this.order = order;
+        }
+    }
+
+    private static final Comparator<Entry> LIST_ORDER = Comparator.comparingLong(entry -> entry.order); /**< Orders entries as in the appointment list. */
+
+    private final Map<Appointment, Entry> entries = new IdentityHashMap<>(); /**< Entry of every indexed appointment object. */
+    private final Map<Integer, NavigableMap<Long, Entry>> byId = new HashMap<>(); /**< Entries by appointment ID. */
+    private final Map<String, TreeMap<LocalDate, NavigableMap<Long, Entry>>> byDoctor = new HashMap<>(); /**< Entries by doctor, then date. */
+    private final Map<String, NavigableMap<Long, Entry>> byPatient = new HashMap<>(); /**< Entries by patient. */
+    private final Map<AppointmentStatus, NavigableMap<Long, Entry>> byStatus = new EnumMap<>(AppointmentStatus.class); /**< Entries by status. */
+    private final Map<String, Map<AppointmentStatus, NavigableMap<Long, Entry>>> byDoctorStatus = new HashMap<>(); /**< Entries by doctor, then status. */
+    private final OccupancyMap occupancy; /**< Booked slots, kept in step with the entries. */
+    private long nextOrder; /**< Position given to the next appended appointment. */
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param occupancy Occupancy map to keep in step with the indexed appointments.
+     */
+    public AppointmentIndex(OccupancyMap occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * Rebuilds the index from an appointment list.
+     *
+     * @param appointments Appointments in list order.
+     */
+    public synchronized void rebuild(List<Appointment> appointments) {
+        entries.clear();
+        byId.clear();
+        byDoctor.clear();
+        byPatient.clear();
+        byStatus.clear();
+        byDoctorStatus.clear();
+        occupancy.clear();
+        nextOrder = 0;
+        for (Appointment appointment : appointments) {
+            add(appointment);
+        }
+    }
+
+    /**
+     * Adds an appointment appended to the end of the appointment list.
+     *
+     * @param appointment The new appointment.
+     */
+    public synchronized void add(Appointment appointment) {
+        Entry entry = new Entry(appointment, nextOrder++);
+        entries.put(appointment, entry);
+        file(entry);
+    }
+
+    /**
+     * Replaces an appointment in place, keeping its position in the appointment list.
+     *
+     * @param previous    The appointment being replaced.
+     * @param appointment The replacement.
+     */
+    public synchronized void replace(Appointment previous, Appointment appointment) {
+        Entry old = entries.remove(previous);
+        if (old == null) {
+            add(appointment);
+            return;
+        }
+        unfile(old);
+        Entry entry = new Entry(appointment, old.order);
+        entries.put(appointment, entry);
+        file(entry);
+    }
+
+    /**
+     * Removes an appointment.
+     *
+     * @param appointment The removed appointment.
+     */
+    public synchronized void remove(Appointment appointment) {
+        Entry entry = entries.remove(appointment);
+        if (entry != null) {
+            unfile(entry);
+        }
+    }
+
+    /**
+     * Moves an appointment that was changed in place to its new keys.
+     *
+     * @param appointment The changed appointment.
+     */
+    public synchronized void refresh(Appointment appointment) {
+        Entry entry = entries.get(appointment);
+        if (entry == null) {
+            return;
+        }
+        unfile(entry);
+        file(entry);
+    }
+
+    /**
+     * Gets an appointment by ID.
+     *
+     * @param appointmentId The appointment ID.
+     * @return The first appointment in list order with that ID, or null if none exists.
+     */
+    public synchronized Appointment get(int appointmentId) {
+        NavigableMap<Long, Entry> matches = byId.get(appointmentId);
+        return matches == null ? null : matches.firstEntry().getValue().appointment;
+    }
+
+    /**
+     * Gets every appointment with an ID.
+     *
+     * @param appointmentId The appointment ID.
+     * @return Appointments with that ID, in list order.
+     */
+    public synchronized List<Appointment> getAll(int appointmentId) {
+        return toList(byId.get(appointmentId));
+    }
+
+    /**
+     * Gets the appointments of a doctor.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @return Appointments of the doctor, in list order.
+     */
+    public synchronized List<Appointment> getByDoctor(String doctorId) {
+        TreeMap<LocalDate, NavigableMap<Long, Entry>> dates = byDoctor.get(doctorId);
+        return dates == null ? new ArrayList<>() : merge(dates.values());
+    }
+
+    /**
+     * Gets the appointments of a doctor on a date.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date of the appointments.
+     * @return Appointments of the doctor on that date, in list order.
+     */
+    public synchronized List<Appointment> getByDoctorAndDate(String doctorId, LocalDate date) {
+        TreeMap<LocalDate, NavigableMap<Long, Entry>> dates = byDoctor.get(doctorId);
+        return dates == null ? new ArrayList<>() : toList(dates.get(date));
+    }
+
+    /**
+     * Gets the appointments of a doctor on or after a date.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param from     The earliest date to include.
+     * @return Appointments of the doctor from that date on, in list order.
+     */
+    public synchronized List<Appointment> getByDoctorFrom(String doctorId, LocalDate from) {
+        TreeMap<LocalDate, NavigableMap<Long, Entry>> dates = byDoctor.get(doctorId);
+        return dates == null ? new ArrayList<>() : merge(dates.tailMap(from, true).values());
+    }
+
+    /**
+     * Gets the appointments of a patient.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return Appointments of the patient, in list order.
+     */
+    public synchronized List<Appointment> getByPatient(String patientId) {
+        return toList(byPatient.get(patientId));
+    }
+
+    /**
+     * Gets the appointments with a status.
+     *
+     * @param status The status.
+     * @return Appointments with that status, in list order.
+     */
+    public synchronized List<Appointment> getByStatus(AppointmentStatus status) {
+        return toList(byStatus.get(status));
+    }
+
+    /**
+     * Gets the appointments of a doctor with a status.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param status   The status.
+     * @return Appointments of the doctor with that status, in list order.
+     */
+    public synchronized List<Appointment> getByDoctorAndStatus(String doctorId, AppointmentStatus status) {
+        return toList(getDoctorStatusBucket(doctorId, status));
+    }
+
+    /**
+     * Counts the appointments with a status.
+     *
+     * @param status The status.
+     * @return Number of appointments with that status.
+     */
+    public synchronized int countByStatus(AppointmentStatus status) {
+        return size(byStatus.get(status));
+    }
+
+    /**
+     * Counts the appointments of a doctor with a status.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param status   The status.
+     * @return Number of appointments of the doctor with that status.
+     */
+    public synchronized int countByDoctorAndStatus(String doctorId, AppointmentStatus status) {
+        return size(getDoctorStatusBucket(doctorId, status));
+    }
+
+    /**
+     * Gets the status an appointment is indexed under, which differs from its current
+     * status while a change made in place has not been refreshed yet.
+     *
+     * @param appointment The appointment.
+     * @return The indexed status, or null if the appointment is not indexed.
+     */
+    public synchronized AppointmentStatus getIndexedStatus(Appointment appointment) {
+        Entry entry = entries.get(appointment);
+        return entry == null ? null : entry.status;
+    }
+
+    /**
+     * Gets the doctor an appointment is indexed under.
+     *
+     * @param appointment The appointment.
+     * @return The indexed doctor ID, or null if the appointment is not indexed.
+     */
+    public synchronized String getIndexedDoctorId(Appointment appointment) {
+        Entry entry = entries.get(appointment);
+        return entry == null ? null : entry.doctorId;
+    }
+
+    /**
+     * Gets the date an appointment is indexed under.
+     *
+     * @param appointment The appointment.
+     * @return The indexed date, or null if the appointment is not indexed.
+     */
+    public synchronized LocalDate getIndexedDate(Appointment appointment) {
+        Entry entry = entries.get(appointment);
+        return entry == null ? null : entry.date;
+    }
+
+    /**
+     * Gets the time slot an appointment holds in the occupancy map.
+     *
+     * @param appointment The appointment.
+     * @return The held slot, or null if the appointment holds no slot or is not indexed.
+     */
+    public synchronized TimeSlot getHeldSlot(Appointment appointment) {
+        Entry entry = entries.get(appointment);
+        return entry == null ? null : entry.held;
+    }
+
+    /**
+     * Files an entry under the current keys of its appointment.
+     */
+    private void file(Entry entry) {
+        Appointment appointment = entry.appointment;
+        entry.id = appointment.getId();
+        entry.doctorId = appointment.getDoctorId();
+        entry.date = appointment.getDate();
+        entry.patientId = appointment.getPatientId();
+        entry.status = appointment.getStatus();
+
+        byId.computeIfAbsent(entry.id, key -> new TreeMap<>()).put(entry.order, entry);
+        byDoctor.computeIfAbsent(entry.doctorId, key -> new TreeMap<>())
+                .computeIfAbsent(entry.date, key -> new TreeMap<>()).put(entry.order, entry);
+        byPatient.computeIfAbsent(entry.patientId, key -> new TreeMap<>()).put(entry.order, entry);
+        byStatus.computeIfAbsent(entry.status, key -> new TreeMap<>()).put(entry.order, entry);
+        byDoctorStatus.computeIfAbsent(entry.doctorId, key -> new EnumMap<>(AppointmentStatus.class))
+                .computeIfAbsent(entry.status, key -> new TreeMap<>()).put(entry.order, entry);
+        entry.held = entry.status.occupiesSlot() ? occupancy.hold(entry.doctorId, appointment.getTimeSlot()) : null;
+    }
+
+    /**
+     * Removes an entry from the keys it was filed under.
+     */
+    private void unfile(Entry entry) {
+        removeFrom(byId, entry.id, entry);
+        TreeMap<LocalDate, NavigableMap<Long, Entry>> dates = byDoctor.get(entry.doctorId);
+        if (dates != null) {
+            removeFrom(dates, entry.date, entry);
+            if (dates.isEmpty()) {
+                byDoctor.remove(entry.doctorId);
+            }
+        }
+        removeFrom(byPatient, entry.patientId, entry);
+        removeFrom(byStatus, entry.status, entry);
+        Map<AppointmentStatus, NavigableMap<Long, Entry>> statuses = byDoctorStatus.get(entry.doctorId);
+        if (statuses != null) {
+            removeFrom(statuses, entry.status, entry);
+            if (statuses.isEmpty()) {
+                byDoctorStatus.remove(entry.doctorId);
+            }
+        }
+        if (entry.held != null) {
+            occupancy.release(entry.doctorId, entry.held);
+            entry.held = null;
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableMap<Long, Entry>> index, K key, Entry entry) {
+        NavigableMap<Long, Entry> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(entry.order);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<Appointment> toList(NavigableMap<Long, Entry> bucket) {
+        List<Appointment> result = new ArrayList<>(bucket == null ? 0 : bucket.size());
+        if (bucket != null) {
+            for (Entry entry : bucket.values()) {
+                result.add(entry.appointment);
+            }
+        }
+        return result;
+    }
+
+    private static List<Appointment> merge(Collection<NavigableMap<Long, Entry>> buckets) {
+        List<Entry> merged = new ArrayList<>();
+        for (NavigableMap<Long, Entry> bucket : buckets) {
+            merged.addAll(bucket.values());
+        }
+        merged.sort(LIST_ORDER);
+        List<Appointment> result = new ArrayList<>(merged.size());
+        for (Entry entry : merged) {
+            result.add(entry.appointment);
+        }
+        return result;
+    }
+
+    private NavigableMap<Long, Entry> getDoctorStatusBucket(String doctorId, AppointmentStatus status) {
+        Map<AppointmentStatus, NavigableMap<Long, Entry>> statuses = byDoctorStatus.get(doctorId);
+        return statuses == null ? null : statuses.get(status);
+    }
+
+    private static int size(NavigableMap<Long, Entry> bucket) {
+        return bucket == null ? 0 : bucket.size();
+    }
+}
@@ -1,9 +1,7 @@
 package db;
 
 import items.appointments.Appointment;
-import items.appointments.TimeSlot;
 import java.io.IOException;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -18,8 +16,6 @@ import java.util.List;
  */
 public class AppointmentsLoader extends DataLoader<Appointment> {
     private List<Appointment> appointments;   /**< List of appointments loaded from the file */
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); /**< Formatter for date */
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");      /**< Formatter for time */
 
     /**
      * Constructs an AppointmentsLoader with a specified file path.
@@ -38,11 +34,8 @@ public class AppointmentsLoader extends DataLoader<Appointment> {
      */
     @Override
     public void loadData() throws IOException {
-        List<String> lines = read(filePath);
         appointments.clear();
-        for (String line : lines) {
-            appointments.add(deserialize(line));
-        }
+        loadInParallelChunks(appointments);
     }
 
     /**
@@ -70,21 +63,7 @@ public class AppointmentsLoader extends DataLoader<Appointment> {
      * @throws IllegalArgumentException if the appointment data is invalid.
      */
     protected Appointment deserialize(String appointmentData) {
-        String[] fields = appointmentData.split("\\" + SEPARATOR);
-        
-        if (fields.length < 6) {
-            System.err.println("Invalid appointment data: " + appointmentData);
-            throw new IllegalArgumentException("Invalid appointment data: " + appointmentData);
-        }
-    
-        int id = Integer.parseInt(fields[0]);
-        String patientId = fields[1];
-        String doctorId = fields[2];
-        TimeSlot timeSlot = TimeSlot.parse(fields[3]);
-        String status = fields[4];
-        String outcomeRecord = fields[5];
-    
-        return new Appointment(id, patientId, doctorId, timeSlot, status, outcomeRecord);
+        return RecordCodec.decodeAppointment(appointmentData);
     }
 
     /**
@@ -103,23 +82,18 @@ public class AppointmentsLoader extends DataLoader<Appointment> {
      * @return Serialized string representation of the Appointment.
      */
     protected String serialize(Appointment appointment) {
-        return String.join(SEPARATOR,
-                String.valueOf(appointment.getId()),
-                appointment.getPatientId(),
-                appointment.getDoctorId(),
-                serializeTimeSlot(appointment.getTimeSlot()),
-                appointment.getStatus(),
-                appointment.getOutcomeRecord());
+        return RecordCodec.encodeAppointment(appointment);
     }
 
     /**
-     * Serializes a TimeSlot object into a formatted string.
-     * 
-     * @param timeSlot TimeSlot object to serialize.
-     * @return Serialized string representation of the TimeSlot.
+     * Hands the loaded Appointment objects over to the caller without copying them.
+     *
+     * @return Mutable list of the loaded Appointment objects.
      */
-    private static String serializeTimeSlot(TimeSlot timeSlot) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
-        return timeSlot.getStartTime().format(formatter) + "-" + timeSlot.getEndTime().format(formatter);
+    @Override
+    List<Appointment> detachData() {
+        List<Appointment> loaded = appointments;
+        appointments = new ArrayList<>();
+        return loaded;
     }
 }
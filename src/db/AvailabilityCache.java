@@ -0,0 +1,213 @@
+package db;
+
+import items.appointments.Schedule;
+import items.appointments.TimeSlot;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * AvailabilityCache
+ * Bounded LRU cache of the free slots of each (doctor, date).
+ *
+ * Entries are dropped when the occupancy of their doctor-day changes and when a
+ * doctor's schedule is replaced. Each entry also remembers the schedule it was
+ * computed from and that schedule's version, so a schedule changed in place is never
+ * served stale, even if the change bypassed TextDB.
+ *
+ * Every hit returns a new list, so callers may change the list they are given.
+ *
+ * Free slots may be computed without a lock while another thread books a slot. To
+ * keep such a result out of the cache, callers read getInvalidations before
+ * computing and pass it to put, which ignores the result if anything was
+ * invalidated in between.
+ */
+public class AvailabilityCache {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("hms.availabilityCacheSize", 1024); /**< Default number of cached doctor-days. */
+
+    /**
+     * A doctor and a date.
+     */
+    private static final class Key {
+        private final String doctorId; /**< The doctor's hospital ID. */
+        private final LocalDate date;  /**< The date. */
+
+        private Key(String doctorId, LocalDate date) {
+            this.doctorId = doctorId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return doctorId.equals(key.doctorId) && date.equals(key.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, date);
+        }
+    }
+
+    /**
+     * Free slots of a doctor-day and the schedule they were computed from.
+     */
+    private static final class Entry {
+        private final Schedule schedule; /**< Schedule the slots were computed from. */
+        private final long version;      /**< Version of the schedule at that time. */
+        private final List<TimeSlot> slots; /**< The free slots. */
+
+        private Entry(Schedule schedule, long version, List<TimeSlot> slots) {
+            this.schedule = schedule;
+            this.version = version;
+            this.slots = slots;
+        }
+    }
+
+    private final int capacity; /**< Maximum number of cached doctor-days. */
+    private final Map<Key, Entry> entries; /**< Cached doctor-days, least recently used first. */
+    private long hits;      /**< Lookups answered from the cache. */
+    private long misses;    /**< Lookups that had to be computed. */
+    private long evictions; /**< Entries dropped to stay within the capacity. */
+    private long invalidations; /**< Number of invalidate, invalidateDoctor and clear calls. */
+
+    /**
+     * Constructs a cache holding up to the given number of doctor-days.
+     *
+     * @param capacity Maximum number of cached doctor-days.
+     */
+    public AvailabilityCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > AvailabilityCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached free slots of a doctor-day.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date.
+     * @param schedule The doctor's current schedule.
+     * @return A new list of the free slots, or null if they are not cached or were computed from another schedule state.
+     */
+    public synchronized List<TimeSlot> get(String doctorId, LocalDate date, Schedule schedule) {
+        Key key = new Key(doctorId, date);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.schedule != schedule || entry.version != schedule.getVersion()) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(entry.slots);
+    }
+
+    /**
+     * Caches the free slots of a doctor-day, unless an invalidation happened while they were computed.
+     *
+     * @param doctorId      The doctor's hospital ID.
+     * @param date          The date.
+     * @param schedule      The schedule the slots were computed from.
+     * @param slots         The free slots; copied.
+     * @param invalidations Value of getInvalidations read before the slots were computed.
+     */
+    public synchronized void put(String doctorId, LocalDate date, Schedule schedule, List<TimeSlot> slots, long invalidations) {
+        if (invalidations != this.invalidations) {
+            return;
+        }
+        entries.put(new Key(doctorId, date), new Entry(schedule, schedule.getVersion(), new ArrayList<>(slots)));
+    }
+
+    /**
+     * Drops the cached free slots of a doctor-day.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date.
+     */
+    public synchronized void invalidate(String doctorId, LocalDate date) {
+        invalidations++;
+        entries.remove(new Key(doctorId, date));
+    }
+
+    /**
+     * Drops every cached date of a doctor.
+     *
+     * @param doctorId The doctor's hospital ID.
+     */
+    public synchronized void invalidateDoctor(String doctorId) {
+        invalidations++;
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().doctorId.equals(doctorId)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached doctor-day.
+     */
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return Number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to be computed.
+     * @return Number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries dropped to stay within the capacity.
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of invalidations so far.
+     * @return Number of invalidate, invalidateDoctor and clear calls.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Gets the number of cached doctor-days.
+     * @return Number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
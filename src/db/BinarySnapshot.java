@@ -0,0 +1,639 @@
+package db;
+
+import items.Medication;
+import items.ReplenishmentRequest;
+import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
+import items.appointments.TimeSlot;
+import items.appointments.WeeklyTemplate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import user_classes.User;
+
+/**
+ * BinarySnapshot
+ * Compact binary copy of the five text data files, used for fast startup.
+ *
+ * The snapshot is compiled from the text files, which stay the source of truth: it records
+ * a fingerprint (size, modification time and file key) of every text file it was built from,
+ * and is only loaded while all fingerprints still match. Any change to a text file therefore
+ * makes the snapshot stale and TextDB falls back to parsing text until it is rebuilt.
+ *
+ * Layout, all integers as unsigned or zigzag varints:
+ * magic, version, fingerprints, string dictionary, then one section per data file
+ * (users, appointments, medications, replenishment requests, schedules),
+ * each a record count followed by length-prefixed records, and a trailing CRC32.
+ * Strings are stored once in the dictionary and referenced by index (0 is null), and
+ * dates are stored as epoch days, so loading needs neither String.split nor date parsing.
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x484D5353; /**< "HMSS" file signature. */
+    private static final int VERSION = 4; /**< Format version; snapshots of other versions are ignored. */
+    private static final String[] SOURCE_FILES = {
+        "users.txt", "appts.txt", "inventory.txt", "replenishment_requests.txt", "schedules.txt"
+    }; /**< Text files the snapshot is compiled from, in section order. */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); /**< Date format of the text files. */
+    private static final byte SCHEDULE_ENTRY = 0; /**< Schedule record holding a doctor's ranges on one date. */
+    private static final byte SCHEDULE_INVALID = 1; /**< Schedule record holding the message for a malformed line. */
+    private static final byte SCHEDULE_LINE = 2; /**< Schedule record holding a weekly template line as written. */
+    private static final char FINGERPRINT_SEPARATOR = '|'; /**< Separator between the parts of a fingerprint. */
+    private static final int HEADER_LIMIT = 4096; /**< Bytes read when only the header is needed. */
+
+    /**
+     * Callback receiving the schedule entries of a snapshot.
+     */
+    public interface ScheduleSink {
+        void apply(String doctorId, LocalDate date, int[] ranges);
+    }
+
+    private final Path path; /**< Location of the snapshot file. */
+
+    /**
+     * Constructs a BinarySnapshot stored at the given location.
+     *
+     * @param fileName Name of the snapshot file.
+     */
+    public BinarySnapshot(String fileName) {
+        this.path = Paths.get(fileName);
+    }
+
+    /**
+     * Checks whether the snapshot exists, has the current version and matches every text file.
+     *
+     * @return True if the snapshot can be loaded instead of the text files.
+     */
+    public boolean isFresh() {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            Decoder decoder = new Decoder(ByteBuffer.wrap(in.readNBytes(HEADER_LIMIT)));
+            return readHeader(decoder) && decoder.readFingerprints().equals(fingerprints());
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from the text files unless it is already fresh.
+     *
+     * @throws IOException If a text file cannot be read or the snapshot cannot be written.
+     */
+    public void refresh() throws IOException {
+        if (isFresh()) {
+            return;
+        }
+        List<String> before = fingerprints();
+        if (before == null) {
+            Files.deleteIfExists(path); // A text file is missing, so text loading is authoritative
+            return;
+        }
+
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Encoder body = new Encoder(dictionary, strings);
+        Encoder record = new Encoder(dictionary, strings);
+
+        List<String> userLines = LineReader.readLines(SOURCE_FILES[0]);
+        body.putVarInt(userLines.size());
+        for (String line : userLines) {
+            encodeUser(record, line);
+            body.putRecord(record);
+        }
+
+        AppointmentsLoader appointmentsLoader = new AppointmentsLoader(SOURCE_FILES[1]);
+        appointmentsLoader.loadData();
+        List<Appointment> appointments = appointmentsLoader.detachData();
+        body.putVarInt(appointments.size());
+        for (Appointment appointment : appointments) {
+            encodeAppointment(record, appointment);
+            body.putRecord(record);
+        }
+
+        MedicationInventoryLoader medicationLoader = new MedicationInventoryLoader(SOURCE_FILES[2]);
+        medicationLoader.loadData();
+        List<Medication> medications = medicationLoader.detachData();
+        body.putVarInt(medications.size());
+        for (Medication medication : medications) {
+            record.putString(medication.getName());
+            record.putSignedVarLong(medication.getQuantity());
+            record.putString(medication.getSupplier());
+            body.putRecord(record);
+        }
+
+        ReplenishmentRequestsLoader replenishmentLoader = new ReplenishmentRequestsLoader(SOURCE_FILES[3]);
+        replenishmentLoader.loadData();
+        List<ReplenishmentRequest> requests = replenishmentLoader.detachData();
+        body.putVarInt(requests.size());
+        for (ReplenishmentRequest request : requests) {
+            record.putString(request.getMedicationName());
+            record.putSignedVarLong(request.getQuantity());
+            record.putString(request.getRequestedBy());
+            record.putDate(request.getRequestDate());
+            body.putRecord(record);
+        }
+
+        List<String> scheduleLines = LineReader.readLines(SOURCE_FILES[4]);
+        body.putVarInt(scheduleLines.size());
+        for (String line : scheduleLines) {
+            encodeScheduleLine(record, line);
+            body.putRecord(record);
+        }
+
+        if (!before.equals(fingerprints())) {
+            return; // A text file changed while the snapshot was being built
+        }
+
+        Encoder file = new Encoder(null, null);
+        file.putVarInt(MAGIC);
+        file.putVarInt(VERSION);
+        file.putVarInt(before.size());
+        for (String fingerprint : before) {
+            file.putRawString(fingerprint);
+        }
+        file.putVarInt(strings.size());
+        for (String string : strings) {
+            file.putRawString(string);
+        }
+        file.putBytes(body.bytes, 0, body.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(file.bytes, 0, file.length);
+        file.putFixedInt((int) crc.getValue());
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        DurableFileWriter.write(path.toString(), Arrays.copyOf(file.bytes, file.length));
+    }
+
+    /**
+     * Opens the snapshot for loading.
+     *
+     * The sections must be read in file order: users, appointments,
+     * medications, replenishment requests and schedules.
+     *
+     * @return Reader positioned at the first section.
+     * @throws IOException If the snapshot cannot be read, is stale, or is corrupted.
+     */
+    public Reader open() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Decoder decoder = new Decoder(buffer);
+        try {
+            if (!readHeader(decoder) || !decoder.readFingerprints().equals(fingerprints())) {
+                throw new IOException("Binary snapshot " + path + " is stale");
+            }
+
+            int dictionarySize = decoder.getVarInt();
+            String[] strings = new String[dictionarySize + 1];
+            for (int i = 1; i <= dictionarySize; i++) {
+                strings[i] = decoder.getRawString();
+            }
+            decoder.strings = strings;
+
+            // The checksum covers everything before it, so verify it before handing out records
+            int crcStart = bytes.length - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, crcStart);
+            if (crcStart < buffer.position() || buffer.getInt(crcStart) != (int) crc.getValue()) {
+                throw new IOException("Binary snapshot " + path + " failed its checksum");
+            }
+            buffer.limit(crcStart);
+        } catch (RuntimeException e) {
+            throw new IOException("Binary snapshot " + path + " is corrupted", e);
+        }
+        return new Reader(decoder);
+    }
+
+    /**
+     * Deletes the snapshot so that the next start parses the text files.
+     *
+     * @throws IOException If the snapshot cannot be deleted.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Reads and checks the magic number and version.
+     *
+     * @param decoder Decoder positioned at the start of the file.
+     * @return True if the file is a snapshot of the current version.
+     */
+    private static boolean readHeader(Decoder decoder) {
+        return decoder.getVarInt() == MAGIC && decoder.getVarInt() == VERSION;
+    }
+
+    /**
+     * Computes the fingerprints of the text files.
+     *
+     * @return One fingerprint per source file, or null if any of them is missing.
+     */
+    private static List<String> fingerprints() {
+        List<String> fingerprints = new ArrayList<>(SOURCE_FILES.length);
+        for (String fileName : SOURCE_FILES) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Paths.get(fileName), BasicFileAttributes.class);
+                fingerprints.add(fileName + FINGERPRINT_SEPARATOR + attributes.size()
+                        + FINGERPRINT_SEPARATOR + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                        + FINGERPRINT_SEPARATOR + attributes.fileKey());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Encodes a users.txt line without constructing the user, since constructing a
+     * Patient links it to TextDB.
+     *
+     * @param record Encoder receiving the record.
+     * @param line Line of the form hospitalID|password|name|dateOfBirth|gender|role.
+     */
+    private static void encodeUser(Encoder record, String line) {
+        String[] fields = line.split("\\" + TextDB.SEPARATOR);
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("Invalid user data: " + line);
+        }
+        record.putString(fields[0]);
+        record.putString(fields[1]);
+        record.putString(fields[2]);
+        record.putDate(LocalDate.parse(fields[3], DATE_FORMATTER));
+        record.putString(fields[4]);
+        record.putString(fields[5]);
+    }
+
+    /**
+     * Encodes an appointment, storing the time slot bounds as epoch minutes.
+     *
+     * @param record Encoder receiving the record.
+     * @param appointment Appointment parsed from appts.txt.
+     */
+    private static void encodeAppointment(Encoder record, Appointment appointment) {
+        record.putSignedVarLong(appointment.getId());
+        record.putString(appointment.getPatientId());
+        record.putString(appointment.getDoctorId());
+        record.putSignedVarLong(appointment.getTimeSlot().getStartMinute());
+        record.putSignedVarLong(appointment.getTimeSlot().getEndMinute());
+        record.putString(appointment.getStatus().getLabel());
+        record.putString(appointment.getOutcomeRecord());
+    }
+
+    /**
+     * Encodes a schedules.txt line, keeping the messages the text loader would report for it.
+     *
+     * @param record Encoder receiving the record.
+     * @param line Line of the form doctorId|date|start-end,start-end,...
+     */
+    private static void encodeScheduleLine(Encoder record, String line) {
+        String[] fields = line.split("\\" + TextDB.SEPARATOR);
+        if (fields.length >= 2 && fields[1].equals(WeeklyTemplate.MARKER)) {
+            record.putVarInt(SCHEDULE_LINE);
+            record.putString(line);
+            return;
+        }
+        if (fields.length < 3) {
+            record.putVarInt(SCHEDULE_INVALID);
+            record.putString("Invalid schedule entry: " + line);
+            return;
+        }
+
+        LocalDate date = LocalDate.parse(fields[1], DATE_FORMATTER);
+        List<String> warnings = new ArrayList<>();
+        int[] ranges = TextDB.parseTimeRanges(fields[2], warnings::add);
+
+        record.putVarInt(SCHEDULE_ENTRY);
+        record.putString(fields[0]);
+        record.putDate(date);
+        record.putVarInt(warnings.size());
+        for (String warning : warnings) {
+            record.putString(warning);
+        }
+        record.putVarInt(ranges.length);
+        for (int minute : ranges) {
+            record.putVarInt(minute);
+        }
+    }
+
+    /**
+     * Reader
+     * Sequential access to the sections of an opened snapshot.
+     */
+    public static class Reader {
+        private final Decoder decoder; /**< Decoder positioned at the next section. */
+
+        /**
+         * Constructs a Reader over a decoder positioned at the first section.
+         *
+         * @param decoder Decoder of the snapshot.
+         */
+        private Reader(Decoder decoder) {
+            this.decoder = decoder;
+        }
+
+        /**
+         * Reads the users section. Patients look up their medical record in TextDB while
+         * being constructed, so the medical records must already be in place.
+         *
+         * @return Mutable list of users, in file order.
+         */
+        public List<User> readUsers() {
+            int count = decoder.getVarInt();
+            List<User> users = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int end = decoder.beginRecord();
+                String hospitalID = decoder.getString();
+                String password = decoder.getString();
+                String name = decoder.getString();
+                LocalDate dateOfBirth = decoder.getDate();
+                String gender = decoder.getString();
+                String role = decoder.getString();
+                users.add(UsersLoader.createUser(hospitalID, password, name, dateOfBirth, gender, role));
+                decoder.endRecord(end);
+            }
+            return users;
+        }
+
+        /**
+         * Reads the appointments section.
+         *
+         * @return Mutable list of appointments, in file order.
+         */
+        public List<Appointment> readAppointments() {
+            int count = decoder.getVarInt();
+            List<Appointment> appointments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int end = decoder.beginRecord();
+                int id = (int) decoder.getSignedVarLong();
+                String patientId = decoder.getString();
+                String doctorId = decoder.getString();
+                TimeSlot timeSlot = TimeSlot.ofEpochMinutes(decoder.getSignedVarLong(), decoder.getSignedVarLong()).intern();
+                AppointmentStatus status = AppointmentStatus.fromString(decoder.getString());
+                String outcomeRecord = decoder.getString();
+                appointments.add(new Appointment(id, patientId, doctorId, timeSlot, status, outcomeRecord));
+                decoder.endRecord(end);
+            }
+            return appointments;
+        }
+
+        /**
+         * Reads the medication inventory section.
+         *
+         * @return Mutable list of medications, in file order.
+         */
+        public List<Medication> readMedications() {
+            int count = decoder.getVarInt();
+            List<Medication> medications = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int end = decoder.beginRecord();
+                String name = decoder.getString();
+                int quantity = (int) decoder.getSignedVarLong();
+                medications.add(new Medication(name, quantity, decoder.getString()));
+                decoder.endRecord(end);
+            }
+            return medications;
+        }
+
+        /**
+         * Reads the replenishment requests section.
+         *
+         * @return Mutable list of replenishment requests, in file order.
+         */
+        public List<ReplenishmentRequest> readReplenishmentRequests() {
+            int count = decoder.getVarInt();
+            List<ReplenishmentRequest> requests = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int end = decoder.beginRecord();
+                String medicationName = decoder.getString();
+                int quantity = (int) decoder.getSignedVarLong();
+                String requestedBy = decoder.getString();
+                requests.add(new ReplenishmentRequest(medicationName, quantity, requestedBy, decoder.getDate()));
+                decoder.endRecord(end);
+            }
+            return requests;
+        }
+
+        /**
+         * Reads the schedules section, reporting malformed entries the same way the text loader does.
+         *
+         * @param sink      Receives each doctor's ranges on each date, in file order.
+         * @param templates Receives each weekly template line, in file order.
+         */
+        public void readSchedules(ScheduleSink sink, Consumer<String> templates) {
+            int count = decoder.getVarInt();
+            for (int i = 0; i < count; i++) {
+                int end = decoder.beginRecord();
+                int tag = decoder.getVarInt();
+                if (tag == SCHEDULE_INVALID) {
+                    System.err.println(decoder.getString());
+                } else if (tag == SCHEDULE_LINE) {
+                    templates.accept(decoder.getString());
+                } else {
+                    String doctorId = decoder.getString();
+                    LocalDate date = decoder.getDate();
+                    int warningCount = decoder.getVarInt();
+                    for (int w = 0; w < warningCount; w++) {
+                        System.err.println(decoder.getString());
+                    }
+                    int[] ranges = new int[decoder.getVarInt()];
+                    for (int r = 0; r < ranges.length; r++) {
+                        ranges[r] = decoder.getVarInt();
+                    }
+                    sink.apply(doctorId, date, ranges);
+                }
+                decoder.endRecord(end);
+            }
+        }
+    }
+
+    /**
+     * Growable byte buffer with varint and dictionary string encoding.
+     */
+    private static class Encoder {
+        private byte[] bytes = new byte[4096]; /**< Encoded bytes. */
+        private int length; /**< Number of bytes in use. */
+        private final Map<String, Integer> dictionary; /**< Dictionary index of every string seen so far. */
+        private final List<String> strings; /**< Dictionary strings in index order. */
+
+        private Encoder(Map<String, Integer> dictionary, List<String> strings) {
+            this.dictionary = dictionary;
+            this.strings = strings;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void putVarInt(int value) {
+            putVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void putSignedVarLong(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void putBytes(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        private void putFixedInt(int value) {
+            ensure(Integer.BYTES);
+            ByteBuffer.wrap(bytes, length, Integer.BYTES).putInt(value);
+            length += Integer.BYTES;
+        }
+
+        private void putRawString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(encoded.length);
+            putBytes(encoded, 0, encoded.length);
+        }
+
+        /**
+         * Writes a dictionary reference; 0 stands for null.
+         */
+        private void putString(String value) {
+            if (value == null) {
+                putVarInt(0);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                strings.add(value);
+                index = strings.size();
+                dictionary.put(value, index);
+            }
+            putVarInt(index);
+        }
+
+        /**
+         * Writes a date as epoch day + 1; 0 stands for null.
+         */
+        private void putDate(LocalDate date) {
+            putSignedVarLong(date == null ? 0 : date.toEpochDay() + 1);
+        }
+
+        /**
+         * Appends another encoder's content as a length-prefixed record and clears it.
+         */
+        private void putRecord(Encoder record) {
+            putVarInt(record.length);
+            putBytes(record.bytes, 0, record.length);
+            record.length = 0;
+        }
+    }
+
+    /**
+     * Reader for the encoding produced by Encoder.
+     */
+    private static class Decoder {
+        private final ByteBuffer buffer; /**< Bytes being decoded. */
+        private String[] strings; /**< Dictionary, indexed from 1. */
+
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private long getVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed varint");
+        }
+
+        private int getVarInt() {
+            return (int) getVarLong();
+        }
+
+        private long getSignedVarLong() {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String getRawString() {
+            int count = getVarInt();
+            String value = new String(buffer.array(), buffer.position(), count, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + count);
+            return value;
+        }
+
+        private String getString() {
+            return strings[getVarInt()];
+        }
+
+        private LocalDate getDate() {
+            long value = getSignedVarLong();
+            return value == 0 ? null : LocalDate.ofEpochDay(value - 1);
+        }
+
+        private List<String> readFingerprints() {
+            int count = getVarInt();
+            List<String> fingerprints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                fingerprints.add(getRawString());
+            }
+            return fingerprints;
+        }
+
+        /**
+         * Reads a record length prefix.
+         *
+         * @return Position at which the record ends.
+         */
+        private int beginRecord() {
+            int length = getVarInt();
+            int end = buffer.position() + length;
+            if (length < 0 || end > buffer.limit()) {
+                throw new IllegalStateException("Record extends past the end of the snapshot");
+            }
+            return end;
+        }
+
+        /**
+         * Checks that a record was consumed exactly.
+         *
+         * @param end Position returned by beginRecord.
+         */
+        private void endRecord(int end) {
+            if (buffer.position() != end) {
+                throw new IllegalStateException("Record length mismatch in snapshot");
+            }
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package db;
 
 import db.db_interface.DataLoadInterface;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * DataLoader
@@ -22,6 +19,7 @@ import java.util.Scanner;
 public abstract class DataLoader<T> implements DataLoadInterface{  // Generic type T to represent the type of object we are loading
     protected String filePath; /**< Path to the file from which data is loaded and saved. */
     public static final String SEPARATOR = "|"; /**< Separator used in serialized data representation. */
+    protected static final int PARALLEL_CHUNK_LINES = 4096; /**< Lines per chunk when parsing a large file in parallel. */
 
     /**
      * Constructs a DataLoader with the specified file path.
@@ -34,50 +32,87 @@ public abstract class DataLoader<T> implements DataLoadInterface{  // Generic ty
 
     /**
      * Reads all lines from a specified file.
+     * Loaders that do not need the whole file at once should use LineReader.forEachLine.
      *
      * @param fileName Name of the file to read data from.
      * @return List of strings, each representing a line from the file.
      * @throws IOException If an I/O error occurs while reading the file.
      */
     public static List<String> read(String fileName) throws IOException {
-        List<String> data = new ArrayList<>();
-        FileInputStream fis = null;
-        Scanner scanner = null;
-        try {
-            fis = new FileInputStream(fileName);
-            scanner = new Scanner(fis);
-            while (scanner.hasNextLine()) {
-                data.add(scanner.nextLine());
-            }
-        } finally {
-            if (scanner != null) {
-                scanner.close();
-            }
-            if (fis != null) {
-                fis.close();
-            }
-        }
-        return data;
+        return LineReader.readLines(fileName);
     }
 
     /**
      * Writes a list of strings to a specified file.
+     * The file is replaced atomically through DurableFileWriter.
      *
      * @param fileName Name of the file to write data to.
      * @param data List of strings to be written to the file.
      * @throws IOException If an I/O error occurs while writing the file.
      */
     public static void write(String fileName, List<String> data) throws IOException {
-        PrintWriter out = new PrintWriter(new FileWriter(fileName));
-        try {
-            for (String line : data) {
-                out.println(line);
+        DurableFileWriter.write(fileName, data);
+    }
+
+    /**
+     * Parses the associated file into the target list, splitting it into chunks of
+     * PARALLEL_CHUNK_LINES lines that are deserialized in parallel on the fork-join pool.
+     *
+     * Files smaller than one chunk are parsed on the calling thread. The target list
+     * receives the objects in file order.
+     *
+     * @param target List receiving the deserialized objects.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    protected void loadInParallelChunks(List<T> target) throws IOException {
+        List<ForkJoinTask<List<T>>> tasks = new ArrayList<>();
+        List<List<String>> current = new ArrayList<>(1);
+        current.add(new ArrayList<>(PARALLEL_CHUNK_LINES));
+
+        LineReader.forEachLine(filePath, line -> {
+            List<String> chunk = current.get(0);
+            chunk.add(line);
+            if (chunk.size() == PARALLEL_CHUNK_LINES) {
+                tasks.add(parseChunk(chunk).fork());
+                current.set(0, new ArrayList<>(PARALLEL_CHUNK_LINES));
             }
-        } finally {
-            out.close();
+        });
+
+        if (tasks.isEmpty()) {
+            target.addAll(parseChunk(current.get(0)).invoke());
+            return;
         }
+        tasks.add(parseChunk(current.get(0)).fork());
+        for (ForkJoinTask<List<T>> task : tasks) {
+            target.addAll(task.join());
+        }
+    }
+
+    /**
+     * Creates a task that deserializes a chunk of lines.
+     *
+     * @param lines Lines to deserialize.
+     * @return Task producing the deserialized objects in line order.
+     */
+    private ForkJoinTask<List<T>> parseChunk(List<String> lines) {
+        return ForkJoinTask.adapt(() -> {
+            List<T> parsed = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                parsed.add(deserialize(line));
+            }
+            return parsed;
+        });
     }
 
+    /**
+     * Hands the loaded objects over to the caller without copying them.
+     *
+     * The loader starts again from an empty list, so the returned list is owned by the caller.
+     *
+     * @return Mutable list of the loaded objects.
+     */
+    abstract List<T> detachData();
+
     /**
      * Abstract method to load data from the associated file.
      *
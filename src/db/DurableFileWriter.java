@@ -0,0 +1,251 @@
+package db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * DurableFileWriter
+ * Crash-safe replacement of data files.
+ *
+ * Lines are written to a temporary file next to the target through a large
+ * buffered FileChannel, forced to disk unless the policy is NEVER, and then
+ * atomically renamed over the target. A crash at any point leaves either the
+ * complete old file or the complete new file, never a truncated one.
+ *
+ * force() applies the policy to files that are appended to in place, such as the
+ * treatment logs, where INTERVAL limits how often an append pays for an fsync.
+ *
+ * The policy can be chosen at startup with -Dhms.fsync=always|interval|never and
+ * the interval with -Dhms.fsync.intervalMillis.
+ */
+public final class DurableFileWriter {
+
+    /**
+     * When written data is forced to the storage device.
+     */
+    public enum FsyncPolicy {
+        ALWAYS,   /**< Force replaced files and every append; survives power loss. */
+        INTERVAL, /**< Force replaced files, and appends at most once per interval; a power loss can drop the appends of the last interval. */
+        NEVER     /**< Leave flushing to the operating system; survives process crashes only. */
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024; /**< Size of the write buffer in bytes. */
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8); /**< Separator written after each line. */
+    private static final String TEMP_SUFFIX = ".tmp"; /**< Suffix of the temporary file written before the rename. */
+
+    private static volatile FsyncPolicy policy = parsePolicy(System.getProperty("hms.fsync")); /**< Active fsync policy. */
+    private static volatile long intervalMillis = Long.getLong("hms.fsync.intervalMillis", 1000L); /**< Minimum time between forces under INTERVAL. */
+    private static volatile long lastForceMillis; /**< Time of the last append force under INTERVAL. */
+
+    private DurableFileWriter() {
+    }
+
+    /**
+     * Parses a policy name, falling back to INTERVAL when absent or unknown.
+     *
+     * @param name Policy name, case-insensitive.
+     * @return The matching FsyncPolicy.
+     */
+    private static FsyncPolicy parsePolicy(String name) {
+        if (name != null) {
+            for (FsyncPolicy candidate : FsyncPolicy.values()) {
+                if (candidate.name().equalsIgnoreCase(name.trim())) {
+                    return candidate;
+                }
+            }
+            System.err.println("Unknown fsync policy " + name + ", using " + FsyncPolicy.INTERVAL + ".");
+        }
+        return FsyncPolicy.INTERVAL;
+    }
+
+    /**
+     * Gets the active fsync policy.
+     * @return The active FsyncPolicy.
+     */
+    public static FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the fsync policy used by subsequent writes.
+     * @param newPolicy The new FsyncPolicy.
+     */
+    public static void setPolicy(FsyncPolicy newPolicy) {
+        policy = newPolicy;
+    }
+
+    /**
+     * Sets the minimum time between forces under the INTERVAL policy.
+     * @param millis Interval in milliseconds.
+     */
+    public static void setIntervalMillis(long millis) {
+        intervalMillis = millis;
+    }
+
+    /**
+     * Writes the content of a temporary file.
+     */
+    private interface ContentWriter {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Atomically replaces a file with the given lines.
+     *
+     * @param fileName Name of the file to replace.
+     * @param lines    Lines to write, each followed by the platform line separator.
+     * @throws IOException If the file cannot be written or renamed.
+     */
+    public static void write(String fileName, List<String> lines) throws IOException {
+        replace(fileName, channel -> {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            for (String line : lines) {
+                put(channel, buffer, line.getBytes(StandardCharsets.UTF_8));
+                put(channel, buffer, LINE_SEPARATOR);
+            }
+            drain(channel, buffer);
+        });
+    }
+
+    /**
+     * Atomically replaces a file with the given bytes.
+     *
+     * @param fileName Name of the file to replace.
+     * @param content  Complete new content of the file.
+     * @throws IOException If the file cannot be written or renamed.
+     */
+    public static void write(String fileName, byte[] content) throws IOException {
+        replace(fileName, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    /**
+     * Writes a temporary file next to the target, forces it and renames it over the target.
+     * The temporary file is forced under every policy but NEVER, so the rename can never
+     * publish content that is not yet on disk.
+     *
+     * @param fileName Name of the file to replace.
+     * @param writer   Writes the new content into the temporary file.
+     * @throws IOException If the file cannot be written or renamed.
+     */
+    private static void replace(String fileName, ContentWriter writer) throws IOException {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writer.writeTo(channel);
+                if (policy != FsyncPolicy.NEVER) {
+                    channel.force(false);
+                }
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (policy == FsyncPolicy.ALWAYS) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Forces a file that was appended to in place, if the active policy requires it now.
+     * Under INTERVAL the force is skipped when another one ran within the interval.
+     *
+     * @param channel Channel to force.
+     * @throws IOException If the force fails.
+     */
+    public static void force(FileChannel channel) throws IOException {
+        switch (policy) {
+            case ALWAYS:
+                channel.force(false);
+                break;
+            case INTERVAL:
+                long now = System.currentTimeMillis();
+                if (now - lastForceMillis >= intervalMillis) {
+                    channel.force(false);
+                    lastForceMillis = now;
+                }
+                break;
+            case NEVER:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Copies bytes into the buffer, writing it out whenever it fills up.
+     *
+     * @param channel Destination channel.
+     * @param buffer  Write buffer.
+     * @param bytes   Bytes to append.
+     * @throws IOException If the channel write fails.
+     */
+    private static void put(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            drain(channel, buffer);
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+            return;
+        }
+        if (bytes.length > buffer.remaining()) {
+            drain(channel, buffer);
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes out and clears the buffer.
+     *
+     * @param channel Destination channel.
+     * @param buffer  Write buffer.
+     * @throws IOException If the channel write fails.
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Forces a directory so that a completed rename survives power loss.
+     * Not every platform allows opening directories, so failures are ignored.
+     *
+     * @param directory Directory containing the renamed file.
+     */
+    private static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directory sync is best effort
+        }
+    }
+}
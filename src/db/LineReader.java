@@ -0,0 +1,123 @@
+package db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * LineReader
+ * Fast line-oriented reader shared by the data loaders.
+ *
+ * The file is bulk-read through a FileChannel and decoded from UTF-8 in large
+ * chunks; lines are then cut out of the decoded buffer by scanning for line
+ * terminators, without the regular expressions used by java.util.Scanner.
+ * Lines end at "\n", "\r\n" or "\r", and a final line without a terminator is
+ * still returned, matching Scanner.nextLine.
+ */
+public final class LineReader {
+    private static final int CHUNK_SIZE = 256 * 1024; /**< Number of bytes read and decoded per chunk. */
+
+    private LineReader() {
+    }
+
+    /**
+     * Reads all lines of a file into a list.
+     *
+     * @param fileName Name of the file to read.
+     * @return List of lines, without terminators.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<String> readLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<>();
+        forEachLine(fileName, lines::add);
+        return lines;
+    }
+
+    /**
+     * Streams every line of a file to a handler without keeping the file in memory.
+     *
+     * @param fileName Name of the file to read.
+     * @param handler  Callback invoked once per line, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void forEachLine(String fileName, Consumer<String> handler) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+            StringBuilder pending = new StringBuilder();
+            boolean skipLineFeed = false;
+            boolean endOfFile = false;
+
+            while (!endOfFile) {
+                endOfFile = channel.read(bytes) < 0;
+                bytes.flip();
+                decoder.decode(bytes, chars, endOfFile);
+                if (endOfFile) {
+                    decoder.flush(chars);
+                }
+                bytes.compact(); // Keep any incomplete multi-byte sequence for the next chunk
+
+                chars.flip();
+                skipLineFeed = scan(chars, pending, handler, skipLineFeed);
+                chars.clear();
+            }
+
+            if (pending.length() > 0) {
+                handler.accept(pending.toString());
+            }
+        }
+    }
+
+    /**
+     * Cuts complete lines out of a decoded chunk.
+     *
+     * @param chars        Decoded characters.
+     * @param pending      Partial line carried over between chunks.
+     * @param handler      Callback invoked once per complete line.
+     * @param skipLineFeed Whether the previous chunk ended with '\r'.
+     * @return Whether this chunk ended with '\r'.
+     */
+    private static boolean scan(CharBuffer chars, StringBuilder pending, Consumer<String> handler, boolean skipLineFeed) {
+        char[] array = chars.array();
+        int end = chars.limit();
+        int lineStart = chars.position();
+
+        for (int i = lineStart; i < end; i++) {
+            char c = array[i];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    lineStart = i + 1; // Second half of "\r\n"
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                if (pending.length() == 0) {
+                    handler.accept(new String(array, lineStart, i - lineStart));
+                } else {
+                    pending.append(array, lineStart, i - lineStart);
+                    handler.accept(pending.toString());
+                    pending.setLength(0);
+                }
+                lineStart = i + 1;
+                skipLineFeed = c == '\r';
+            }
+        }
+
+        pending.append(array, lineStart, end - lineStart);
+        return skipLineFeed;
+    }
+}
@@ -0,0 +1,238 @@
+package db;
+
+import items.medical_records.MedicalRecord;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MedicalRecordCache
+ * Bounded LRU cache of medical records, loaded on demand from storage.
+ *
+ * Only the records in the cache are kept in memory. A record changed through TextDB
+ * is marked dirty and written back when it is evicted or when the cache is flushed,
+ * whichever comes first, so repeated changes to a patient cost one write.
+ *
+ * Records handed out are the cached objects themselves. A caller still holding a
+ * record after it was evicted keeps a valid copy, and passing it back through
+ * markDirty makes it the cached copy again.
+ */
+public class MedicalRecordCache {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("hms.medicalRecordCacheSize", 1024); /**< Default number of cached records. */
+
+    /**
+     * Reads a record from storage.
+     */
+    public interface Loader {
+        MedicalRecord load(String patientId) throws IOException;
+    }
+
+    /**
+     * Writes a changed record to storage.
+     */
+    public interface Writer {
+        void write(MedicalRecord record) throws IOException;
+    }
+
+    /**
+     * A cached record and whether it has unwritten changes.
+     */
+    private static final class Entry {
+        private final MedicalRecord record; /**< The record. */
+        private boolean dirty;              /**< True while changes to the record are not written back. */
+
+        private Entry(MedicalRecord record, boolean dirty) {
+            this.record = record;
+            this.dirty = dirty;
+        }
+    }
+
+    private final int capacity; /**< Maximum number of cached records. */
+    private final Loader loader; /**< Reads records missing from the cache. */
+    private final Writer writer; /**< Writes back dirty records. */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); /**< Cached records by patient ID, least recently used first. */
+    private long hits;       /**< Lookups answered from the cache. */
+    private long misses;     /**< Lookups that had to be loaded. */
+    private long evictions;  /**< Records dropped to stay within the capacity. */
+    private long writeBacks; /**< Dirty records written to storage. */
+
+    /**
+     * Constructs a cache holding up to the given number of records.
+     *
+     * @param capacity Maximum number of cached records.
+     * @param loader   Reads records missing from the cache.
+     * @param writer   Writes back dirty records.
+     */
+    public MedicalRecordCache(int capacity, Loader loader, Writer writer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.loader = loader;
+        this.writer = writer;
+    }
+
+    /**
+     * Gets a patient's record, loading it on a miss.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return The record, or null if storage holds none for the patient.
+     * @throws IOException If the record cannot be loaded.
+     */
+    public synchronized MedicalRecord get(String patientId) throws IOException {
+        Entry entry = entries.get(patientId);
+        if (entry != null) {
+            hits++;
+            return entry.record;
+        }
+        misses++;
+        MedicalRecord record = loader.load(patientId);
+        if (record != null) {
+            entries.put(patientId, new Entry(record, false));
+            evict();
+        }
+        return record;
+    }
+
+    /**
+     * Caches a record that has just been written to storage.
+     *
+     * @param record The record.
+     */
+    public synchronized void put(MedicalRecord record) {
+        entries.put(record.getPatientID(), new Entry(record, false));
+        evict();
+    }
+
+    /**
+     * Caches a changed record, replacing any cached copy, to be written back later.
+     *
+     * @param record The changed record.
+     */
+    public synchronized void markDirty(MedicalRecord record) {
+        Entry entry = entries.get(record.getPatientID());
+        if (entry != null && entry.record == record) {
+            entry.dirty = true;
+            return;
+        }
+        entries.put(record.getPatientID(), new Entry(record, true));
+        evict();
+    }
+
+    /**
+     * Writes back every dirty record. A record that cannot be written stays dirty.
+     *
+     * @throws IOException If a record cannot be written; the others are still attempted.
+     */
+    public synchronized void flush() throws IOException {
+        IOException failure = null;
+        for (Entry entry : entries.values()) {
+            if (entry.dirty) {
+                try {
+                    writeBack(entry);
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return Number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to be loaded.
+     * @return Number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     * @return Hits divided by lookups, or 0 before the first lookup.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Gets the number of records dropped to stay within the capacity.
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of dirty records written back.
+     * @return Number of write-backs.
+     */
+    public synchronized long getWriteBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * Gets the number of cached records.
+     * @return Number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of cached records with unwritten changes.
+     * @return Number of dirty entries.
+     */
+    public synchronized int getDirtyCount() {
+        int dirty = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.dirty) {
+                dirty++;
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Drops least recently used records until the cache is within its capacity,
+     * writing back dirty ones first. A record that cannot be written back is kept,
+     * so the cache may exceed its capacity until storage recovers.
+     */
+    private void evict() {
+        int kept = 0;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() - kept > capacity && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (entry.dirty) {
+                try {
+                    writeBack(entry);
+                } catch (IOException e) {
+                    System.err.println("Could not write back medical record of patient " + entry.record.getPatientID() + ": " + e.getMessage());
+                    kept++;
+                    continue;
+                }
+            }
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void writeBack(Entry entry) throws IOException {
+        writer.write(entry.record);
+        entry.dirty = false;
+        writeBacks++;
+    }
+}
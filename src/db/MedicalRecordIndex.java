@@ -0,0 +1,329 @@
+package db;
+
+import items.Prescription;
+import items.medical_records.Diagnosis;
+import items.medical_records.MedicalRecord;
+import items.medical_records.Treatment;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * MedicalRecordIndex
+ * Inverted full-text index over the diagnoses and treatments of every medical record.
+ *
+ * Diagnosis descriptions, treatment service types, treatment comments and prescribed
+ * medication names are split into lower-case words of letters and digits. Each word
+ * maps to the patients whose diagnoses or treatments contain it, and each patient to
+ * those diagnoses and treatments, so finding every patient who had something never
+ * opens a record, and re-indexing a patient only touches that patient's entries.
+ * Words are kept sorted, which turns a prefix query into a range of the map.
+ *
+ * A query is a list of words that must all occur in the same diagnosis or treatment;
+ * a word ending in '*' matches every word starting with it.
+ */
+public class MedicalRecordIndex {
+
+    /**
+     * A diagnosis or treatment of a patient, by position in their medical record.
+     */
+    public static final class Reference implements Comparable<Reference> {
+
+        /**
+         * The list of the medical record a reference points into.
+         */
+        public enum Kind {
+            DIAGNOSIS, /**< Position in getPastDiagnoses. */
+            TREATMENT  /**< Position in getPastTreatments. */
+        }
+
+        private final String patientId; /**< The patient's hospital ID. */
+        private final Kind kind;        /**< The list the position refers to. */
+        private final int position;     /**< Position in that list. */
+
+        private Reference(String patientId, Kind kind, int position) {
+            this.patientId = patientId;
+            this.kind = kind;
+            this.position = position;
+        }
+
+        /**
+         * Gets the patient's hospital ID.
+         * @return The patient ID.
+         */
+        public String getPatientId() {
+            return patientId;
+        }
+
+        /**
+         * Gets the list of the medical record the reference points into.
+         * @return DIAGNOSIS or TREATMENT.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Gets the position of the diagnosis or treatment in its list.
+         * @return The position, starting at 0.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        @Override
+        public int compareTo(Reference other) {
+            int order = patientId.compareTo(other.patientId);
+            if (order == 0) {
+                order = kind.compareTo(other.kind);
+            }
+            return order != 0 ? order : Integer.compare(position, other.position);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Reference)) return false;
+            Reference reference = (Reference) o;
+            return position == reference.position && kind == reference.kind && patientId.equals(reference.patientId);
+        }
+
+        @Override
+        public int hashCode() {
+            return (patientId.hashCode() * 31 + kind.hashCode()) * 31 + position;
+        }
+
+        @Override
+        public String toString() {
+            return patientId + " " + kind.name().toLowerCase(Locale.ROOT) + " " + (position + 1);
+        }
+    }
+
+    private final TreeMap<String, Map<String, List<Reference>>> postings = new TreeMap<>(); /**< References by word and patient, words in order. */
+    private final Map<String, Set<String>> wordsByPatient = new HashMap<>(); /**< Words indexed for each patient, to remove them again. */
+
+    /**
+     * Indexes a medical record, replacing whatever was indexed for the patient.
+     *
+     * @param record The medical record.
+     */
+    public synchronized void index(MedicalRecord record) {
+        remove(record.getPatientID());
+        List<Diagnosis> diagnoses = record.getPastDiagnoses();
+        if (diagnoses != null) {
+            for (int i = 0; i < diagnoses.size(); i++) {
+                Reference reference = new Reference(record.getPatientID(), Reference.Kind.DIAGNOSIS, i);
+                add(reference, diagnoses.get(i).getDescription());
+            }
+        }
+        List<Treatment> treatments = record.getPastTreatments();
+        if (treatments != null) {
+            for (int i = 0; i < treatments.size(); i++) {
+                addTreatment(record.getPatientID(), i, treatments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Indexes one treatment added to a patient's record.
+     *
+     * @param patientId The patient's hospital ID.
+     * @param position  Position of the treatment in the record's past treatments.
+     * @param treatment The treatment.
+     */
+    public synchronized void addTreatment(String patientId, int position, Treatment treatment) {
+        Reference reference = new Reference(patientId, Reference.Kind.TREATMENT, position);
+        add(reference, treatment.getServiceType());
+        add(reference, treatment.getTreatmentComments());
+        List<Prescription> prescriptions = treatment.getAllPrescribedMedicine();
+        if (prescriptions != null) {
+            for (Prescription prescription : prescriptions) {
+                add(reference, prescription.getMedicationName());
+            }
+        }
+    }
+
+    /**
+     * Removes everything indexed for a patient.
+     *
+     * @param patientId The patient's hospital ID.
+     */
+    public synchronized void remove(String patientId) {
+        Set<String> words = wordsByPatient.remove(patientId);
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Map<String, List<Reference>> patients = postings.get(word);
+            patients.remove(patientId);
+            if (patients.isEmpty()) {
+                postings.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Adds everything indexed by another index, which must cover different patients.
+     * Used to combine indexes built in parallel.
+     *
+     * @param other The index to merge in.
+     */
+    public synchronized void merge(MedicalRecordIndex other) {
+        synchronized (other) {
+            for (Map.Entry<String, Map<String, List<Reference>>> entry : other.postings.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), word -> new HashMap<>()).putAll(entry.getValue());
+            }
+            for (Map.Entry<String, Set<String>> entry : other.wordsByPatient.entrySet()) {
+                wordsByPatient.computeIfAbsent(entry.getKey(), id -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Finds the diagnoses and treatments matching a query.
+     *
+     * @param query Words that must all occur in the same diagnosis or treatment; a word ending in '*' is a prefix.
+     * @return The matches, ordered by patient, then diagnoses before treatments, then position; empty if the query has no words.
+     */
+    public synchronized List<Reference> search(String query) {
+        List<List<Map<String, List<Reference>>>> terms = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            List<String> tokens = tokenize(word);
+            for (int i = 0; i < tokens.size(); i++) {
+                List<Map<String, List<Reference>>> matches = prefix && i == tokens.size() - 1
+                        ? new ArrayList<>(postings.subMap(tokens.get(i), tokens.get(i) + Character.MAX_VALUE).values())
+                        : postings.containsKey(tokens.get(i)) ? Collections.singletonList(postings.get(tokens.get(i))) : Collections.emptyList();
+                if (matches.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                terms.add(matches);
+            }
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Walk the term matching the fewest patients and probe the others per patient
+        List<Map<String, List<Reference>>> narrowest = terms.get(0);
+        for (List<Map<String, List<Reference>>> term : terms) {
+            if (patientCount(term) < patientCount(narrowest)) {
+                narrowest = term;
+            }
+        }
+        List<List<Map<String, List<Reference>>>> others = new ArrayList<>(terms);
+        others.remove(narrowest);
+        Collection<Reference> result = narrowest.size() > 1 ? new HashSet<>() : new ArrayList<>();
+        for (Map<String, List<Reference>> patients : narrowest) {
+            for (List<Reference> references : patients.values()) {
+                for (Reference reference : references) {
+                    if (matchesAll(reference, others)) {
+                        result.add(reference);
+                    }
+                }
+            }
+        }
+        List<Reference> sorted = new ArrayList<>(result);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Finds the patients with a diagnosis or treatment matching a query.
+     *
+     * @param query Words that must all occur in the same diagnosis or treatment; a word ending in '*' is a prefix.
+     * @return IDs of the matching patients, in order.
+     */
+    public synchronized Set<String> searchPatientIds(String query) {
+        Set<String> patientIds = new TreeSet<>();
+        for (Reference reference : search(query)) {
+            patientIds.add(reference.patientId);
+        }
+        return patientIds;
+    }
+
+    /**
+     * Gets the number of distinct words indexed.
+     * @return Number of words.
+     */
+    public synchronized int getWordCount() {
+        return postings.size();
+    }
+
+    /**
+     * Gets the number of patients with something indexed.
+     * @return Number of patients.
+     */
+    public synchronized int getPatientCount() {
+        return wordsByPatient.size();
+    }
+
+    private void add(Reference reference, String text) {
+        if (text == null) {
+            return;
+        }
+        for (String word : tokenize(text)) {
+            List<Reference> references = postings.computeIfAbsent(word, key -> new HashMap<>())
+                    .computeIfAbsent(reference.patientId, id -> new ArrayList<>(2));
+            if (references.isEmpty() || !references.get(references.size() - 1).equals(reference)) {
+                references.add(reference);
+            }
+            wordsByPatient.computeIfAbsent(reference.patientId, id -> new HashSet<>()).add(word);
+        }
+    }
+
+    private static int patientCount(List<Map<String, List<Reference>>> term) {
+        int count = 0;
+        for (Map<String, List<Reference>> patients : term) {
+            count += patients.size();
+        }
+        return count;
+    }
+
+    private static boolean matchesAll(Reference reference, List<List<Map<String, List<Reference>>>> terms) {
+        for (List<Map<String, List<Reference>>> term : terms) {
+            boolean found = false;
+            for (Map<String, List<Reference>> patients : term) {
+                List<Reference> references = patients.get(reference.patientId);
+                if (references != null && references.contains(reference)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits text into lower-case words of letters and digits.
+     *
+     * @param text The text.
+     * @return The words, in order.
+     */
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,592 @@
+package db;
+
+import items.medical_records.MedicalRecord;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MedicalRecordStore
+ * Medical records sharded by patient ID into append-only segment files.
+ *
+ * Each patient belongs to one of a fixed number of segments, chosen by the hash of
+ * the patient ID. A segment is a data file holding one encoded record per line and
+ * an index file mapping each patient ID to the offset and length of their latest
+ * line. Writing a record appends one line to its segment and one entry to the
+ * index, so an update costs the same whatever the number of patients, and reading
+ * a record is a single positional read.
+ *
+ * Files in the store directory:
+ * manifest.txt holds the number of segments and is written last when the store is
+ * created; segment-NN.G.txt is generation G of segment NN's data; segment-NN.idx
+ * names the current data file on its first line, followed by patientId|offset|length
+ * entries, where the last entry of a patient wins.
+ *
+ * Replaced records stay in the data file as garbage. Once a segment holds more
+ * garbage than live bytes it is compacted into the next generation; the new index
+ * is renamed into place before the old data file is deleted, so a crash leaves
+ * either generation complete. On open, index entries pointing past the end of the
+ * data are ignored, complete lines appended after the last indexed one are indexed
+ * again, and a torn final line is cut off.
+ */
+public class MedicalRecordStore {
+    public static final int DEFAULT_SEGMENTS = Integer.getInteger("hms.medicalRecordSegments", 16); /**< Number of segments of a new store. */
+
+    private static final String MANIFEST = "manifest.txt"; /**< Name of the file holding the segment count. */
+    private static final String SEGMENT_PREFIX = "segment-"; /**< Prefix of segment data and index files. */
+    private static final String DATA_SUFFIX = ".txt"; /**< Suffix of segment data files. */
+    private static final String INDEX_SUFFIX = ".idx"; /**< Suffix of segment index files. */
+    private static final long COMPACTION_MIN_GARBAGE = 64 * 1024; /**< Garbage bytes below which a segment is never compacted. */
+    private static final byte NEWLINE = '\n'; /**< Terminator of every data and index line. */
+
+    /**
+     * Location of a record within its segment's data file.
+     */
+    private static final class Entry {
+        private final long offset; /**< Offset of the first byte of the line. */
+        private final int length;  /**< Length of the line in bytes, without the terminator. */
+
+        private Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Gets the offset just past the terminator of the line.
+         * @return End offset of the line.
+         */
+        private long end() {
+            return offset + length + 1;
+        }
+    }
+
+    /**
+     * One shard: a data file and its index. All access goes through the segment's monitor.
+     */
+    private final class Segment {
+        private final int number;          /**< Position of the segment in the store. */
+        private final Path indexPath;      /**< Index file of the segment. */
+        private long generation;           /**< Generation of the current data file. */
+        private FileChannel data;          /**< Current data file, opened for reading and appending. */
+        private FileChannel index;         /**< Index file, opened for appending. */
+        private final Map<String, Entry> entries = new LinkedHashMap<>(); /**< Latest line of each patient. */
+        private long liveBytes;            /**< Bytes of the lines in entries, terminators included. */
+
+        private Segment(int number) {
+            this.number = number;
+            this.indexPath = directory.resolve(SEGMENT_PREFIX + String.format("%02d", number) + INDEX_SUFFIX);
+        }
+
+        /**
+         * Gets the data file of a generation of this segment.
+         *
+         * @param gen The generation.
+         * @return Path of the data file.
+         */
+        private Path dataPath(long gen) {
+            return directory.resolve(SEGMENT_PREFIX + String.format("%02d", number) + "." + gen + DATA_SUFFIX);
+        }
+
+        /**
+         * Writes generation 0 of the segment from the given lines.
+         *
+         * @param lines Encoded records of the segment's patients.
+         * @throws IOException If a file cannot be written.
+         */
+        private synchronized void create(List<String> lines) throws IOException {
+            List<String> indexLines = new ArrayList<>(lines.size() + 1);
+            indexLines.add(dataPath(0).getFileName().toString());
+            long offset = 0;
+            List<byte[]> encoded = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                indexLines.add(indexLine(patientIdOf(line), offset, bytes.length));
+                offset += bytes.length + 1;
+            }
+            byte[] content = new byte[(int) offset];
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            for (byte[] bytes : encoded) {
+                buffer.put(bytes).put(NEWLINE);
+            }
+            DurableFileWriter.write(dataPath(0).toString(), content);
+            DurableFileWriter.write(indexPath.toString(), indexLines);
+        }
+
+        /**
+         * Opens the segment, recovering entries the index missed and dropping a torn tail.
+         *
+         * @throws IOException If a file cannot be read or repaired.
+         */
+        private synchronized void open() throws IOException {
+            List<String> indexLines = LineReader.readLines(indexPath.toString());
+            if (indexLines.isEmpty()) {
+                throw new IOException("Empty medical record index: " + indexPath);
+            }
+            generation = parseGeneration(indexLines.get(0));
+            deleteOtherGenerations();
+            data = FileChannel.open(dataPath(generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = data.size();
+
+            boolean repaired = false;
+            long indexedEnd = 0;
+            for (int i = 1; i < indexLines.size(); i++) {
+                String[] fields = RecordCodec.splitAll(indexLines.get(i), '|');
+                Entry entry = null;
+                try {
+                    if (fields.length == 3) {
+                        entry = new Entry(Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+                    }
+                } catch (NumberFormatException e) {
+                    entry = null;
+                }
+                if (entry == null || entry.offset < 0 || entry.length < 0 || entry.end() > size
+                        || (i == indexLines.size() - 1 && read(entry.end() - 1, 1)[0] != NEWLINE)) {
+                    repaired = true; // Torn or dangling entry; only the last one can be torn
+                    continue;
+                }
+                entries.put(fields[0], entry);
+                indexedEnd = Math.max(indexedEnd, entry.end());
+            }
+
+            long validEnd = recoverTail(indexedEnd, size);
+            if (validEnd != indexedEnd) {
+                repaired = true;
+            }
+            if (validEnd < size) {
+                data.truncate(validEnd);
+                DurableFileWriter.force(data);
+            }
+            for (Entry entry : entries.values()) {
+                liveBytes += entry.length + 1;
+            }
+            if (repaired) {
+                DurableFileWriter.write(indexPath.toString(), indexLines());
+            }
+            index = FileChannel.open(indexPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Indexes complete lines after the last indexed one.
+         *
+         * @param from First byte not covered by the index.
+         * @param size Size of the data file.
+         * @return Offset just past the last complete line.
+         * @throws IOException If the data file cannot be read.
+         */
+        private long recoverTail(long from, long size) throws IOException {
+            if (from >= size) {
+                return from;
+            }
+            byte[] tail = read(from, (int) (size - from));
+            long validEnd = from;
+            int start = 0;
+            for (int i = 0; i < tail.length; i++) {
+                if (tail[i] == NEWLINE) {
+                    String line = new String(tail, start, i - start, StandardCharsets.UTF_8);
+                    String patientId = patientIdOf(line);
+                    if (!patientId.isEmpty()) {
+                        entries.put(patientId, new Entry(from + start, i - start));
+                    }
+                    start = i + 1;
+                    validEnd = from + start;
+                }
+            }
+            return validEnd;
+        }
+
+        /**
+         * Reads the latest record of a patient.
+         *
+         * @param patientId The patient's hospital ID.
+         * @return The record, or null if the segment holds none for the patient.
+         * @throws IOException If the data file cannot be read.
+         */
+        private synchronized MedicalRecord get(String patientId) throws IOException {
+            Entry entry = entries.get(patientId);
+            if (entry == null) {
+                return null;
+            }
+            return RecordCodec.decodeMedicalRecord(new String(read(entry.offset, entry.length), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Checks whether the segment holds a record of a patient.
+         *
+         * @param patientId The patient's hospital ID.
+         * @return True if the patient is indexed.
+         */
+        private synchronized boolean contains(String patientId) {
+            return entries.containsKey(patientId);
+        }
+
+        /**
+         * Reads every record of the segment.
+         *
+         * @param records List receiving the records.
+         * @throws IOException If the data file cannot be read.
+         */
+        private synchronized void getAll(List<MedicalRecord> records) throws IOException {
+            for (Entry entry : entries.values()) {
+                records.add(RecordCodec.decodeMedicalRecord(new String(read(entry.offset, entry.length), StandardCharsets.UTF_8)));
+            }
+        }
+
+        /**
+         * Appends a record and its index entry, compacting the segment if it is mostly garbage.
+         *
+         * @param patientId The patient's hospital ID.
+         * @param line      The encoded record.
+         * @throws IOException If a file cannot be written.
+         */
+        private synchronized void put(String patientId, String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            long offset = data.size();
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 1);
+            buffer.put(bytes).put(NEWLINE).flip();
+            while (buffer.hasRemaining()) {
+                data.write(buffer, offset + buffer.position());
+            }
+            DurableFileWriter.force(data);
+
+            // The index is not forced: open re-indexes lines the index is missing.
+            ByteBuffer entryBuffer = ByteBuffer.wrap((indexLine(patientId, offset, bytes.length) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (entryBuffer.hasRemaining()) {
+                index.write(entryBuffer);
+            }
+
+            Entry previous = entries.put(patientId, new Entry(offset, bytes.length));
+            if (previous != null) {
+                liveBytes -= previous.length + 1;
+            }
+            liveBytes += bytes.length + 1;
+
+            long garbage = data.size() - liveBytes;
+            if (garbage > liveBytes && garbage > COMPACTION_MIN_GARBAGE) {
+                compact();
+            }
+        }
+
+        /**
+         * Copies the live records into the next generation and switches the index to it.
+         *
+         * @throws IOException If a file cannot be written.
+         */
+        private void compact() throws IOException {
+            long next = generation + 1;
+            Path nextPath = dataPath(next);
+            Map<String, Entry> compacted = new LinkedHashMap<>();
+            try (FileChannel out = FileChannel.open(nextPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long offset = 0;
+                for (Map.Entry<String, Entry> live : entries.entrySet()) {
+                    Entry entry = live.getValue();
+                    ByteBuffer buffer = ByteBuffer.wrap(read(entry.offset, entry.length + 1));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    compacted.put(live.getKey(), new Entry(offset, entry.length));
+                    offset += entry.length + 1;
+                }
+                out.force(false);
+            }
+
+            Path oldPath = dataPath(generation);
+            Map<String, Entry> previous = new LinkedHashMap<>(entries);
+            entries.clear();
+            entries.putAll(compacted);
+            long previousGeneration = generation;
+            generation = next;
+            try {
+                DurableFileWriter.write(indexPath.toString(), indexLines());
+            } catch (IOException e) {
+                entries.clear();
+                entries.putAll(previous);
+                generation = previousGeneration;
+                Files.deleteIfExists(nextPath);
+                throw e;
+            }
+
+            index.close();
+            data.close();
+            data = FileChannel.open(nextPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            Files.deleteIfExists(oldPath);
+        }
+
+        /**
+         * Builds the content of a fresh index file from the current entries.
+         *
+         * @return Lines of the index file.
+         */
+        private List<String> indexLines() {
+            List<String> lines = new ArrayList<>(entries.size() + 1);
+            lines.add(dataPath(generation).getFileName().toString());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                lines.add(indexLine(entry.getKey(), entry.getValue().offset, entry.getValue().length));
+            }
+            return lines;
+        }
+
+        /**
+         * Deletes data files of this segment other than the current generation,
+         * left behind by a compaction that did not finish.
+         *
+         * @throws IOException If the directory cannot be listed.
+         */
+        private void deleteOtherGenerations() throws IOException {
+            String prefix = SEGMENT_PREFIX + String.format("%02d", number) + ".";
+            String current = dataPath(generation).getFileName().toString();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + DATA_SUFFIX)) {
+                for (Path file : files) {
+                    if (!file.getFileName().toString().equals(current)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parses the generation from the data file name on the first index line.
+         *
+         * @param fileName Name of the current data file.
+         * @return Its generation.
+         * @throws IOException If the name does not belong to this segment.
+         */
+        private long parseGeneration(String fileName) throws IOException {
+            String prefix = SEGMENT_PREFIX + String.format("%02d", number) + ".";
+            if (!fileName.startsWith(prefix) || !fileName.endsWith(DATA_SUFFIX)) {
+                throw new IOException("Invalid medical record index header in " + indexPath + ": " + fileName);
+            }
+            try {
+                return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - DATA_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid medical record index header in " + indexPath + ": " + fileName, e);
+            }
+        }
+
+        /**
+         * Reads bytes from the current data file.
+         *
+         * @param offset Offset of the first byte.
+         * @param length Number of bytes.
+         * @return The bytes read.
+         * @throws IOException If the data file ends early or cannot be read.
+         */
+        private byte[] read(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + dataPath(generation));
+                }
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Closes the segment's files.
+         *
+         * @throws IOException If a file cannot be closed.
+         */
+        private synchronized void close() throws IOException {
+            if (index != null) {
+                index.close();
+            }
+            if (data != null) {
+                data.close();
+            }
+        }
+    }
+
+    private final Path directory; /**< Directory holding the store's files. */
+    private volatile Segment[] segments; /**< The segments, or null until the store is created or opened. */
+
+    /**
+     * Constructs a store kept in the given directory. The store must be created or opened before use.
+     *
+     * @param directory Name of the store directory.
+     */
+    public MedicalRecordStore(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Checks whether a complete store exists in the directory.
+     *
+     * @return True if the manifest has been written.
+     */
+    public boolean exists() {
+        return Files.exists(directory.resolve(MANIFEST));
+    }
+
+    /**
+     * Creates the store from the given records, replacing any incomplete store, and opens it.
+     *
+     * @param records       Records to import; a later record of the same patient wins.
+     * @param segmentCount  Number of segments.
+     * @throws IOException If a file cannot be written.
+     */
+    public void create(List<MedicalRecord> records, int segmentCount) throws IOException {
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("Number of medical record segments must be positive: " + segmentCount);
+        }
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(MANIFEST));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+
+        List<Map<String, String>> lines = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            lines.add(new LinkedHashMap<>());
+        }
+        for (MedicalRecord record : records) {
+            lines.get(segmentOf(record.getPatientID(), segmentCount)).put(record.getPatientID(), RecordCodec.encodeMedicalRecord(record));
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            new Segment(i).create(new ArrayList<>(lines.get(i).values()));
+        }
+        DurableFileWriter.write(directory.resolve(MANIFEST).toString(), Collections.singletonList(String.valueOf(segmentCount)));
+        open();
+    }
+
+    /**
+     * Opens an existing store, repairing segments left inconsistent by a crash.
+     *
+     * @throws IOException If the store is missing or cannot be read.
+     */
+    public void open() throws IOException {
+        List<String> manifest = LineReader.readLines(directory.resolve(MANIFEST).toString());
+        int segmentCount;
+        try {
+            segmentCount = Integer.parseInt(manifest.get(0).trim());
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("Invalid medical record manifest in " + directory, e);
+        }
+        Segment[] opened = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            opened[i] = new Segment(i);
+            opened[i].open();
+        }
+        segments = opened;
+    }
+
+    /**
+     * Reads the latest record of a patient.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return The record, or null if the store holds none for the patient.
+     * @throws IOException If the segment cannot be read.
+     */
+    public MedicalRecord get(String patientId) throws IOException {
+        Segment[] opened = requireOpen();
+        return opened[segmentOf(patientId, opened.length)].get(patientId);
+    }
+
+    /**
+     * Checks whether the store holds a record of a patient, without reading it.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return True if the patient has a record.
+     */
+    public boolean contains(String patientId) {
+        Segment[] opened = requireOpen();
+        return opened[segmentOf(patientId, opened.length)].contains(patientId);
+    }
+
+    /**
+     * Reads every record in the store, segment by segment.
+     *
+     * @return Mutable list of the latest record of every patient.
+     * @throws IOException If a segment cannot be read.
+     */
+    public List<MedicalRecord> loadAll() throws IOException {
+        List<MedicalRecord> records = new ArrayList<>();
+        for (Segment segment : requireOpen()) {
+            segment.getAll(records);
+        }
+        return records;
+    }
+
+    /**
+     * Gets the number of segments, for callers reading the segments in parallel.
+     * @return Number of segments.
+     */
+    public int getSegmentCount() {
+        return requireOpen().length;
+    }
+
+    /**
+     * Reads every record of one segment. Different segments can be read concurrently.
+     *
+     * @param segment Number of the segment, below getSegmentCount.
+     * @return Mutable list of the latest record of every patient in the segment.
+     * @throws IOException If the segment cannot be read.
+     */
+    public List<MedicalRecord> loadSegment(int segment) throws IOException {
+        List<MedicalRecord> records = new ArrayList<>();
+        requireOpen()[segment].getAll(records);
+        return records;
+    }
+
+    /**
+     * Writes a record, replacing the patient's previous one. Only the patient's
+     * segment is touched.
+     *
+     * @param record The record to write.
+     * @throws IOException If the segment cannot be written.
+     */
+    public void put(MedicalRecord record) throws IOException {
+        Segment[] opened = requireOpen();
+        opened[segmentOf(record.getPatientID(), opened.length)].put(record.getPatientID(), RecordCodec.encodeMedicalRecord(record));
+    }
+
+    /**
+     * Closes the files of every segment.
+     *
+     * @throws IOException If a file cannot be closed.
+     */
+    public void close() throws IOException {
+        Segment[] opened = segments;
+        segments = null;
+        if (opened != null) {
+            for (Segment segment : opened) {
+                segment.close();
+            }
+        }
+    }
+
+    private Segment[] requireOpen() {
+        Segment[] opened = segments;
+        if (opened == null) {
+            throw new IllegalStateException("Medical record store is not open: " + directory);
+        }
+        return opened;
+    }
+
+    private static int segmentOf(String patientId, int segmentCount) {
+        return Math.floorMod(patientId.hashCode(), segmentCount);
+    }
+
+    private static String patientIdOf(String line) {
+        int separator = line.indexOf('|');
+        return separator < 0 ? "" : line.substring(0, separator);
+    }
+
+    private static String indexLine(String patientId, long offset, int length) {
+        return patientId + "|" + offset + "|" + length;
+    }
+}
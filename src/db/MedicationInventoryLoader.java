@@ -38,11 +38,8 @@ public class MedicationInventoryLoader extends DataLoader<Medication> {
      */
     @Override
     public void loadData() throws IOException {
-        List<String> lines = read(filePath);
         medications.clear();
-        for (String line : lines) {
-            medications.add(deserialize(line));
-        }
+        LineReader.forEachLine(filePath, line -> medications.add(deserialize(line)));
     }
 
     /**
@@ -107,4 +104,16 @@ public class MedicationInventoryLoader extends DataLoader<Medication> {
                 medication.getSupplier() != null ? medication.getSupplier() : "NULL"
         );
     }
+
+    /**
+     * Hands the loaded Medication objects over to the caller without copying them.
+     *
+     * @return Mutable list of the loaded Medication objects.
+     */
+    @Override
+    List<Medication> detachData() {
+        List<Medication> loaded = medications;
+        medications = new ArrayList<>();
+        return loaded;
+    }
 }
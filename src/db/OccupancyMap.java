@@ -0,0 +1,124 @@
+package db;
+
+import items.appointments.TimeSlot;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * OccupancyMap
+ * Booked time slots of every doctor, keyed by doctor and date.
+ *
+ * A slot is occupied while at least one appointment whose status occupies a slot
+ * (see AppointmentStatus.occupiesSlot) holds it.
+ * Each slot carries a count of the appointments holding it, so booking, cancelling,
+ * declining and rescheduling are single O(1) updates, and a slot only becomes free
+ * when the last appointment holding it lets it go. AppointmentIndex keeps the map in
+ * step with the appointment list.
+ *
+ * A listener is told about every doctor-day whose set of occupied slots changes.
+ *
+ * Reads take no lock. Changes to one doctor-day must not run concurrently; TextDB
+ * makes them under the StripedLocks stripe of that doctor-day, and changes to
+ * different doctor-days may run in parallel.
+ */
+public class OccupancyMap {
+    private final Map<String, Map<LocalDate, Map<TimeSlot, Integer>>> slots = new ConcurrentHashMap<>(); /**< Holder counts by doctor, date and slot. */
+    private final BiConsumer<String, LocalDate> listener; /**< Told the doctor and date of every change. */
+
+    /**
+     * Constructs an empty occupancy map.
+     *
+     * @param listener Called with the doctor ID and date whenever a slot becomes occupied or free.
+     */
+    public OccupancyMap(BiConsumer<String, LocalDate> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records that an appointment holds a slot.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param slot     The held slot.
+     * @return The key now holding the slot, to be passed to release.
+     */
+    public TimeSlot hold(String doctorId, TimeSlot slot) {
+        TimeSlot key = slot.intern();
+        LocalDate date = key.getDate();
+        int count = slots.computeIfAbsent(doctorId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(date, day -> new ConcurrentHashMap<>())
+                .merge(key, 1, Integer::sum);
+        if (count == 1) {
+            listener.accept(doctorId, date);
+        }
+        return key;
+    }
+
+    /**
+     * Records that an appointment no longer holds a slot.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param key      The key returned by hold.
+     */
+    public void release(String doctorId, TimeSlot key) {
+        Map<LocalDate, Map<TimeSlot, Integer>> dates = slots.get(doctorId);
+        if (dates == null) {
+            return;
+        }
+        LocalDate date = key.getDate();
+        Map<TimeSlot, Integer> day = dates.get(date);
+        if (day == null) {
+            return;
+        }
+        if (day.computeIfPresent(key, (slot, count) -> count > 1 ? count - 1 : null) == null) {
+            listener.accept(doctorId, date);
+        }
+        if (day.isEmpty()) {
+            dates.remove(date); // A doctor's own map is kept, as other doctor-days may be changing it
+        }
+    }
+
+    /**
+     * Checks whether a doctor's slot is held by an appointment.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param slot     The slot to check.
+     * @return True if an equal slot is held.
+     */
+    public boolean isOccupied(String doctorId, TimeSlot slot) {
+        Map<TimeSlot, Integer> day = getDay(doctorId, slot.getDate());
+        return day != null && day.containsKey(slot);
+    }
+
+    /**
+     * Gets the held slots of a doctor on a date.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date of the slots.
+     * @return Unmodifiable view of the held slots.
+     */
+    public Collection<TimeSlot> getOccupied(String doctorId, LocalDate date) {
+        Map<TimeSlot, Integer> day = getDay(doctorId, date);
+        return day == null ? Collections.emptySet() : Collections.unmodifiableSet(day.keySet());
+    }
+
+    /**
+     * Forgets every held slot.
+     */
+    public void clear() {
+        for (Map.Entry<String, Map<LocalDate, Map<TimeSlot, Integer>>> doctor : slots.entrySet()) {
+            for (LocalDate date : doctor.getValue().keySet()) {
+                listener.accept(doctor.getKey(), date);
+            }
+        }
+        slots.clear();
+    }
+
+    private Map<TimeSlot, Integer> getDay(String doctorId, LocalDate date) {
+        Map<LocalDate, Map<TimeSlot, Integer>> dates = slots.get(doctorId);
+        return dates == null ? null : dates.get(date);
+    }
+}
@@ -0,0 +1,499 @@
+package db;
+
+import items.Prescription;
+import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
+import items.appointments.TimeSlot;
+import items.medical_records.ContactInformation;
+import items.medical_records.Diagnosis;
+import items.medical_records.MedicalRecord;
+import items.medical_records.Treatment;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RecordCodec
+ * Hand-written codec for the pipe and semicolon separated record formats.
+ *
+ * Records are tokenized by scanning for separator characters instead of using
+ * regular expressions, dates and times are parsed and printed arithmetically, and
+ * records are serialized into a per-thread StringBuilder that is reused between
+ * calls. Output is byte-for-byte identical to the formatter-based code it replaces;
+ * any date that is not a plain, valid yyyy-MM-dd value is handed to the original
+ * formatter, so unusual input is accepted or rejected exactly as before.
+ *
+ * The encode methods share the per-thread buffer and must not call each other;
+ * the append methods only write to the builder they are given.
+ */
+public final class RecordCodec {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); /**< Fallback formatter for record dates. */
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm"); /**< Fallback formatter for time slot bounds. */
+    private static final int DATE_TIME_LENGTH = 16; /**< Length of a yyyy-MM-ddTHH:mm value. */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024; /**< Largest buffer kept between calls. */
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256)); /**< Reusable serialization buffer. */
+
+    private RecordCodec() {
+    }
+
+    // ====================== Tokenizing ========================= //
+
+    /**
+     * Splits a record on a separator character, dropping trailing empty fields like String.split.
+     *
+     * @param record    The record to split.
+     * @param separator The separator character.
+     * @return The fields of the record.
+     */
+    public static String[] split(String record, char separator) {
+        return split(record, separator, false);
+    }
+
+    /**
+     * Splits a record on a separator character, keeping trailing empty fields like String.split with limit -1.
+     *
+     * @param record    The record to split.
+     * @param separator The separator character.
+     * @return The fields of the record.
+     */
+    public static String[] splitAll(String record, char separator) {
+        return split(record, separator, true);
+    }
+
+    private static String[] split(String record, char separator, boolean keepTrailingEmpty) {
+        int count = 1;
+        for (int i = record.indexOf(separator); i >= 0; i = record.indexOf(separator, i + 1)) {
+            count++;
+        }
+        if (count == 1) {
+            return new String[] { record };
+        }
+
+        int end = record.length();
+        if (!keepTrailingEmpty) {
+            while (end > 0 && record.charAt(end - 1) == separator) {
+                end--;
+                count--;
+            }
+            if (end == 0) {
+                return new String[0];
+            }
+        }
+
+        String[] fields = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int next = record.indexOf(separator, start);
+            fields[i] = record.substring(start, next);
+            start = next + 1;
+        }
+        fields[count - 1] = record.substring(start, end);
+        return fields;
+    }
+
+    // ====================== Dates and times ========================= //
+
+    /**
+     * Parses a yyyy-MM-dd date.
+     *
+     * @param text     The date text.
+     * @param fallback Formatter used when the text is not a plain, valid date.
+     * @return The parsed date.
+     * @throws java.time.format.DateTimeParseException If the fallback formatter rejects the text.
+     */
+    public static LocalDate parseDate(String text, DateTimeFormatter fallback) {
+        if (text.length() == 10) {
+            LocalDate date = parseDate(text, 0);
+            if (date != null) {
+                return date;
+            }
+        }
+        return LocalDate.parse(text, fallback);
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date with the record date formatter as fallback.
+     *
+     * @param text The date text.
+     * @return The parsed date.
+     */
+    public static LocalDate parseDate(String text) {
+        return parseDate(text, DATE_FORMATTER);
+    }
+
+    /**
+     * Parses a yyyy-MM-ddTHH:mm value at a position of a string.
+     *
+     * @param text The text containing the value.
+     * @param from Index of the first character of the value.
+     * @return The parsed date and time, or null if the text does not hold a plain, valid value there.
+     */
+    public static LocalDateTime parseDateTime(String text, int from) {
+        if (text.length() < from + DATE_TIME_LENGTH || text.charAt(from + 10) != 'T' || text.charAt(from + 13) != ':') {
+            return null;
+        }
+        LocalDate date = parseDate(text, from);
+        int hour = digits(text, from + 11, 2);
+        int minute = digits(text, from + 14, 2);
+        if (date == null || hour < 0 || minute < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth(), hour, minute);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date at a position of a string.
+     *
+     * @return The date, or null if the text is not a plain, valid date from year 1 to 9999.
+     */
+    private static LocalDate parseDate(String text, int from) {
+        if (text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-') {
+            return null;
+        }
+        int year = digits(text, from, 4);
+        int month = digits(text, from + 5, 2);
+        int day = digits(text, from + 8, 2);
+        if (year < 1 || month < 0 || day < 0) {
+            return null;
+        }
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a fixed number of decimal digits.
+     *
+     * @return The value of the digits, or -1 if any character is not a digit.
+     */
+    private static int digits(String text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Appends a date in yyyy-MM-dd form.
+     *
+     * @param sb       The builder to append to.
+     * @param date     The date.
+     * @param fallback Formatter used for years outside 1 to 9999.
+     */
+    public static void appendDate(StringBuilder sb, LocalDate date, DateTimeFormatter fallback) {
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            sb.append(date.format(fallback));
+            return;
+        }
+        appendDigits(sb, year, 4);
+        sb.append('-');
+        appendDigits(sb, date.getMonthValue(), 2);
+        sb.append('-');
+        appendDigits(sb, date.getDayOfMonth(), 2);
+    }
+
+    /**
+     * Appends a date and time in yyyy-MM-ddTHH:mm form.
+     *
+     * @param sb       The builder to append to.
+     * @param dateTime The date and time.
+     */
+    public static void appendDateTime(StringBuilder sb, LocalDateTime dateTime) {
+        int year = dateTime.getYear();
+        if (year < 1 || year > 9999) {
+            sb.append(dateTime.format(DATE_TIME_FORMATTER));
+            return;
+        }
+        appendDate(sb, dateTime.toLocalDate(), DATE_FORMATTER);
+        sb.append('T');
+        appendDigits(sb, dateTime.getHour(), 2);
+        sb.append(':');
+        appendDigits(sb, dateTime.getMinute(), 2);
+    }
+
+    /**
+     * Appends a time slot in the yyyy-MM-ddTHH:mm-yyyy-MM-ddTHH:mm form read by TimeSlot.parse.
+     *
+     * @param sb       The builder to append to.
+     * @param timeSlot The time slot.
+     */
+    public static void appendTimeSlot(StringBuilder sb, TimeSlot timeSlot) {
+        appendDateTime(sb, timeSlot.getStartTime());
+        sb.append('-');
+        appendDateTime(sb, timeSlot.getEndTime());
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    // ====================== Records ========================= //
+
+    /**
+     * Serializes an appointment.
+     *
+     * Format: id|patientId|doctorId|timeSlot|status|outcomeRecord
+     *
+     * @param appointment The appointment.
+     * @return The serialized appointment.
+     */
+    public static String encodeAppointment(Appointment appointment) {
+        StringBuilder sb = buffer();
+        sb.append(appointment.getId()).append(TextDB.SEPARATOR)
+                .append(appointment.getPatientId()).append(TextDB.SEPARATOR)
+                .append(appointment.getDoctorId()).append(TextDB.SEPARATOR);
+        appendTimeSlot(sb, appointment.getTimeSlot());
+        sb.append(TextDB.SEPARATOR).append(appointment.getStatus().getLabel())
+                .append(TextDB.SEPARATOR).append(appointment.getOutcomeRecord());
+        return release(sb);
+    }
+
+    /**
+     * Deserializes an appointment.
+     *
+     * @param data The serialized appointment.
+     * @return The appointment.
+     * @throws IllegalArgumentException If the data has fewer than six fields or an unknown status.
+     */
+    public static Appointment decodeAppointment(String data) {
+        String[] fields = split(data, '|');
+
+        if (fields.length < 6) {
+            System.err.println("Invalid appointment data: " + data);
+            throw new IllegalArgumentException("Invalid appointment data: " + data);
+        }
+
+        return new Appointment(Integer.parseInt(fields[0]), fields[1], fields[2],
+                TimeSlot.parse(fields[3]), AppointmentStatus.fromString(fields[4]), fields[5]);
+    }
+
+    /**
+     * Serializes a medical record.
+     *
+     * Format: patientID|name|dateOfBirth|gender|phone|email|bloodType|diag1;date1,diag2;date2|treatment1^treatment2
+     *
+     * @param record The medical record.
+     * @return The serialized medical record.
+     */
+    public static String encodeMedicalRecord(MedicalRecord record) {
+        StringBuilder sb = buffer();
+        sb.append(record.getPatientID()).append(TextDB.SEPARATOR);
+        sb.append(record.getName()).append(TextDB.SEPARATOR);
+        appendDate(sb, record.getDateOfBirth(), DATE_FORMATTER);
+        sb.append(TextDB.SEPARATOR);
+        sb.append(record.getGender()).append(TextDB.SEPARATOR);
+        sb.append(record.getContactInformation().getPhoneNumber()).append(TextDB.SEPARATOR);
+        sb.append(record.getContactInformation().getEmailAddress()).append(TextDB.SEPARATOR);
+        sb.append(record.getBloodType() != null ? record.getBloodType() : "NULL").append(TextDB.SEPARATOR);
+
+        String encodedDiagnoses = record.getEncodedDiagnoses();
+        List<Diagnosis> diagnoses = encodedDiagnoses == null ? record.getPastDiagnoses() : null;
+        if (encodedDiagnoses != null) {
+            sb.append(encodedDiagnoses);
+        } else if (diagnoses != null && !diagnoses.isEmpty()) {
+            for (int i = 0; i < diagnoses.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(diagnoses.get(i).getDescription()).append(';');
+                appendDate(sb, diagnoses.get(i).getDate(), DATE_FORMATTER);
+            }
+        } else {
+            sb.append("NULL");
+        }
+        sb.append(TextDB.SEPARATOR);
+
+        String encodedTreatments = record.getEncodedTreatments();
+        List<Treatment> treatments = encodedTreatments == null ? record.getPastTreatments() : null;
+        if (encodedTreatments != null) {
+            sb.append(encodedTreatments);
+        } else if (treatments != null && !treatments.isEmpty()) {
+            for (int i = 0; i < treatments.size(); i++) {
+                if (i > 0) {
+                    sb.append('^');
+                }
+                appendTreatment(sb, treatments.get(i));
+            }
+        } else {
+            sb.append("NULL");
+        }
+        return release(sb);
+    }
+
+    /**
+     * Deserializes a medical record. Diagnoses and treatments are kept encoded and
+     * only parsed when the record's lists are first accessed.
+     *
+     * @param data The serialized medical record.
+     * @return The medical record.
+     * @throws IllegalArgumentException If the data has fewer than nine fields.
+     */
+    public static MedicalRecord decodeMedicalRecord(String data) {
+        String[] fields = splitAll(data, '|');
+
+        if (fields.length < 9) {
+            throw new IllegalArgumentException("Invalid medical record data: " + data);
+        }
+
+        LocalDate dob = parseDate(fields[2]);
+        String bloodType = fields[6].equals("NULL") ? null : fields[6];
+        ContactInformation contactInfo = new ContactInformation(fields[4], fields[5]);
+
+        return new MedicalRecord(fields[0], fields[1], dob, fields[3], contactInfo, bloodType,
+                isEmptySection(fields[7]) ? null : fields[7], isEmptySection(fields[8]) ? null : fields[8]);
+    }
+
+    /**
+     * Deserializes the diagnoses section of a medical record.
+     *
+     * Format: diag1;date1,diag2;date2
+     *
+     * @param data The serialized diagnoses, or NULL.
+     * @return Mutable list of the diagnoses; malformed entries are skipped.
+     */
+    public static List<Diagnosis> decodeDiagnoses(String data) {
+        List<Diagnosis> diagnoses = new ArrayList<>();
+        if (!isEmptySection(data)) {
+            for (String diag : split(data, ',')) {
+                String[] diagFields = split(diag, ';');
+                if (diagFields.length == 2) {
+                    diagnoses.add(new Diagnosis(diagFields[0], parseDate(diagFields[1])));
+                }
+            }
+        }
+        return diagnoses;
+    }
+
+    /**
+     * Deserializes the treatments section of a medical record.
+     *
+     * Format: treatment1^treatment2
+     *
+     * @param data The serialized treatments, or NULL.
+     * @return Mutable list of the treatments.
+     */
+    public static List<Treatment> decodeTreatments(String data) {
+        List<Treatment> treatments = new ArrayList<>();
+        if (!isEmptySection(data)) {
+            for (String treat : split(data, '^')) {
+                treatments.add(decodeTreatment(treat));
+            }
+        }
+        return treatments;
+    }
+
+    private static boolean isEmptySection(String data) {
+        return data.equals("NULL") || data.trim().isEmpty();
+    }
+
+    /**
+     * Serializes a treatment.
+     *
+     * @param treatment The treatment.
+     * @return The serialized treatment.
+     */
+    public static String encodeTreatment(Treatment treatment) {
+        StringBuilder sb = buffer();
+        appendTreatment(sb, treatment);
+        return release(sb);
+    }
+
+    /**
+     * Appends a serialized treatment.
+     *
+     * Format: serviceType;dateOfAppointment;med1:status1,med2:status2;treatmentComments;doctorId
+     *
+     * @param sb        The builder to append to.
+     * @param treatment The treatment.
+     */
+    public static void appendTreatment(StringBuilder sb, Treatment treatment) {
+        sb.append(treatment.getServiceType() != null ? treatment.getServiceType() : "NULL").append(';');
+        if (treatment.getDateOfAppointment() != null) {
+            appendDate(sb, treatment.getDateOfAppointment(), DateTimeFormatter.ISO_LOCAL_DATE);
+        } else {
+            sb.append("NULL");
+        }
+        sb.append(';');
+
+        List<Prescription> medicines = treatment.getAllPrescribedMedicine();
+        if (medicines != null && !medicines.isEmpty()) {
+            for (int i = 0; i < medicines.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(medicines.get(i).getMedicationName()).append(':').append(medicines.get(i).getStatus());
+            }
+        } else {
+            sb.append("NULL");
+        }
+        sb.append(';');
+
+        String comments = treatment.getTreatmentComments();
+        sb.append(comments != null ? comments.replace(";", "\\;") : "NULL").append(';');
+        sb.append(treatment.getDoctorId() != null ? treatment.getDoctorId() : "NULL");
+    }
+
+    /**
+     * Deserializes a treatment.
+     *
+     * @param data The serialized treatment.
+     * @return The treatment.
+     * @throws IllegalArgumentException If the data does not have exactly five fields.
+     */
+    public static Treatment decodeTreatment(String data) {
+        String[] parts = splitAll(data, ';');
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Invalid Treatment data: " + data);
+        }
+
+        Treatment treatment = new Treatment();
+        treatment.setServiceType(parts[0].equals("NULL") ? null : parts[0]);
+        treatment.setDateOfAppointment(parts[1].equals("NULL") ? null : parseDate(parts[1], DateTimeFormatter.ISO_LOCAL_DATE));
+        treatment.setTreatmentComments(parts[3].equals("NULL") ? "" : parts[3].replace("\\;", ";"));
+        treatment.setDoctorId(parts[4].equals("NULL") ? null : parts[4]);
+
+        String medsPart = parts[2];
+        if (!medsPart.equals("NULL") && !medsPart.trim().isEmpty()) {
+            for (String med : split(medsPart, ',')) {
+                String[] medParts = split(med, ':');
+                if (medParts.length == 2) {
+                    treatment.addPrescription(new Prescription(medParts[0], medParts[1]));
+                }
+            }
+        }
+        return treatment;
+    }
+
+    // ====================== Buffer ========================= //
+
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static String release(StringBuilder sb) {
+        String result = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove(); // Do not pin the memory of an unusually large record
+        }
+        return result;
+    }
+}
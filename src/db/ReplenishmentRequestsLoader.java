@@ -39,11 +39,8 @@ public class ReplenishmentRequestsLoader extends DataLoader<ReplenishmentRequest
      */
     @Override
     public void loadData() throws IOException {
-        List<String> lines = read(filePath);
         replenishmentRequests.clear();
-        for (String line : lines) {
-            replenishmentRequests.add(deserialize(line));
-        }
+        LineReader.forEachLine(filePath, line -> replenishmentRequests.add(deserialize(line)));
     }
 
     /**
@@ -111,4 +108,16 @@ public class ReplenishmentRequestsLoader extends DataLoader<ReplenishmentRequest
                 request.getRequestDate() != null ? request.getRequestDate().format(DateTimeFormatter.ISO_LOCAL_DATE) : "NULL"
         );
     }
+
+    /**
+     * Hands the loaded ReplenishmentRequest objects over to the caller without copying them.
+     *
+     * @return Mutable list of the loaded ReplenishmentRequest objects.
+     */
+    @Override
+    List<ReplenishmentRequest> detachData() {
+        List<ReplenishmentRequest> loaded = replenishmentRequests;
+        replenishmentRequests = new ArrayList<>();
+        return loaded;
+    }
 }
@@ -0,0 +1,237 @@
+package db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * SchedulesLoader
+ * Indexes schedules.txt by doctor so that a doctor's schedule is only parsed when it is first used.
+ *
+ * Loading scans the file once and records the byte offset and length of every line
+ * under the doctor ID it starts with; no time slot is created. When a doctor's
+ * schedule is needed, readLines reads back just that doctor's lines and forgets
+ * them, so every line is parsed at most once.
+ *
+ * The offsets describe the file as it was loaded. saveData rewrites the file with
+ * the lines rendered by TextDB, which materializes every doctor's schedule to do
+ * so, and then forgets the index.
+ */
+public class SchedulesLoader extends DataLoader<String> {
+    private static final int CHUNK_SIZE = 256 * 1024; /**< Number of bytes read per chunk while indexing. */
+
+    /**
+     * Offsets and lengths of one doctor's lines, in file order.
+     */
+    private static final class Lines {
+        private long[] offsets = new long[4]; /**< Byte offset of each line. */
+        private int[] lengths = new int[4];   /**< Byte length of each line, without its terminator. */
+        private int count;                    /**< Number of lines. */
+
+        private void add(long offset, int length) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+    }
+
+    private final Supplier<List<String>> lineSource; /**< Renders the current schedules as file lines. */
+    private Map<String, Lines> index; /**< Lines of each doctor that has not been materialized yet. */
+    private List<String> doctorIds;   /**< Doctor IDs in order of their first line. */
+
+    /**
+     * Constructs a SchedulesLoader with the specified file path.
+     *
+     * @param filePath   Path to the file associated with this SchedulesLoader.
+     * @param lineSource Renders the current schedules as file lines, for saveData.
+     */
+    public SchedulesLoader(String filePath, Supplier<List<String>> lineSource) {
+        super(filePath);
+        this.lineSource = lineSource;
+        this.index = new HashMap<>();
+        this.doctorIds = new ArrayList<>();
+    }
+
+    /**
+     * Builds the per-doctor line index of the associated file.
+     *
+     * Lines end at "\n", "\r\n" or "\r", as for LineReader. The doctor ID of a line is
+     * the text before its first separator.
+     *
+     * @throws IOException If an I/O error occurs during file reading.
+     */
+    @Override
+    public synchronized void loadData() throws IOException {
+        index = new HashMap<>();
+        doctorIds = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            byte[] line = new byte[256]; // Bytes of the current line up to its separator
+            int idLength = 0;
+            boolean separatorSeen = false;
+            long lineStart = 0;
+            long position = 0;
+            boolean skipLineFeed = false;
+
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < buffer.limit(); i++, position++) {
+                    byte b = bytes[i];
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (b == '\n') {
+                            lineStart = position + 1; // Second half of "\r\n"
+                            continue;
+                        }
+                    }
+                    if (b == '\n' || b == '\r') {
+                        addLine(new String(line, 0, idLength, StandardCharsets.UTF_8), lineStart, position - lineStart);
+                        idLength = 0;
+                        separatorSeen = false;
+                        lineStart = position + 1;
+                        skipLineFeed = b == '\r';
+                    } else if (!separatorSeen) {
+                        if (b == SEPARATOR.charAt(0)) {
+                            separatorSeen = true;
+                        } else {
+                            if (idLength == line.length) {
+                                line = Arrays.copyOf(line, idLength * 2);
+                            }
+                            line[idLength++] = b;
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+
+            if (position > lineStart) {
+                addLine(new String(line, 0, idLength, StandardCharsets.UTF_8), lineStart, position - lineStart);
+            }
+        }
+    }
+
+    private void addLine(String doctorId, long offset, long length) {
+        Lines lines = index.get(doctorId);
+        if (lines == null) {
+            lines = new Lines();
+            index.put(doctorId, lines);
+            doctorIds.add(doctorId);
+        }
+        lines.add(offset, (int) length);
+    }
+
+    /**
+     * Rewrites the associated file with the current schedules and forgets the line
+     * index, whose offsets no longer match the file.
+     *
+     * Not synchronized: rendering materializes schedules, which reads lines back
+     * through this loader while holding the doctor's lock.
+     *
+     * @throws IOException If an I/O error occurs during file writing.
+     */
+    @Override
+    public void saveData() throws IOException {
+        write(filePath, lineSource.get());
+        clearIndex(); // Every doctor's schedule was materialized to render the lines
+    }
+
+    /**
+     * Gets the number of indexed lines of a doctor.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return Number of lines not yet read back, or 0 if there are none.
+     */
+    public synchronized int getLineCount(String doctorId) {
+        Lines lines = index.get(doctorId);
+        return lines != null ? lines.count : 0;
+    }
+
+    /**
+     * Reads back a doctor's lines and removes them from the index.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return The doctor's schedules.txt lines in file order; empty if they were already read.
+     * @throws IOException If an I/O error occurs during file reading.
+     */
+    public synchronized List<String> readLines(String doctorId) throws IOException {
+        Lines lines = index.get(doctorId);
+        if (lines == null) {
+            return new ArrayList<>();
+        }
+
+        List<String> result = new ArrayList<>(lines.count);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            for (int i = 0; i < lines.count; i++) {
+                ByteBuffer buffer = ByteBuffer.allocate(lines.lengths[i]);
+                long offset = lines.offsets[i];
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, offset + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Schedules file changed since it was indexed: " + filePath);
+                    }
+                }
+                result.add(deserialize(new String(buffer.array(), StandardCharsets.UTF_8)));
+            }
+        }
+        index.remove(doctorId);
+        return result;
+    }
+
+    /**
+     * Forgets every indexed line; called once the file has been rewritten.
+     */
+    public synchronized void clearIndex() {
+        index = new HashMap<>();
+    }
+
+    /**
+     * Keeps a schedules.txt line as written; TextDB parses it when the schedule is materialized.
+     *
+     * @param data Line of the form doctorId|date|start-end,... or doctorId|WEEKLY|template.
+     * @return The same line.
+     */
+    @Override
+    protected String deserialize(String data) {
+        return data;
+    }
+
+    /**
+     * Lines are written by TextDB, so a line is its own serialized form.
+     *
+     * @param data Schedules.txt line.
+     * @return The same line.
+     */
+    @Override
+    protected String serialize(String data) {
+        return data;
+    }
+
+    /**
+     * Hands the indexed doctor IDs over to the caller, in order of their first line.
+     *
+     * The line index itself stays with the loader until the lines are read back.
+     *
+     * @return Mutable list of the doctor IDs found in the file.
+     */
+    @Override
+    synchronized List<String> detachData() {
+        List<String> loaded = doctorIds;
+        doctorIds = new ArrayList<>();
+        return loaded;
+    }
+}
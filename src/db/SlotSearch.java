@@ -0,0 +1,163 @@
+package db;
+
+import items.appointments.Schedule;
+import items.appointments.TimeSlot;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import user_classes.Doctor;
+
+/**
+ * SlotSearch
+ * Finds the earliest free appointment slots across several doctors.
+ *
+ * Every doctor gets a cursor that walks the doctor's dates in ascending order and
+ * computes the free slots of a date only when the cursor reaches it. The cursors
+ * are merged through a priority queue ordered by slot start time, so a search for
+ * the first N slots touches N slots plus one date per doctor, however many dates
+ * the range covers. Slots that start before the search's cut-off time are skipped,
+ * so a search never offers a time that has already passed.
+ */
+public class SlotSearch {
+
+    /**
+     * Supplies the slots that are already booked for a doctor on a date.
+     */
+    public interface Occupancy {
+        Collection<TimeSlot> occupiedSlots(String doctorId, LocalDate date);
+    }
+
+    /**
+     * A free slot together with the doctor it belongs to.
+     */
+    public static final class Match {
+        private final Doctor doctor;     /**< Doctor offering the slot. */
+        private final TimeSlot timeSlot; /**< The free slot. */
+
+        private Match(Doctor doctor, TimeSlot timeSlot) {
+            this.doctor = doctor;
+            this.timeSlot = timeSlot;
+        }
+
+        /**
+         * Gets the doctor offering the slot.
+         * @return The doctor.
+         */
+        public Doctor getDoctor() {
+            return doctor;
+        }
+
+        /**
+         * Gets the free slot.
+         * @return The time slot.
+         */
+        public TimeSlot getTimeSlot() {
+            return timeSlot;
+        }
+    }
+
+    private static final Comparator<TimeSlot> BY_START = Comparator.comparingLong(TimeSlot::getStartMinute); /**< Orders slots by start time. */
+
+    /**
+     * Walks the free slots of one doctor in start time order.
+     */
+    private final class Cursor {
+        private final Doctor doctor;              /**< Doctor whose slots are walked. */
+        private final int rank;                   /**< Position of the doctor in the search, used to break ties. */
+        private final Iterator<LocalDate> dates;  /**< Dates not yet visited. */
+        private final LocalDateTime notBefore;    /**< Slots starting before this time are skipped. */
+        private List<TimeSlot> day = new ArrayList<>(); /**< Free slots of the current date. */
+        private int position = -1;                /**< Index of the current slot in day. */
+
+        private Cursor(Doctor doctor, int rank, Iterator<LocalDate> dates, LocalDateTime notBefore) {
+            this.doctor = doctor;
+            this.rank = rank;
+            this.dates = dates;
+            this.notBefore = notBefore;
+        }
+
+        private TimeSlot head() {
+            return day.get(position);
+        }
+
+        /**
+         * Moves to the next free slot.
+         *
+         * @return False if the doctor has no further free slots in the range.
+         */
+        private boolean advance() {
+            position++;
+            while (position >= day.size()) {
+                if (!dates.hasNext()) {
+                    return false;
+                }
+                LocalDate date = dates.next();
+                day = doctor.getSchedule().getAvailableTimeSlots(date, occupancy.occupiedSlots(doctor.getHospitalID(), date));
+                if (!date.isAfter(notBefore.toLocalDate())) {
+                    day.removeIf(slot -> slot.getStartTime().isBefore(notBefore));
+                }
+                day.sort(BY_START); // Bitmap days are already sorted; a stable sort keeps them as they are
+                position = 0;
+            }
+            return true;
+        }
+    }
+
+    private final Occupancy occupancy; /**< Source of booked slots. */
+
+    /**
+     * Constructs a search over the given booked slots.
+     *
+     * @param occupancy Source of the slots that are already booked.
+     */
+    public SlotSearch(Occupancy occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * Finds the earliest free slots of a set of doctors within a date range.
+     *
+     * @param doctors Doctors to search; slots starting at the same time are returned in this order.
+     * @param from    The first date of the range.
+     * @param to      The last date of the range.
+     * @param limit   Maximum number of slots to return.
+     * @param notBefore Slots starting before this time are not returned.
+     * @return Up to limit free slots, ordered by start time.
+     */
+    public List<Match> findEarliest(List<Doctor> doctors, LocalDate from, LocalDate to, int limit, LocalDateTime notBefore) {
+        List<Match> matches = new ArrayList<>();
+        if (from.isBefore(notBefore.toLocalDate())) {
+            from = notBefore.toLocalDate(); // Earlier dates can only hold slots that are already past
+        }
+        if (limit <= 0 || from.isAfter(to)) {
+            return matches;
+        }
+
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, doctors.size()),
+                Comparator.comparing(Cursor::head, BY_START).thenComparingInt(cursor -> cursor.rank));
+        for (int i = 0; i < doctors.size(); i++) {
+            Schedule schedule = doctors.get(i).getSchedule();
+            if (schedule == null) {
+                continue;
+            }
+            Cursor cursor = new Cursor(doctors.get(i), i, schedule.getDates(from, to).iterator(), notBefore);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+
+        while (matches.size() < limit && !queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            matches.add(new Match(cursor.doctor, cursor.head()));
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return matches;
+    }
+}
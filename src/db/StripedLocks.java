@@ -0,0 +1,126 @@
+package db;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedLocks
+ * A fixed set of locks shared out among (doctor, date) pairs.
+ *
+ * Every doctor-day maps to one stripe, so changes to the same doctor-day are
+ * serialized while changes to different doctor-days usually proceed in parallel.
+ * Two doctor-days may share a stripe; that only costs parallelism, never safety.
+ *
+ * Locks are reentrant. Code that needs several doctor-days at once must take them
+ * through lock(Collection), which acquires the stripes in ascending order so that
+ * two such callers can never deadlock.
+ */
+public class StripedLocks {
+    public static final int DEFAULT_STRIPES = Integer.getInteger("hms.lockStripes", 64); /**< Default number of stripes. */
+
+    /**
+     * A doctor and a date.
+     */
+    public static final class Key {
+        private final String doctorId; /**< The doctor's hospital ID. */
+        private final LocalDate date;  /**< The date. */
+
+        /**
+         * Constructs a key for a doctor-day.
+         *
+         * @param doctorId The doctor's hospital ID.
+         * @param date     The date.
+         */
+        public Key(String doctorId, LocalDate date) {
+            this.doctorId = doctorId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(doctorId, key.doctorId) && Objects.equals(date, key.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, date);
+        }
+    }
+
+    private final ReentrantLock[] stripes; /**< The locks; the length is a power of two. */
+
+    /**
+     * Constructs a set of at least the given number of stripes, rounded up to a power of two.
+     *
+     * @param stripes Minimum number of stripes.
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of lock stripes must be positive: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Acquires the stripe of a doctor-day.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date.
+     * @return The acquired lock, to be released with unlock.
+     */
+    public ReentrantLock lock(String doctorId, LocalDate date) {
+        ReentrantLock lock = stripes[index(doctorId, date)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Acquires the stripes of several doctor-days, in ascending stripe order.
+     *
+     * @param keys The doctor-days; duplicates and shared stripes are locked once.
+     * @return The acquired locks, to be released with unlock.
+     */
+    public List<ReentrantLock> lock(Iterable<Key> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Key key : keys) {
+            indexes.add(index(key.doctorId, key.date));
+        }
+        List<ReentrantLock> locked = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            stripes[index].lock();
+            locked.add(stripes[index]);
+        }
+        return locked;
+    }
+
+    /**
+     * Releases locks acquired through lock(Iterable), in reverse order.
+     *
+     * @param locks The acquired locks.
+     */
+    public static void unlock(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private int index(String doctorId, LocalDate date) {
+        int hash = Objects.hash(doctorId, date);
+        hash ^= hash >>> 16;
+        return hash & (stripes.length - 1);
+    }
+}
@@ -2,159 +2,860 @@ package db;
 
 import items.*;
 import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
 import items.appointments.Schedule;
 import items.appointments.TimeSlot;
+import items.appointments.WeeklyTemplate;
 import items.medical_records.MedicalRecord;
 import items.medical_records.Treatment;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import user_classes.*;
 
 public class TextDB {
-	private List<DataLoader> loaders;
-    private static TextDB instance;
-    private List<MedicalRecord> medicalRecords;
+	private List<DataLoader<?>> loaders;
+    private static volatile TextDB instance;
     public static final String SEPARATOR = "|";
     private static List<User> users;
-    private static List<Appointment> appointments;
+    private static final UserIndex userIndex = new UserIndex(); /**< Hash indexes over users. */
+    private static List<Appointment> appointments; /**< All appointments; a synchronized list, copied with copyOf before iterating. */
+    private static final AvailabilityCache availabilityCache = new AvailabilityCache(AvailabilityCache.DEFAULT_CAPACITY); /**< Free slots of recently viewed doctor-days. */
+    private static final OccupancyMap occupancy = new OccupancyMap(availabilityCache::invalidate); /**< Booked slots by doctor and date. */
+    private static final AppointmentIndex appointmentIndex = new AppointmentIndex(occupancy); /**< Secondary indexes over appointments. */
+    private static final StripedLocks bookingLocks = new StripedLocks(StripedLocks.DEFAULT_STRIPES); /**< Serializes appointment changes per doctor-day. */
     private List<Medication> medications;
     public List<ReplenishmentRequest> replenishmentRequests;
+    private List<String> scheduledDoctorIds = new ArrayList<>(); /**< Doctors with lines in schedules.txt, in file order. */
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final String WAL_FILE = "db.wal";
+    private static final String SNAPSHOT_FILE = "db.snapshot"; /**< Binary snapshot of the text files, next to them rather than in the DBsnapshot fixtures. */
+    private static final String MEDICAL_RECORDS_FILE = "med_records.txt"; /**< Text file the medical record store is first imported from. */
+    private static final String MEDICAL_RECORDS_DIR = "med_records"; /**< Directory of the medical record store. */
+    private static final String TREATMENT_LOG_DIR = "treatment_logs"; /**< Directory of the per-patient treatment logs. */
+    private static final int CHECKPOINT_THRESHOLD = 1000; /**< Log records after which the data files are checkpointed. */
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("hms.flushIntervalMillis", 1000L); /**< Delay between background flushes. */
+    private final WriteAheadLog wal;
+    private final AppointmentIdSequence appointmentIds; /**< Allocates appointment IDs. */
+    private final SlotSearch slotSearch = new SlotSearch(this::getOccupiedSlots); /**< Earliest free slot search across doctors. */
+    private final Waitlist waitlist = new Waitlist(); /**< Patients waiting for a freed slot. */
+    private final BinarySnapshot snapshot;
+    private final MedicalRecordStore medicalRecordStore; /**< Per-patient storage of the medical records. */
+    private final TreatmentLog treatmentLog; /**< Treatments and prescription statuses recorded since the last compaction. */
+    private final MedicalRecordCache medicalRecordCache; /**< Recently used medical records; the store's index is all that stays resident otherwise. */
+    private final MedicalRecordIndex medicalRecordIndex = new MedicalRecordIndex(); /**< Full-text index over diagnoses and treatments. */
+    private final Object medicalRecordLock = new Object(); /**< Serializes changes to medical records. */
+    private final EnumSet<DataFile> dirtyFiles = EnumSet.noneOf(DataFile.class); /**< Files changed without a log record. */
+    private final Object flushLock = new Object(); /**< Serializes flushes, without blocking mutations. */
+    private ScheduledExecutorService flusher; /**< Runs the background flush. */
+
+    /**
+     * Data files written by TextDB.
+     */
+    private enum DataFile {
+        USERS("users.txt"),
+        APPOINTMENTS("appts.txt"),
+        SCHEDULES("schedules.txt"),
+        MEDICATIONS("inventory.txt"),
+        REPLENISHMENT_REQUESTS("replenishment_requests.txt"),
+        WAITLIST("waitlist.txt");
+
+        private final String fileName; /**< Name of the file on disk. */
+        private final Object writeLock = new Object(); /**< Held while the file is copied and written, so an older copy never replaces a newer one. */
+
+        DataFile(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+    private final UsersLoader usersLoader;
+    private final MedicationInventoryLoader medicationLoader;
+    private final ReplenishmentRequestsLoader replenishmentLoader;
+    private final SchedulesLoader schedulesLoader;
 
     /**
      * Default constructor.
      */
     private TextDB() {
+    	usersLoader = new UsersLoader("users.txt");
+    	medicationLoader = new MedicationInventoryLoader("inventory.txt");
+    	replenishmentLoader = new ReplenishmentRequestsLoader("replenishment_requests.txt");
+    	schedulesLoader = new SchedulesLoader("schedules.txt", this::renderSchedules);
     	loaders = new ArrayList<>();
-    	loaders.add(new MedicalRecordLoader("med_records.txt"));
-    	loaders.add(new UsersLoader("users.txt"));
+    	loaders.add(usersLoader);
     	loaders.add(new AppointmentsLoader("appts.txt"));
-    	loaders.add(new MedicationInventoryLoader("inventory.txt"));
-    	loaders.add(new ReplenishmentRequestsLoader("replenishment_requests.txt"));
-        users = new ArrayList<>();
-        appointments = new ArrayList<>();
-        medicalRecords = new ArrayList<>();
-        medications = new ArrayList<>();
-        replenishmentRequests = new ArrayList<>();
+    	loaders.add(medicationLoader);
+    	loaders.add(replenishmentLoader);
+    	loaders.add(schedulesLoader);
+        users = Collections.synchronizedList(new ArrayList<>());
+        appointments = Collections.synchronizedList(new ArrayList<>());
+        medications = Collections.synchronizedList(new ArrayList<>());
+        replenishmentRequests = Collections.synchronizedList(new ArrayList<>());
+        wal = new WriteAheadLog(WAL_FILE);
+        appointmentIds = new AppointmentIdSequence(this::logAppointmentIdReservation);
+        snapshot = new BinarySnapshot(SNAPSHOT_FILE);
+        medicalRecordStore = new MedicalRecordStore(MEDICAL_RECORDS_DIR);
+        treatmentLog = new TreatmentLog(TREATMENT_LOG_DIR);
+        medicalRecordCache = new MedicalRecordCache(MedicalRecordCache.DEFAULT_CAPACITY,
+                patientId -> treatmentLog.read(medicalRecordStore, patientId),
+                record -> treatmentLog.compact(record, medicalRecordStore));
     }
     
     /**
-     * Calculates the result.
+     * Gets the single TextDB instance, creating and loading it on first use.
+     *
+     * Creation is synchronized, so concurrent first calls share one instance. The
+     * instance is published before it is loaded, because loading constructs patients,
+     * which look up their medical records through getInstance.
      *
-     * @param a First parameter for calculation.
-     * @param b Second parameter for calculation.
-     * @return The calculated result.
+     * @return The TextDB instance.
      */
     public static TextDB getInstance() {
-        if (instance == null) {
-            instance = new TextDB();
+        TextDB db = instance;
+        if (db != null) {
+            return db;
+        }
+        synchronized (TextDB.class) {
+            if (instance != null) {
+                return instance;
+            }
+            TextDB created = new TextDB();
+            instance = created;
             try {
-                instance.loadAllData();
+                created.loadAllData();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            created.startFlusher();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                created.flusher.shutdown();
+                try {
+                    created.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    created.snapshot.refresh();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Could not write binary snapshot: " + e.getMessage());
+                }
+            }));
+            return created;
         }
-        return instance;
     }
 
     /**
      * Loads all data including users, appointments, medical records, and schedules.
+     *
+     * Medical records come first, because patients look up their record while being
+     * loaded. For the rest, the binary snapshot is used while it matches the text files;
+     * otherwise the text files are parsed. The waitlist is small and always read from
+     * its text file. The write-ahead log is replayed on top in all cases.
      */
     private void loadAllData() throws IOException {
-    	for (DataLoader loader : loaders) {
+        loadMedicalRecords();
+        if (!loadSnapshot()) {
+            loadTextFiles();
+        }
+        loadWaitlist();
+        wal.replay(this::applyLogRecord);
+        for (Appointment appointment : appointments) {
+            appointmentIds.advancePast(appointment.getId());
+        }
+        appointmentIds.checkpoint();
+    }
+
+    /**
+     * Opens the medical record store, importing med_records.txt the first time, and the
+     * treatment logs, then builds the full-text index. Records are only kept in memory
+     * once requested.
+     *
+     * @throws IOException If the store, med_records.txt or a treatment log cannot be read.
+     */
+    private void loadMedicalRecords() throws IOException {
+        if (medicalRecordStore.exists()) {
+            medicalRecordStore.open();
+        } else {
+            MedicalRecordLoader loader = new MedicalRecordLoader(MEDICAL_RECORDS_FILE);
             loader.loadData();
-            if (loader instanceof MedicalRecordLoader) {
-                medicalRecords = new ArrayList<>(((MedicalRecordLoader) loader).getMedicalRecords());
+            medicalRecordStore.create(loader.detachData(), MedicalRecordStore.DEFAULT_SEGMENTS);
+        }
+        treatmentLog.open();
+        buildMedicalRecordIndex();
+    }
+
+    /**
+     * Builds the full-text index, indexing each segment of the store in parallel on
+     * the fork-join pool and merging the per-segment indexes.
+     *
+     * @throws IOException If a segment or a treatment log cannot be read.
+     */
+    private void buildMedicalRecordIndex() throws IOException {
+        List<ForkJoinTask<MedicalRecordIndex>> tasks = new ArrayList<>();
+        for (int i = 0; i < medicalRecordStore.getSegmentCount(); i++) {
+            int segment = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                MedicalRecordIndex partial = new MedicalRecordIndex();
+                for (MedicalRecord record : medicalRecordStore.loadSegment(segment)) {
+                    if (treatmentLog.hasLog(record.getPatientID())) {
+                        record = treatmentLog.read(medicalRecordStore, record.getPatientID());
+                    }
+                    partial.index(record);
+                }
+                return partial;
+            }).fork());
+        }
+        for (ForkJoinTask<MedicalRecordIndex> task : tasks) {
+            try {
+                medicalRecordIndex.merge(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while indexing medical records", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
             }
-            if (loader instanceof UsersLoader) {
-            	users = new ArrayList<>(((UsersLoader) loader).getUsers());
+        }
+    }
+
+    /**
+     * Reads the waiting requests from waitlist.txt, if the file exists.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    private void loadWaitlist() throws IOException {
+        if (Files.exists(Paths.get(DataFile.WAITLIST.fileName))) {
+            LineReader.forEachLine(DataFile.WAITLIST.fileName, line -> waitlist.restore(Waitlist.parse(line)));
+        }
+    }
+
+    /**
+     * Loads all data from the binary snapshot if it is fresh.
+     *
+     * @return True if the snapshot was loaded, false if the text files must be parsed.
+     */
+    private boolean loadSnapshot() {
+        if (!snapshot.isFresh()) {
+            return false;
+        }
+        try {
+            BinarySnapshot.Reader reader = snapshot.open();
+            users = Collections.synchronizedList(reader.readUsers());
+            userIndex.rebuild(users);
+            appointments = Collections.synchronizedList(reader.readAppointments());
+            appointmentIndex.rebuild(appointments);
+            medications = Collections.synchronizedList(reader.readMedications());
+            replenishmentRequests = Collections.synchronizedList(reader.readReplenishmentRequests());
+            reader.readSchedules(this::applySchedule, this::applyScheduleLine);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load binary snapshot, loading text files instead: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Parses the text data files, running the loaders concurrently.
+     *
+     * @throws IOException If a data file cannot be read.
+     */
+    private void loadTextFiles() throws IOException {
+        // Loaders touch disjoint files, so they run concurrently. Patients check for their
+        // medical record while being deserialized, which needs the store opened by loadMedicalRecords.
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            Map<DataLoader<?>, ForkJoinTask<?>> tasks = new LinkedHashMap<>();
+            for (DataLoader<?> loader : loaders) {
+                tasks.put(loader, submitLoad(pool, loader));
             }
-            if (loader instanceof AppointmentsLoader) {
-            	appointments = new ArrayList<>(((AppointmentsLoader) loader).getAppointments());
+
+            IOException failure = null;
+            for (Map.Entry<DataLoader<?>, ForkJoinTask<?>> entry : tasks.entrySet()) {
+                IOException error = awaitAndAdopt(entry.getKey(), entry.getValue());
+                if (failure == null) {
+                    failure = error;
+                }
             }
-            if (loader instanceof MedicationInventoryLoader) {
-            	medications = new ArrayList<>(((MedicationInventoryLoader) loader).getMedicationInventory());
+            if (failure != null) {
+                throw failure;
             }
-            if (loader instanceof ReplenishmentRequestsLoader) {
-            	replenishmentRequests = new ArrayList<>(((ReplenishmentRequestsLoader) loader).getReplenishmentRequests());
+        } finally {
+            pool.shutdown();
+        }
+
+        deferSchedules();
+    }
+
+    /**
+     * Submits a loader's loadData call to the given pool.
+     *
+     * @param pool   Pool running the load.
+     * @param loader Loader to run.
+     * @return Task completing once the loader has read its file.
+     */
+    private static ForkJoinTask<?> submitLoad(ForkJoinPool pool, DataLoader<?> loader) {
+        return pool.submit(() -> {
+            loader.loadData();
+            return null;
+        });
+    }
+
+    /**
+     * Waits for a loader to finish and takes over its list without copying it.
+     *
+     * @param loader Loader that was submitted.
+     * @param task   Task running the loader.
+     * @return The I/O error raised by the loader, or null if it loaded successfully.
+     * @throws IOException If the wait is interrupted.
+     */
+    private IOException awaitAndAdopt(DataLoader<?> loader, ForkJoinTask<?> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + loader.filePath, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        adoptLoadedData(loader);
+        return null;
+    }
+
+    /**
+     * Takes over the list loaded by a loader without copying it.
+     *
+     * @param loader Loader whose data has been loaded.
+     */
+    private void adoptLoadedData(DataLoader<?> loader) {
+        if (loader instanceof UsersLoader) {
+            users = Collections.synchronizedList(((UsersLoader) loader).detachData());
+            userIndex.rebuild(users);
+        }
+        if (loader instanceof AppointmentsLoader) {
+            appointments = Collections.synchronizedList(((AppointmentsLoader) loader).detachData());
+            appointmentIndex.rebuild(appointments);
+        }
+        if (loader instanceof MedicationInventoryLoader) {
+            medications = Collections.synchronizedList(((MedicationInventoryLoader) loader).detachData());
+        }
+        if (loader instanceof ReplenishmentRequestsLoader) {
+            replenishmentRequests = Collections.synchronizedList(((ReplenishmentRequestsLoader) loader).detachData());
+        }
+        if (loader instanceof SchedulesLoader) {
+            scheduledDoctorIds = ((SchedulesLoader) loader).detachData();
         }
-    	/*
-        loadFromFile("users.txt");
-        loadAppointmentsFromFile("appts.txt");
-        loadMedicationInventory("inventory.txt");
-        loadReplenishmentRequests("replenishment_requests.txt");
-        */
-    	
-        loadSchedulesFromFile("schedules.txt");
     }
-    
 
+    // ====================== Write-Ahead Log ========================= //
 
-    // Existing methods for Users, Appointments, and MedicalRecords...
+    /**
+     * Appends a mutation to the write-ahead log. The record is in the log file when this
+     * returns; it is forced to disk immediately under the ALWAYS fsync policy, or by the
+     * next background flush otherwise. Only the log's own lock is taken, so logging
+     * never waits on a flush rewriting data files.
+     *
+     * @param type    Type of the mutation.
+     * @param payload Serialized payload of the mutation.
+     * @throws IOException If the record cannot be written.
+     */
+    private void log(WriteAheadLog.RecordType type, String payload) throws IOException {
+        wal.append(type, payload);
+    }
 
-    // ====================== Schedule Management ========================= //
+    /**
+     * Logs the end of a block of reserved appointment IDs.
+     *
+     * @param limit First appointment ID not covered by the reservation.
+     * @throws IOException If the record cannot be written.
+     */
+    private void logAppointmentIdReservation(int limit) throws IOException {
+        wal.append(WriteAheadLog.RecordType.APPOINTMENT_ID_RESERVE, String.valueOf(limit));
+    }
+
+    // ====================== Write-Behind Flushing ========================= //
 
     /**
-     * Loads schedules from the specified file and assigns them to respective doctors.
+     * Marks a data file as changed so that the next flush rewrites it.
      *
-     * @param filename The name of the schedules file.
-     * @throws IOException If an I/O error occurs.
+     * @param file The changed data file.
+     */
+    private synchronized void markDirty(DataFile file) {
+        dirtyFiles.add(file);
+    }
+
+    /**
+     * Starts the daemon thread that periodically flushes buffered changes.
      */
-    public void loadSchedulesFromFile(String filename) throws IOException {
-        List<String> lines = read(filename);
-        for (String line : lines) {
-            String[] fields = line.split("\\" + SEPARATOR);
-            if (fields.length < 3) {
-                System.err.println("Invalid schedule entry: " + line);
+    private void startFlusher() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TextDB-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInBackground,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::compactTreatmentLogs,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Periodic compaction: writes the records of patients with long treatment logs to
+     * the store in full and deletes their logs, so that folding a log stays cheap.
+     */
+    private void compactTreatmentLogs() {
+        for (String patientId : treatmentLog.getPatientsToCompact(TreatmentLog.COMPACTION_THRESHOLD)) {
+            MedicalRecord record = getMedicalRecordByPatientId(patientId);
+            if (record == null) {
                 continue;
             }
+            try {
+                treatmentLog.compact(record, medicalRecordStore);
+            } catch (IOException e) {
+                System.err.println("Treatment log compaction failed for patient " + patientId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Periodic flush: forces the log records written since the last flush, writes back changed
+     * medical records and rewrites the files marked dirty, so that many mutations cost
+     * one write per file per interval. Files
+     * covered by the log are only rewritten once the log reaches the checkpoint threshold.
+     */
+    private void flushInBackground() {
+        try {
+            if (wal.size() >= CHECKPOINT_THRESHOLD) {
+                flush();
+            } else {
+                synchronized (flushLock) {
+                    wal.sync();
+                    medicalRecordCache.flush();
+                    writeFiles(takeDirtyFiles());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Background flush failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every changed medical record and data file and drops the log records they
+     * cover. Records logged while the files are written stay in the log, so mutations
+     * go on during a flush. The next appointment ID is logged again afterwards, so IDs
+     * of deleted appointments are not handed out a second time after a restart.
+     *
+     * @throws IOException If a data file cannot be written.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            // Every record before the mark was applied in memory before it was logged, so the copies below include it
+            long mark = wal.mark();
+            Set<WriteAheadLog.RecordType> logged = wal.pendingTypes();
+            medicalRecordCache.flush();
+            EnumSet<DataFile> files = takeDirtyFiles();
+            for (WriteAheadLog.RecordType type : logged) {
+                DataFile file = fileOf(type);
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+            writeFiles(files);
+            wal.truncate(mark);
+            wal.append(WriteAheadLog.RecordType.APPOINTMENT_ID_RESERVE, String.valueOf(appointmentIds.checkpoint()));
+            wal.sync();
+        }
+    }
+
+    /**
+     * Takes the set of files marked dirty, clearing it. A file changed after this call
+     * is marked again and written by a later flush.
+     *
+     * @return The files marked dirty.
+     */
+    private synchronized EnumSet<DataFile> takeDirtyFiles() {
+        EnumSet<DataFile> files = EnumSet.copyOf(dirtyFiles);
+        dirtyFiles.clear();
+        return files;
+    }
+
+    /**
+     * Rewrites the given data files, marking a file dirty again if writing it fails.
+     *
+     * @param files Data files to write.
+     * @throws IOException If a data file cannot be written.
+     */
+    private void writeFiles(Set<DataFile> files) throws IOException {
+        IOException failure = null;
+        for (DataFile file : files) {
+            try {
+                switch (file) {
+                    case USERS:
+                        saveToFile(file.fileName);
+                        break;
+                    case APPOINTMENTS:
+                        saveAppointmentsToFile(file.fileName);
+                        break;
+                    case SCHEDULES:
+                        saveSchedulesToFile(file.fileName);
+                        break;
+                    case MEDICATIONS:
+                        saveMedicationInventory(file.fileName);
+                        break;
+                    case REPLENISHMENT_REQUESTS:
+                        saveReplenishmentRequests(file.fileName);
+                        break;
+                    case WAITLIST:
+                        saveWaitlist(file.fileName);
+                        break;
+                }
+            } catch (IOException e) {
+                markDirty(file);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Copies a list shared with the menus under its own lock, which its mutators hold too.
+     *
+     * @param list A list created with Collections.synchronizedList.
+     * @return A copy that can be iterated without the lock.
+     */
+    private static <T> List<T> copyOf(List<T> list) {
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
 
-            String doctorId = fields[0];
-            LocalDate date = LocalDate.parse(fields[1], DATE_FORMATTER);
-            String timeSlotsStr = fields[2];
+    /**
+     * Gets the data file that a log record type belongs to.
+     *
+     * @param type Type of the log record.
+     * @return The data file holding records of that type, or null if the record is not stored in a data file.
+     */
+    private static DataFile fileOf(WriteAheadLog.RecordType type) {
+        switch (type) {
+            case APPOINTMENT_PUT:
+            case APPOINTMENT_DELETE:
+                return DataFile.APPOINTMENTS;
+            case SCHEDULE_PUT:
+                return DataFile.SCHEDULES;
+            case MEDICATION_PUT:
+                return DataFile.MEDICATIONS;
+            case REPLENISHMENT_REQUESTS_PUT:
+                return DataFile.REPLENISHMENT_REQUESTS;
+            case WAITLIST_PUT:
+            case WAITLIST_DELETE:
+                return DataFile.WAITLIST;
+            case MEDICAL_RECORD_PUT:
+            case APPOINTMENT_ID_RESERVE:
+                return null;
+            case USER_PUT:
+            default:
+                return DataFile.USERS;
+        }
+    }
 
-            List<TimeSlot> timeSlots = new ArrayList<>();
-            if (!timeSlotsStr.isEmpty()) {
-                String[] slots = timeSlotsStr.split(",");
-                for (String slot : slots) {
-                    String[] times = slot.split("-");
-                    if (times.length != 2) {
-                        System.err.println("Invalid time slot format: " + slot);
-                        continue;
+    /**
+     * Applies a record replayed from the write-ahead log to the in-memory data.
+     *
+     * @param type    Type of the mutation.
+     * @param payload Serialized payload of the mutation.
+     */
+    private void applyLogRecord(WriteAheadLog.RecordType type, String payload) {
+        switch (type) {
+            case APPOINTMENT_PUT:
+                Appointment appointment = deserializeAppointment(payload);
+                Appointment existing = getAppointmentById(appointment.getId());
+                if (existing != null) {
+                    replaceAppointment(existing, appointment);
+                } else {
+                    appendAppointment(appointment);
+                }
+                break;
+            case APPOINTMENT_DELETE:
+                for (Appointment removed : appointmentIndex.getAll(Integer.parseInt(payload))) {
+                    deleteAppointment(removed);
+                }
+                break;
+            case MEDICAL_RECORD_PUT:
+                MedicalRecord record = RecordCodec.decodeMedicalRecord(payload);
+                if (medicalRecordStore.contains(record.getPatientID())) {
+                    try {
+                        // The store and treatment log may hold treatments compacted or logged after this record
+                        record = withTreatmentsOf(record, treatmentLog.read(medicalRecordStore, record.getPatientID()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not read the medical record of patient " + record.getPatientID(), e);
                     }
-                    LocalTime startTime = LocalTime.parse(times[0], TIME_FORMATTER);
-                    LocalTime endTime = LocalTime.parse(times[1], TIME_FORMATTER);
+                    medicalRecordCache.markDirty(record);
+                    medicalRecordIndex.index(record);
+                }
+                break;
+            case SCHEDULE_PUT:
+                applyScheduleLine(payload);
+                break;
+            case MEDICATION_PUT:
+                Medication medication = medicationLoader.deserialize(payload);
+                for (int i = 0; i < medications.size(); i++) {
+                    if (medications.get(i).getName().equalsIgnoreCase(medication.getName())) {
+                        medications.set(i, medication);
+                        break;
+                    }
+                }
+                break;
+            case REPLENISHMENT_REQUESTS_PUT:
+                replenishmentRequests.clear();
+                if (!payload.isEmpty()) {
+                    for (String request : RecordCodec.split(payload, SEPARATOR.charAt(0))) {
+                        replenishmentRequests.add(replenishmentLoader.deserialize(request));
+                    }
+                }
+                break;
+            case WAITLIST_PUT:
+                waitlist.restore(Waitlist.parse(payload));
+                break;
+            case WAITLIST_DELETE:
+                waitlist.remove(Long.parseLong(payload));
+                break;
+            case USER_PUT:
+                User user = usersLoader.deserialize(payload);
+                User current = userIndex.get(user.getHospitalID());
+                if (current != null) {
+                    if (current instanceof Doctor && user instanceof Doctor) {
+                        ((Doctor) user).setSchedule(((Doctor) current).getSchedule());
+                    }
+                    users.set(users.indexOf(current), user);
+                    userIndex.replace(current, user);
+                }
+                break;
+            case APPOINTMENT_ID_RESERVE:
+                appointmentIds.restore(Integer.parseInt(payload));
+                break;
+            default:
+                break;
+        }
+    }
+    
+
 
-                    // Split the time range into 30-minute slots
-                    List<TimeSlot> splitSlots = splitInto30MinSlots(date, startTime, endTime);
-                    timeSlots.addAll(splitSlots);
+    // Existing methods for Users, Appointments, and MedicalRecords...
+
+    // ====================== Schedule Management ========================= //
+
+    /**
+     * Defers parsing each indexed doctor's schedule until the schedule is first accessed.
+     *
+     * Lines of IDs that are not doctors are applied right away, so they are reported
+     * at startup as before.
+     */
+    private void deferSchedules() {
+        for (String doctorId : scheduledDoctorIds) {
+            User user = getUserByHospitalID(doctorId);
+            if (user instanceof Doctor) {
+                ((Doctor) user).setScheduleLoader(() -> materializeSchedule(doctorId));
+                continue;
+            }
+            try {
+                for (String line : schedulesLoader.readLines(doctorId)) {
+                    applyScheduleLine(line);
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
+        scheduledDoctorIds = new ArrayList<>();
+    }
 
-            // Assign the time slots to the doctor's schedule
-            Doctor doctor = (Doctor) getUserByHospitalID(doctorId);
-            if (doctor != null) {
-                doctor.getSchedule().setAvailability(date, timeSlots);
-            } else {
-                System.err.println("Doctor with ID " + doctorId + " not found.");
+    /**
+     * Builds a doctor's schedule from the doctor's indexed schedules.txt lines.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return The doctor's schedule.
+     * @throws UncheckedIOException If the lines cannot be read back.
+     */
+    private Schedule materializeSchedule(String doctorId) {
+        Schedule schedule = new Schedule();
+        try {
+            for (String line : schedulesLoader.readLines(doctorId)) {
+                applyScheduleLine(line, id -> schedule);
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load the schedule of doctor " + doctorId, e);
+        }
+        return schedule;
+    }
+
+    /**
+     * Parses a single schedules.txt line and assigns its time slots, or its weekly template, to the doctor.
+     *
+     * @param line Line of the form doctorId|date|start-end,start-end,... or doctorId|WEEKLY|template
+     */
+    private void applyScheduleLine(String line) {
+        applyScheduleLine(line, this::findDoctorSchedule);
+    }
+
+    /**
+     * Parses a single schedules.txt line and assigns it to the schedule of its doctor.
+     *
+     * @param line      Line of the form doctorId|date|start-end,start-end,... or doctorId|WEEKLY|template
+     * @param schedules Gets the schedule of a doctor ID, or null if the doctor does not exist.
+     */
+    private void applyScheduleLine(String line, Function<String, Schedule> schedules) {
+        String[] fields = line.split("\\" + SEPARATOR);
+        if (fields.length >= 2 && fields[1].equals(WeeklyTemplate.MARKER)) {
+            applyWeeklyTemplate(schedules, fields[0], line, Arrays.copyOfRange(fields, 2, fields.length));
+            return;
+        }
+        if (fields.length < 3) {
+            System.err.println("Invalid schedule entry: " + line);
+            return;
+        }
+
+        LocalDate date = LocalDate.parse(fields[1], DATE_FORMATTER);
+        int[] ranges = parseTimeRanges(fields[2], System.err::println);
+        Schedule schedule = schedules.apply(fields[0]);
+        if (schedule != null) {
+            schedule.setAvailability(date, toTimeSlots(date, ranges));
         }
     }
 
-        /**
+    /**
+     * Assigns a doctor's weekly template; a template without ranges removes it.
+     *
+     * @param schedules Gets the schedule of a doctor ID, or null if the doctor does not exist.
+     * @param doctorId  The ID of the doctor.
+     * @param line      The schedules.txt line, reported if it is malformed.
+     * @param fields    The template fields following the WEEKLY marker.
+     */
+    private void applyWeeklyTemplate(Function<String, Schedule> schedules, String doctorId, String line, String[] fields) {
+        WeeklyTemplate template;
+        try {
+            template = WeeklyTemplate.parse(fields);
+        } catch (RuntimeException e) {
+            System.err.println("Invalid schedule entry: " + line);
+            return;
+        }
+
+        Schedule schedule = schedules.apply(doctorId);
+        if (schedule != null) {
+            schedule.setWeeklyTemplate(template.isEmpty() ? null : template);
+        }
+    }
+
+    /**
+     * Gets the schedule of a doctor, reporting a missing doctor.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return The doctor's schedule, or null if there is no such doctor.
+     */
+    private Schedule findDoctorSchedule(String doctorId) {
+        Doctor doctor = (Doctor) getUserByHospitalID(doctorId);
+        if (doctor == null) {
+            System.err.println("Doctor with ID " + doctorId + " not found.");
+            return null;
+        }
+        return doctor.getSchedule();
+    }
+
+    /**
+     * Parses the time ranges field of a schedules.txt line.
+     *
+     * @param timeSlotsStr Comma-separated ranges of the form HH:mm-HH:mm.
+     * @param warnings     Receives a message for every malformed range, which is skipped.
+     * @return Start and end minute of day of each range, stored in consecutive pairs.
+     */
+    static int[] parseTimeRanges(String timeSlotsStr, Consumer<String> warnings) {
+        if (timeSlotsStr.isEmpty()) {
+            return new int[0];
+        }
+
+        String[] slots = timeSlotsStr.split(",");
+        int[] ranges = new int[slots.length * 2];
+        int count = 0;
+        for (String slot : slots) {
+            String[] times = slot.split("-");
+            if (times.length != 2) {
+                warnings.accept("Invalid time slot format: " + slot);
+                continue;
+            }
+            ranges[count++] = LocalTime.parse(times[0], TIME_FORMATTER).toSecondOfDay() / 60;
+            ranges[count++] = LocalTime.parse(times[1], TIME_FORMATTER).toSecondOfDay() / 60;
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Assigns a doctor's availability on one date, splitting each range into 30-minute slots.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param date     The date of the availability.
+     * @param ranges   Start and end minute of day of each range, in consecutive pairs.
+     */
+    void applySchedule(String doctorId, LocalDate date, int[] ranges) {
+        List<TimeSlot> timeSlots = toTimeSlots(date, ranges);
+
+        // Assign the time slots to the doctor's schedule
+        Schedule schedule = findDoctorSchedule(doctorId);
+        if (schedule != null) {
+            schedule.setAvailability(date, timeSlots);
+        }
+    }
+
+    /**
+     * Splits time ranges into 30-minute TimeSlots.
+     *
+     * @param date   The date of the slots.
+     * @param ranges Start and end minute of day of each range, in consecutive pairs.
+     * @return The 30-minute TimeSlots of every range, in order.
+     */
+    private List<TimeSlot> toTimeSlots(LocalDate date, int[] ranges) {
+        List<TimeSlot> timeSlots = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            LocalTime startTime = LocalTime.ofSecondOfDay(ranges[i] * 60L);
+            LocalTime endTime = LocalTime.ofSecondOfDay(ranges[i + 1] * 60L);
+            timeSlots.addAll(splitInto30MinSlots(date, startTime, endTime));
+        }
+        return timeSlots;
+    }
+
+    /**
      * Splits a given time range into 30-minute TimeSlots.
      *
      * @param date      The date of the slots.
@@ -172,7 +873,7 @@ public class TextDB {
             if (slotEnd.toLocalTime().isAfter(endTime)) {
                 slotEnd = LocalDateTime.of(date, endTime);
             }
-            slots.add(new TimeSlot(slotStart, slotEnd, true));
+            slots.add(new TimeSlot(slotStart, slotEnd));
             slotStart = slotEnd;
             slotEnd = slotStart.plusMinutes(30);
         }
@@ -190,38 +891,82 @@ public class TextDB {
      * @throws IOException If an I/O error occurs.
      */
     public void saveSchedulesToFile(String filename) throws IOException {
+        synchronized (DataFile.SCHEDULES.writeLock) {
+            if (filename.equals(schedulesLoader.filePath)) {
+                schedulesLoader.saveData();
+            } else {
+                write(filename, renderSchedules());
+            }
+        }
+    }
+
+    /**
+     * Renders every doctor's schedule as schedules.txt lines, materializing the
+     * schedules not used yet.
+     *
+     * @return Lines of every doctor's weekly template and dates, by doctor.
+     */
+    private List<String> renderSchedules() {
         List<String> lines = new ArrayList<>();
-        for (User user : users) {
+        for (User user : copyOf(users)) {
             if (user instanceof Doctor) {
                 Doctor doctor = (Doctor) user;
                 Schedule schedule = doctor.getSchedule();
-                for (LocalDate date : schedule.getAvailability().keySet()) {
-                    List<TimeSlot> slots = schedule.getAvailableTimeSlots(date);
-                    StringBuilder slotsStr = new StringBuilder();
-                    for (int i = 0; i < slots.size(); i++) {
-                        TimeSlot slot = slots.get(i);
-                        slotsStr.append(slot.getStartTime().toLocalTime().format(TIME_FORMATTER))
-                                .append("-")
-                                .append(slot.getEndTime().toLocalTime().format(TIME_FORMATTER));
-                        if (i < slots.size() - 1) {
-                            slotsStr.append(",");
-                        }
+                synchronized (schedule) {
+                    if (schedule.getWeeklyTemplate() != null) {
+                        lines.add(serializeTemplateLine(doctor.getHospitalID(), schedule.getWeeklyTemplate()));
+                    }
+                    for (LocalDate date : schedule.getAvailability().keySet()) {
+                        lines.add(serializeScheduleLine(doctor.getHospitalID(), schedule, date));
                     }
-                    String line = String.join(SEPARATOR,
-                            doctor.getHospitalID(),
-                            date.format(DATE_FORMATTER),
-                            slotsStr.toString()
-                    );
-                    lines.add(line);
                 }
             }
         }
-        write(filename, lines);
+        return lines;
+    }
+
+    /**
+     * Serializes a doctor's weekly template as a schedules.txt line.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param template The weekly template, or null to write a line that removes it.
+     * @return Line of the form doctorId|WEEKLY|template
+     */
+    private String serializeTemplateLine(String doctorId, WeeklyTemplate template) {
+        String body = template != null ? template.serialize() : "NULL|NULL|NULL|NULL";
+        return String.join(SEPARATOR, doctorId, WeeklyTemplate.MARKER, body);
+    }
+
+    /**
+     * Serializes one doctor's availability on one date as a schedules.txt line.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param schedule The doctor's schedule.
+     * @param date     The date to serialize.
+     * @return Line of the form doctorId|date|start-end,start-end,...
+     */
+    private String serializeScheduleLine(String doctorId, Schedule schedule, LocalDate date) {
+        List<TimeSlot> slots = schedule.getAvailableTimeSlots(date);
+        StringBuilder slotsStr = new StringBuilder();
+        for (int i = 0; i < slots.size(); i++) {
+            TimeSlot slot = slots.get(i);
+            slotsStr.append(slot.getStartTime().toLocalTime().format(TIME_FORMATTER))
+                    .append("-")
+                    .append(slot.getEndTime().toLocalTime().format(TIME_FORMATTER));
+            if (i < slots.size() - 1) {
+                slotsStr.append(",");
+            }
+        }
+        return String.join(SEPARATOR,
+                doctorId,
+                date.format(DATE_FORMATTER),
+                slotsStr.toString()
+        );
     }
 
 
     /**
-     * Updates a doctor's schedule and saves the changes to the schedules file.
+     * Updates a doctor's schedule and logs each of its dates to the write-ahead log.
      *
      * @param doctorId The ID of the doctor whose schedule is to be updated.
      * @param schedule The updated Schedule object.
@@ -231,7 +976,48 @@ public class TextDB {
         Doctor doctor = (Doctor) getUserByHospitalID(doctorId);
         if (doctor != null) {
             doctor.setSchedule(schedule);
-            saveSchedulesToFile("schedules.txt");
+            availabilityCache.invalidateDoctor(doctorId);
+            if (schedule.getWeeklyTemplate() != null) {
+                log(WriteAheadLog.RecordType.SCHEDULE_PUT, serializeTemplateLine(doctorId, schedule.getWeeklyTemplate()));
+            }
+            for (LocalDate date : schedule.getAvailability().keySet()) {
+                log(WriteAheadLog.RecordType.SCHEDULE_PUT, serializeScheduleLine(doctorId, schedule, date));
+            }
+        } else {
+            System.err.println("Doctor with ID " + doctorId + " not found.");
+        }
+    }
+
+    /**
+     * Sets a doctor's weekly template and logs it to the write-ahead log.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param template The weekly template, or null to remove it.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void updateDoctorWeeklyTemplate(String doctorId, WeeklyTemplate template) throws IOException {
+        Doctor doctor = (Doctor) getUserByHospitalID(doctorId);
+        if (doctor != null) {
+            doctor.getSchedule().setWeeklyTemplate(template);
+            availabilityCache.invalidateDoctor(doctorId);
+            log(WriteAheadLog.RecordType.SCHEDULE_PUT, serializeTemplateLine(doctorId, template));
+        } else {
+            System.err.println("Doctor with ID " + doctorId + " not found.");
+        }
+    }
+
+    /**
+     * Logs a doctor's availability on a single date to the write-ahead log.
+     *
+     * @param doctorId The ID of the doctor whose availability changed.
+     * @param date     The date whose availability changed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void updateDoctorAvailability(String doctorId, LocalDate date) throws IOException {
+        Doctor doctor = (Doctor) getUserByHospitalID(doctorId);
+        if (doctor != null) {
+            availabilityCache.invalidate(doctorId, date);
+            log(WriteAheadLog.RecordType.SCHEDULE_PUT, serializeScheduleLine(doctorId, doctor.getSchedule(), date));
         } else {
             System.err.println("Doctor with ID " + doctorId + " not found.");
         }
@@ -246,6 +1032,8 @@ public class TextDB {
      */
     public void addUser(User user) {
         users.add(user);
+        userIndex.add(user);
+        markDirty(DataFile.USERS);
     }
 
     /**
@@ -254,7 +1042,12 @@ public class TextDB {
      * @param name The new name.
      */
     public void removeUser(User user) {
-        users.remove(user);
+        synchronized (users) {
+            if (users.remove(user)) {
+                userIndex.rebuild(users); // Another user may now be first for the removed keys
+            }
+        }
+        markDirty(DataFile.USERS);
     }
 
     /**
@@ -264,12 +1057,18 @@ public class TextDB {
      * @return user
      */
     public User getUserByHospitalID(String hospitalID) {
-        for (User user : users) {
-            if (user.getHospitalID().equals(hospitalID)) {
-                return user;
-            }
-        }
-        return null;
+        return userIndex.get(hospitalID);
+    }
+
+    /**
+     * Gets a user of a role by hospital ID, ignoring case in both.
+     *
+     * @param role       Role name, such as "Doctor".
+     * @param hospitalID Hospital ID of the user.
+     * @return The matching user, or null if none exists.
+     */
+    public User getUserByRoleAndHospitalID(String role, String hospitalID) {
+        return userIndex.get(role, hospitalID);
     }
 
     /**
@@ -288,14 +1087,15 @@ public class TextDB {
      * @param user Can be Administrator
      */
     public static void updateUserPassword(User user) {
-        for (int i = 0; i < users.size(); i++) {
-            if (users.get(i).getHospitalID().equals(user.getHospitalID())) {
-                users.set(i, user);
-                break;
+        User current = userIndex.get(user.getHospitalID());
+        if (current != null && current != user) {
+            synchronized (users) {
+                users.set(users.indexOf(current), user);
             }
+            userIndex.replace(current, user);
         }
         try {
-            saveToFile("users.txt");
+            getInstance().log(WriteAheadLog.RecordType.USER_PUT, serializeUser(user));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -307,11 +1107,13 @@ public class TextDB {
      * @param filename
      */
     public static void saveToFile(String filename) throws IOException {
-        List<String> stringList = new ArrayList<>();
-        for (User user : users) {
-            stringList.add(serializeUser(user));
+        synchronized (DataFile.USERS.writeLock) {
+            List<String> stringList = new ArrayList<>();
+            for (User user : copyOf(users)) {
+                stringList.add(serializeUser(user));
+            }
+            write(filename, stringList);
         }
-        write(filename, stringList);
     }
 
     /**
@@ -331,19 +1133,13 @@ public class TextDB {
     
     /**
      * Writes data to file
+     * The file is replaced atomically through DurableFileWriter.
      *
      * @param filename Name of file
      * @param data Data to write to file
      */
     public static void write(String fileName, List<String> data) throws IOException {
-        PrintWriter out = new PrintWriter(new FileWriter(fileName));
-        try {
-            for (String line : data) {
-                out.println(line);
-            }
-        } finally {
-            out.close();
-        }
+        DurableFileWriter.write(fileName, data);
     }
 
     /**
@@ -354,24 +1150,7 @@ public class TextDB {
      * @throws IOException
      */
     public static List<String> read(String fileName) throws IOException {
-        List<String> data = new ArrayList<>();
-        FileInputStream fis = null;
-        Scanner scanner = null;
-        try {
-            fis = new FileInputStream(fileName);
-            scanner = new Scanner(fis);
-            while (scanner.hasNextLine()) {
-                data.add(scanner.nextLine());
-            }
-        } finally {
-            if (scanner != null) {
-                scanner.close();
-            }
-            if (fis != null) {
-                fis.close();
-            }
-        }
-        return data;
+        return LineReader.readLines(fileName);
     }
 
     // ====================== Appointment Management ========================= //
@@ -384,32 +1163,51 @@ public class TextDB {
      * @return boolean of success
      */
     public boolean cancelAppointment(Patient patient, int appointmentId) {
-        boolean removed = appointments.removeIf(appointment -> 
-            appointment.getId() == appointmentId && appointment.getPatientId().equals(patient.getHospitalID())
-        );
+        List<ReentrantLock> locks = lockAppointment(appointmentId, null);
+        try {
+            List<Appointment> cancelled = new ArrayList<>();
+            for (Appointment appointment : appointmentIndex.getAll(appointmentId)) {
+                if (appointment.getPatientId().equals(patient.getHospitalID())) {
+                    cancelled.add(appointment);
+                }
+            }
+            if (cancelled.isEmpty()) {
+                return false;
+            }
 
-        if (removed) {
+            // Logged first, so a failed write leaves the appointments in place
             try {
-                saveAppointmentsToFile("appts.txt");
+                log(WriteAheadLog.RecordType.APPOINTMENT_DELETE, String.valueOf(appointmentId));
             } catch (IOException e) {
                 e.printStackTrace();
                 return false;
             }
-        }
 
-        return removed;
+            Map<TimeSlot, String> freed = new LinkedHashMap<>();
+            for (Appointment appointment : cancelled) {
+                TimeSlot held = appointmentIndex.getHeldSlot(appointment);
+                if (held != null) {
+                    freed.put(held, appointmentIndex.getIndexedDoctorId(appointment));
+                }
+                deleteAppointment(appointment);
+            }
+            for (Map.Entry<TimeSlot, String> slot : freed.entrySet()) {
+                backfill(slot.getValue(), slot.getKey());
+            }
+            return true;
+        } finally {
+            StripedLocks.unlock(locks);
+        }
     }
 
     /**
      * Generates new Appointment ID
      *
      * @return New AppointmentID
+     * @throws IOException If a new block of IDs cannot be reserved.
      */
-    private int generateNewAppointmentId() {
-        return appointments.stream()
-                           .mapToInt(Appointment::getId)
-                           .max()
-                           .orElse(0) + 1;
+    private int generateNewAppointmentId() throws IOException {
+        return appointmentIds.next();
     }
 
     /**
@@ -417,8 +1215,7 @@ public class TextDB {
      * @return List of Doctors
      */
     public List<Doctor> getAllDoctors() {
-        return users.stream()
-                    .filter(user -> user instanceof Doctor)
+        return userIndex.getByRole("Doctor").stream()
                     .map(user -> (Doctor) user)
                     .collect(Collectors.toList());
     }
@@ -431,149 +1228,262 @@ public class TextDB {
      * @return AppointmentSlots that are available
      */
     public List<TimeSlot> getAvailableAppointmentSlots(LocalDate date, Doctor doctor) {
-        // Retrieve the doctor's available slots for the date
-        List<TimeSlot> doctorAvailableSlots = doctor.getAvailableTimeSlots(date);
-        
-        if (doctorAvailableSlots.isEmpty()) {
-            // Doctor has not set availability for this date
-            return Collections.emptyList();
-        }
-
-        // Retrieve booked and requested appointments for the doctor on the date
-        List<Appointment> bookedOrRequestedAppointments = appointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctor.getHospitalID()) &&
-                                appt.getDate().equals(date) &&
-                                (appt.getStatus().equalsIgnoreCase("Scheduled") || appt.getStatus().equalsIgnoreCase("Requested")))
-                .collect(Collectors.toList());
+        Schedule schedule = doctor.getSchedule();
+        List<TimeSlot> slots = availabilityCache.get(doctor.getHospitalID(), date, schedule);
+        if (slots == null) {
+            long invalidations = availabilityCache.getInvalidations();
+            // Subtract the slots of booked and requested appointments from the doctor's available slots
+            slots = schedule.getAvailableTimeSlots(date, getOccupiedSlots(doctor.getHospitalID(), date));
+            availabilityCache.put(doctor.getHospitalID(), date, schedule, slots, invalidations);
+        }
+        return slots;
+    }
 
-        // Extract the booked TimeSlots
-        List<TimeSlot> occupiedSlots = bookedOrRequestedAppointments.stream()
-                .map(Appointment::getTimeSlot)
-                .collect(Collectors.toList());
+    /**
+     * Gets the cache of free slots per doctor and date, including its hit, miss and eviction counts.
+     *
+     * @return The availability cache
+     */
+    public AvailabilityCache getAvailabilityCache() {
+        return availabilityCache;
+    }
 
-        // Filter out the occupied slots from the doctor's available slots
-        List<TimeSlot> availableSlots = doctorAvailableSlots.stream()
-                .filter(slot -> !occupiedSlots.contains(slot))
-                .collect(Collectors.toList());
+    /**
+     * Gets the time slots of a doctor's booked and requested appointments on a date.
+     *
+     * @param doctorId ID of the doctor
+     * @param date Date of the appointments
+     * @return Unmodifiable view of the occupied time slots
+     */
+    private Collection<TimeSlot> getOccupiedSlots(String doctorId, LocalDate date) {
+        return occupancy.getOccupied(doctorId, date);
+    }
+
+    /**
+     * Checks whether a doctor offers a time slot on a date and no appointment holds it.
+     *
+     * @param date The date of the slot
+     * @param doctor The doctor
+     * @param timeSlot The time slot to check
+     * @return True if the slot can be booked
+     */
+    public boolean isAppointmentSlotAvailable(LocalDate date, Doctor doctor, TimeSlot timeSlot) {
+        return doctor.getSchedule().hasTimeSlot(date, timeSlot) && !occupancy.isOccupied(doctor.getHospitalID(), timeSlot);
+    }
+
+    /**
+     * Finds the earliest free appointment slots across all doctors. Slots that have
+     * already started are skipped.
+     *
+     * @param from First date to search
+     * @param to Last date to search
+     * @param limit Maximum number of slots to return
+     * @return Up to limit free slots with their doctors, ordered by start time
+     */
+    public List<SlotSearch.Match> findEarliestAvailableSlots(LocalDate from, LocalDate to, int limit) {
+        return findEarliestAvailableSlots(from, to, limit, null);
+    }
+
+    /**
+     * Finds the earliest free appointment slots across a set of doctors. Slots that
+     * have already started are skipped.
+     *
+     * @param from First date to search
+     * @param to Last date to search
+     * @param limit Maximum number of slots to return
+     * @param doctorIds IDs of the doctors to search, or null to search all doctors
+     * @return Up to limit free slots with their doctors, ordered by start time
+     */
+    public List<SlotSearch.Match> findEarliestAvailableSlots(LocalDate from, LocalDate to, int limit, Collection<String> doctorIds) {
+        List<Doctor> doctors = getAllDoctors();
+        if (doctorIds != null) {
+            Set<String> wanted = new HashSet<>(doctorIds);
+            doctors.removeIf(doctor -> !wanted.contains(doctor.getHospitalID()));
+        }
+        return slotSearch.findEarliest(doctors, from, to, limit, LocalDateTime.now());
+    }
+
+    /**
+     * Adds an appointment for a patient with a doctor at a specific date and time slot.
+     *
+     * @param patient    The patient for whom the appointment is being made.
+     * @param doctor     The doctor for the appointment.
+     * @param date       The date of the appointment; must be the date of the time slot.
+     * @param timeSlot   The time slot for the appointment.
+     * @return True if the appointment is successfully added, false otherwise.
+     */
+    // Appointment management methods
+    public boolean addAppointment(Patient patient, Doctor doctor, LocalDate date, TimeSlot timeSlot) {
+        // The check and the booking happen under the slot's doctor-day lock, so a slot is never booked twice
+        ReentrantLock lock = bookingLocks.lock(doctor.getHospitalID(), timeSlot.getDate());
+        try {
+            if (!date.equals(timeSlot.getDate()) || !isAppointmentSlotAvailable(timeSlot.getDate(), doctor, timeSlot)) {
+                System.out.println("The selected time slot is not available.");
+                return false;
+            }
+
+            // Generate a new unique appointment ID
+            int newAppointmentId;
+            try {
+                newAppointmentId = generateNewAppointmentId();
+            } catch (IOException e) {
+                System.out.println("Failed to reserve an appointment ID.");
+                e.printStackTrace();
+                return false;
+            }
+
+            // Create the new appointment with status "Requested"
+            Appointment newAppointment = new Appointment(newAppointmentId, 
+                                                        patient.getHospitalID(), 
+                                                        doctor.getHospitalID(), 
+                                                        timeSlot, 
+                                                        AppointmentStatus.REQUESTED,
+                                                        "Pending");
+
+            // Add the new appointment to the list
+            appendAppointment(newAppointment); // Occupies the slot, preventing double booking
+
+            // Log the appointment for persistence
+            try {
+                log(WriteAheadLog.RecordType.APPOINTMENT_PUT, serializeAppointment(newAppointment));
+            } catch (IOException e) {
+                deleteAppointment(newAppointment); // Releases the slot again
+                System.out.println("Failed to save the appointment to the file.");
+                e.printStackTrace();
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
 
-        return availableSlots;
+        System.out.println("Appointment request successfully submitted with Dr. " + doctor.getName() + " on " + date + " at " + timeSlot + ".");
+        System.out.println("Please await doctor's approval.");
+        return true;
     }
 
     /**
-     * Generates all time slots for date
+     * Adds a patient to a doctor's waitlist. When a slot of the doctor within the range
+     * is freed, it is booked for the longest-waiting patient as a new appointment request.
      *
-     * @param date Date for timeslots
-     * @return timeslots
+     * @param patient The waiting patient.
+     * @param doctor  The doctor.
+     * @param from    First acceptable date.
+     * @param to      Last acceptable date.
+     * @return The waitlist request.
+     * @throws IOException If the request cannot be logged; the patient is not added in that case.
+     * @throws IllegalArgumentException If the range is empty or longer than Waitlist.MAX_RANGE_DAYS.
      */
-    private List<TimeSlot> generateAllTimeSlotsForDate(LocalDate date) {
-        List<TimeSlot> timeSlots = new ArrayList<>();
-        LocalTime startTime = LocalTime.of(9, 0); // Assuming appointments start at 9 AM
-        LocalTime endTime = LocalTime.of(17, 0); // Assuming appointments end at 5 PM
-        int slotDurationMinutes = 30; // Assuming each slot is 30 minutes
-
-        while (startTime.isBefore(endTime)) {
-            LocalDateTime slotStart = LocalDateTime.of(date, startTime);
-            LocalDateTime slotEnd = slotStart.plusMinutes(slotDurationMinutes);
-            timeSlots.add(new TimeSlot(slotStart, slotEnd, true));
-            startTime = startTime.plusMinutes(slotDurationMinutes);
+    public Waitlist.Request joinWaitlist(Patient patient, Doctor doctor, LocalDate from, LocalDate to) throws IOException {
+        Waitlist.Request request = waitlist.add(patient.getHospitalID(), doctor.getHospitalID(), from, to, LocalDateTime.now());
+        try {
+            log(WriteAheadLog.RecordType.WAITLIST_PUT, Waitlist.serialize(request));
+        } catch (IOException e) {
+            waitlist.remove(request);
+            throw e;
         }
-
-        return timeSlots;
+        return request;
     }
 
     /**
-     * Loads Appointments for Date
+     * Removes a patient's request from the waitlist.
      *
-     * @param date Date of Appointment
-     * @return Appointments at specified Date
+     * @param request The request to withdraw.
+     * @return True if the request was still waiting.
+     * @throws IOException If the withdrawal cannot be logged; the request keeps waiting in that case.
      */
-    private List<Appointment> loadAppointmentsForDate(LocalDate date) {
-        List<Appointment> appointmentsForDate = new ArrayList<>();
-        try {
-            List<String> lines = read("appts.txt");
-            for (String line : lines) {
-                Appointment appointment = deserializeAppointment(line);
-                if (appointment.getTimeSlot().getStartTime().toLocalDate().equals(date)) {
-                    appointmentsForDate.add(appointment);
-                }
+    public boolean leaveWaitlist(Waitlist.Request request) throws IOException {
+        synchronized (waitlist) {
+            if (!request.isActive()) {
+                return false;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            log(WriteAheadLog.RecordType.WAITLIST_DELETE, String.valueOf(request.getSequence()));
+            return waitlist.remove(request);
         }
-        return appointmentsForDate;
     }
 
     /**
-     * Loads Appointments for Date and Doctor
+     * Saves the waiting requests to the specified file.
      *
-     * @param date Date of Appointment
-     * @param doctor Doctor for Appointment
-     * @return List of Appointments
+     * @param filename The name of the waitlist file.
+     * @throws IOException If an I/O error occurs.
      */
-    private List<Appointment> loadAppointmentsForDateAndDoctor(LocalDate date, Doctor doctor) {
-        List<Appointment> appointmentsForDateAndDoctor = new ArrayList<>();
-        try {
-            List<String> lines = read("appts.txt");
-            for (String line : lines) {
-                Appointment appointment = deserializeAppointment(line);
-                if (appointment.getDoctorId().equals(doctor.getHospitalID()) &&
-                    appointment.getTimeSlot().getStartTime().toLocalDate().equals(date)) {
-                    appointmentsForDateAndDoctor.add(appointment);
-                }
+    public void saveWaitlist(String filename) throws IOException {
+        synchronized (DataFile.WAITLIST.writeLock) {
+            List<String> lines = new ArrayList<>();
+            for (Waitlist.Request request : waitlist.getAll()) {
+                lines.add(Waitlist.serialize(request));
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            write(filename, lines);
         }
-        return appointmentsForDateAndDoctor;
     }
 
     /**
-     * Adds an appointment for a patient with a doctor at a specific date and time slot.
+     * Retrieves the waiting requests of a patient.
      *
-     * @param patient    The patient for whom the appointment is being made.
-     * @param doctor     The doctor for the appointment.
-     * @param date       The date of the appointment.
-     * @param timeSlot   The time slot for the appointment.
-     * @return True if the appointment is successfully added, false otherwise.
+     * @param patientId The hospital ID of the patient.
+     * @return The patient's waitlist requests, oldest first.
      */
-    // Appointment management methods
-    public boolean addAppointment(Patient patient, Doctor doctor, LocalDate date, TimeSlot timeSlot) {
-        List<TimeSlot> availableSlots = getAvailableAppointmentSlots(date, doctor);
-        if (!availableSlots.contains(timeSlot)) {
-            System.out.println("The selected time slot is not available.");
-            return false;
-        }
+    public List<Waitlist.Request> getWaitlistByPatientId(String patientId) {
+        return waitlist.getByPatient(patientId);
+    }
 
-        // Generate a new unique appointment ID
-        int newAppointmentId = generateNewAppointmentId();
+    /**
+     * Books a freed slot for the first waitlisted patient who accepts its date.
+     * Called after the change that freed the slot has been logged.
+     *
+     * @param doctorId The hospital ID of the doctor whose slot was freed.
+     * @param slot     The freed slot, or null if no slot was held.
+     */
+    private void backfill(String doctorId, TimeSlot slot) {
+        if (slot == null || !slot.getStartTime().isAfter(LocalDateTime.now())) {
+            return;
+        }
+        User user = getUserByHospitalID(doctorId);
+        if (!(user instanceof Doctor)) {
+            return;
+        }
 
-        // Create the new appointment with status "Requested"
-        Appointment newAppointment = new Appointment(newAppointmentId, 
-                                                    patient.getHospitalID(), 
-                                                    doctor.getHospitalID(), 
-                                                    timeSlot, 
-                                                    "Requested",
-                                                    "Pending");
+        ReentrantLock lock = bookingLocks.lock(doctorId, slot.getDate()); // Already held by the caller that freed the slot
+        try {
+            if (!isAppointmentSlotAvailable(slot.getDate(), (Doctor) user, slot)) {
+                return;
+            }
+            Waitlist.Request request = waitlist.poll(doctorId, slot.getDate());
+            if (request == null) {
+                return;
+            }
 
-        // Add the new appointment to the list
-        appointments.add(newAppointment);
-        
-        // Mark the TimeSlot as unavailable to prevent double booking
-        timeSlot.setAvailable(false);
+            Appointment appointment = null;
+            try {
+                appointment = new Appointment(generateNewAppointmentId(),
+                                              request.getPatientId(),
+                                              doctorId,
+                                              slot,
+                                              AppointmentStatus.REQUESTED,
+                                              "Pending");
+                appendAppointment(appointment);
+                log(WriteAheadLog.RecordType.APPOINTMENT_PUT, serializeAppointment(appointment));
+            } catch (IOException e) {
+                // Nothing was recorded, so the patient keeps their place and the slot stays free
+                if (appointment != null) {
+                    deleteAppointment(appointment);
+                }
+                waitlist.restore(request);
+                System.out.println("Failed to book the freed slot for waitlisted patient " + request.getPatientId() + ".");
+                e.printStackTrace();
+                return;
+            }
+            System.out.println("Freed slot " + slot + " on " + slot.getDate() + " requested for waitlisted patient " + request.getPatientId() + ".");
 
-        // Save the appointment to the file for persistence
-        try {
-            saveAppointmentsToFile("appts.txt");
-            saveSchedulesToFile("schedules.txt"); // Save the updated schedule
-        } catch (IOException e) {
-            System.out.println("Failed to save the appointment to the file.");
-            e.printStackTrace();
-            return false;
+            try {
+                log(WriteAheadLog.RecordType.WAITLIST_DELETE, String.valueOf(request.getSequence()));
+            } catch (IOException e) {
+                markDirty(DataFile.WAITLIST); // The next flush writes the waitlist without the matched request
+                e.printStackTrace();
+            }
+        } finally {
+            lock.unlock();
         }
-
-        System.out.println("Appointment request successfully submitted with Dr. " + doctor.getName() + " on " + date + " at " + timeSlot + ".");
-        System.out.println("Please await doctor's approval.");
-        return true;
     }
 
     /**
@@ -583,9 +1493,7 @@ public class TextDB {
      * @return A list of requested appointments for the given doctor.
      */
     public List<Appointment> getRequestedAppointmentsByDoctor(String doctorId) {
-        return appointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctorId) && appt.getStatus().equalsIgnoreCase("Requested"))
-                .collect(Collectors.toList());
+        return appointmentIndex.getByDoctorAndStatus(doctorId, AppointmentStatus.REQUESTED);
     }
 
     /**
@@ -595,12 +1503,7 @@ public class TextDB {
      * @return The appointment with the specified ID, or null if not found.
      */
     public Appointment getAppointmentById(int appointmentId) {
-        for (Appointment appt : appointments) {
-            if (appt.getId() == appointmentId) {
-                return appt;
-            }
-        }
-        return null;
+        return appointmentIndex.get(appointmentId);
     }
 
     /**
@@ -609,36 +1512,41 @@ public class TextDB {
      * @param appointmentId The unique ID of the appointment to update.
      * @param newStatus     The new status to assign to the appointment.
      * @throws IOException If an error occurs while saving the updated appointment or schedule.
+     * @throws IllegalArgumentException If the appointment may not change to the new status.
      */
-    public void updateAppointmentStatus(int appointmentId, String newStatus) throws IOException {
-        Appointment appointment = getAppointmentById(appointmentId);
-        if (appointment != null) {
-            appointment.setStatus(newStatus);
-            
-            switch (newStatus.toLowerCase()) {
-                case "completed":
-                    // Do not set outcomeRecord here; it will be handled in recordAppointmentOutcome
-                    break;
-                case "declined":
-                case "cancelled":
-                case "scheduled":
-                    // Make the TimeSlot available again if necessary
-                    if (newStatus.equalsIgnoreCase("declined") || newStatus.equalsIgnoreCase("cancelled")) {
-                        appointment.getTimeSlot().setAvailable(true);
-                    }
-                    // Set outcomeRecord to "NULL" since there's no detailed outcome
-                    appointment.setOutcomeRecord("NULL");
-                    break;
-                default:
-                    // Handle other statuses if any
-                    appointment.setOutcomeRecord("NULL");
-                    break;
+    public void updateAppointmentStatus(int appointmentId, AppointmentStatus newStatus) throws IOException {
+        List<ReentrantLock> locks = lockAppointment(appointmentId, null);
+        try {
+            Appointment appointment = getAppointmentById(appointmentId);
+            if (appointment != null) {
+                checkTransition(appointment, appointmentIndex.getIndexedStatus(appointment), newStatus);
+                TimeSlot held = appointmentIndex.getHeldSlot(appointment);
+                appointment.setStatus(newStatus);
+                appointmentIndex.refresh(appointment);
+                
+                switch (newStatus) {
+                    case COMPLETED:
+                        // Do not set outcomeRecord here; it will be handled in recordAppointmentOutcome
+                        break;
+                    case DECLINED:
+                    case CANCELLED:
+                    case SCHEDULED:
+                        // Set outcomeRecord to "NULL" since there's no detailed outcome
+                        appointment.setOutcomeRecord("NULL");
+                        break;
+                    default:
+                        // Handle other statuses if any
+                        appointment.setOutcomeRecord("NULL");
+                        break;
+                }
+                
+                log(WriteAheadLog.RecordType.APPOINTMENT_PUT, serializeAppointment(appointment));
+                backfill(appointment.getDoctorId(), held);
+            } else {
+                System.err.println("Appointment with ID " + appointmentId + " not found.");
             }
-            
-            saveAppointmentsToFile("appts.txt");
-            saveSchedulesToFile("schedules.txt"); // Save updated TimeSlot availability
-        } else {
-            System.err.println("Appointment with ID " + appointmentId + " not found.");
+        } finally {
+            StripedLocks.unlock(locks);
         }
     }
     
@@ -648,16 +1556,93 @@ public class TextDB {
      * @param appointment The appointment to be removed.
      */
     public void removeAppointment(Appointment appointment) {
-        appointments.remove(appointment);
+        List<ReentrantLock> locks = lockAppointment(appointment.getId(), null);
+        try {
+            deleteAppointment(appointment);
+        } finally {
+            StripedLocks.unlock(locks);
+        }
+    }
+
+    /**
+     * Appends an appointment to the list and the index together, so both keep the same order.
+     *
+     * @param appointment The new appointment.
+     */
+    private static void appendAppointment(Appointment appointment) {
+        synchronized (appointmentIndex) {
+            appointments.add(appointment);
+            appointmentIndex.add(appointment);
+        }
+    }
+
+    /**
+     * Replaces an appointment in the list and the index together.
+     *
+     * @param current     The appointment being replaced.
+     * @param replacement The replacement.
+     */
+    private static void replaceAppointment(Appointment current, Appointment replacement) {
+        synchronized (appointmentIndex) {
+            appointments.set(appointments.indexOf(current), replacement);
+            appointmentIndex.replace(current, replacement);
+        }
+    }
+
+    /**
+     * Removes an appointment from the list and the index together.
+     *
+     * @param appointment The appointment to remove.
+     */
+    private static void deleteAppointment(Appointment appointment) {
+        synchronized (appointmentIndex) {
+            if (appointments.remove(appointment)) {
+                appointmentIndex.remove(appointment);
+            }
+        }
+    }
+
+    /**
+     * Acquires the doctor-day locks of every appointment with an ID, plus one more doctor-day.
+     * If an appointment moves to another doctor-day before its lock is acquired, the
+     * locks are released and acquired again.
+     *
+     * @param appointmentId The appointment ID.
+     * @param extra         Another doctor-day to lock, or null.
+     * @return The acquired locks, to be released with StripedLocks.unlock.
+     */
+    private static List<ReentrantLock> lockAppointment(int appointmentId, StripedLocks.Key extra) {
+        while (true) {
+            List<StripedLocks.Key> days = getIndexedDays(appointmentId, extra);
+            List<ReentrantLock> locks = bookingLocks.lock(days);
+            if (days.equals(getIndexedDays(appointmentId, extra))) {
+                return locks;
+            }
+            StripedLocks.unlock(locks);
+        }
+    }
+
+    private static List<StripedLocks.Key> getIndexedDays(int appointmentId, StripedLocks.Key extra) {
+        List<StripedLocks.Key> days = new ArrayList<>();
+        synchronized (appointmentIndex) {
+            for (Appointment appointment : appointmentIndex.getAll(appointmentId)) {
+                days.add(new StripedLocks.Key(appointmentIndex.getIndexedDoctorId(appointment), appointmentIndex.getIndexedDate(appointment)));
+            }
+        }
+        if (extra != null) {
+            days.add(extra);
+        }
+        return days;
     }
 
     /**
      * Retrieves the list of all appointments.
+     * Changes must go through TextDB, as changing the list would bypass the appointment index.
      *
-     * @return A list of all appointments.
+     * @return A copy of the list of all appointments.
      */
     public List<Appointment> getAppointments() {
-        return appointments;
+        return copyOf(appointments);
     }
 
     /**
@@ -667,11 +1652,13 @@ public class TextDB {
      * @throws IOException If an error occurs while saving the file.
      */
     public static void saveAppointmentsToFile(String filename) throws IOException {
-        List<String> stringList = new ArrayList<>();
-        for (Appointment appointment : appointments) {
-            stringList.add(serializeAppointment(appointment));
+        synchronized (DataFile.APPOINTMENTS.writeLock) {
+            List<String> stringList = new ArrayList<>();
+            for (Appointment appointment : copyOf(appointments)) {
+                stringList.add(serializeAppointment(appointment));
+            }
+            write(filename, stringList);
         }
-        write(filename, stringList);
     }
 
     /**
@@ -681,26 +1668,9 @@ public class TextDB {
      * @return The serialized string representation of the appointment.
      */
     private static String serializeAppointment(Appointment appointment) {
-        return String.join(SEPARATOR,
-                String.valueOf(appointment.getId()),
-                appointment.getPatientId(),
-                appointment.getDoctorId(),
-                serializeTimeSlot(appointment.getTimeSlot()),
-                appointment.getStatus(),
-                appointment.getOutcomeRecord());
-    }
-    
-    /**
-     * Serializes a TimeSlot object into a string format.
-     *
-     * @param timeSlot The time slot to serialize.
-     * @return The serialized string representation of the time slot.
-     */
-    private static String serializeTimeSlot(TimeSlot timeSlot) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
-        return timeSlot.getStartTime().format(formatter) + "-" + timeSlot.getEndTime().format(formatter);
+        return RecordCodec.encodeAppointment(appointment);
     }
-    
+
     /**
      * Deserializes a string representation of an appointment into an Appointment object.
      *
@@ -709,21 +1679,7 @@ public class TextDB {
      * @throws IllegalArgumentException If the input data is invalid or incomplete.
      */
     private Appointment deserializeAppointment(String appointmentData) {
-        String[] fields = appointmentData.split("\\" + SEPARATOR);
-        
-        if (fields.length < 6) {
-            System.err.println("Invalid appointment data: " + appointmentData);
-            throw new IllegalArgumentException("Invalid appointment data: " + appointmentData);
-        }
-    
-        int id = Integer.parseInt(fields[0]);
-        String patientId = fields[1];
-        String doctorId = fields[2];
-        TimeSlot timeSlot = TimeSlot.parse(fields[3]);
-        String status = fields[4];
-        String outcomeRecord = fields[5];
-    
-        return new Appointment(id, patientId, doctorId, timeSlot, status, outcomeRecord);
+        return RecordCodec.decodeAppointment(appointmentData);
     }
 
     // Additional Appointment Management Enhancements...
@@ -731,77 +1687,67 @@ public class TextDB {
     // ====================== Doctor Assignment and Medical Records ========================= //
 
     /**
-     * Adds a medical record to the system and saves it to a file.
+     * Adds a medical record to the system and appends it to the patient's segment of the store.
      *
      * @param record The medical record to add.
-     * @throws IOException If an error occurs while saving the medical record to the file.
+     * @throws IOException If an error occurs while saving the medical record to the store.
      */
     public void addMedicalRecord(MedicalRecord record) throws IOException {
-        medicalRecords.add(record);
-        saveMedicalRecordsToFile("med_records.txt");
+        medicalRecordStore.put(record);
+        medicalRecordCache.put(record);
+        medicalRecordIndex.index(record);
     }
-    
+
     /**
-     * Saves the list of medical records to a file.
+     * Checks whether a patient has a medical record, without loading it.
      *
-     * @param filename The name of the file to save the medical records.
-     * @throws IOException If an error occurs while saving the file.
+     * @param patientId The hospital ID of the patient.
+     * @return True if the store holds a record for the patient.
      */
-    private void saveMedicalRecordsToFile(String filename) throws IOException {
-        List<String> stringList = new ArrayList<>();
-        for (MedicalRecord record : medicalRecords) {
-            stringList.add(serializeMedicalRecord(record));
-        }
-        write(filename, stringList);
+    public boolean hasMedicalRecord(String patientId) {
+        return medicalRecordStore.contains(patientId);
     }
-    
 
     /**
-     * Serializes the MedicalRecord object into a string.
-     *
-     * Format:
-     * patientID|name|dateOfBirth|gender|phone|email|bloodType|diag1;date1,diag2;date2|treatment1^treatment2|NULL
-     *
-     * Note: The last field for Assigned Doctor ID is removed.
+     * Finds the diagnoses and treatments matching a full-text query, over every patient.
+     * Diagnosis descriptions, service types, treatment comments and medication names are searched.
      *
-     * @return Serialized string representation of the MedicalRecord
+     * @param query Words that must all occur in the same diagnosis or treatment; a word ending in '*' is a prefix.
+     * @return The matching diagnoses and treatments, by patient and position in the medical record.
      */
-    private String serializeMedicalRecord(MedicalRecord record) {
-        StringBuilder sb = new StringBuilder();
-
-        // Basic information
-        sb.append(record.getPatientID()).append(SEPARATOR);
-        sb.append(record.getName()).append(SEPARATOR);
-        sb.append(record.getDateOfBirth().format(DATE_FORMATTER)).append(SEPARATOR);
-        sb.append(record.getGender()).append(SEPARATOR);
-        sb.append(record.getContactInformation().getPhoneNumber()).append(SEPARATOR);
-        sb.append(record.getContactInformation().getEmailAddress()).append(SEPARATOR);
-        sb.append(record.getBloodType() != null ? record.getBloodType() : "NULL").append(SEPARATOR);
+    public List<MedicalRecordIndex.Reference> searchMedicalRecords(String query) {
+        return medicalRecordIndex.search(query);
+    }
 
-        // Serialize Diagnoses
-        if (record.getPastDiagnoses() != null && !record.getPastDiagnoses().isEmpty()) {
-            String diagnoses = record.getPastDiagnoses().stream()
-                .map(d -> d.getDescription() + ";" + d.getDate().format(DATE_FORMATTER))
-                .collect(Collectors.joining(","));
-            sb.append(diagnoses);
-        } else {
-            sb.append("NULL");
+    /**
+     * Finds the diagnoses and treatments matching a full-text query among the patients
+     * who have an appointment with a doctor.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param query    Words that must all occur in the same diagnosis or treatment; a word ending in '*' is a prefix.
+     * @return The matching diagnoses and treatments of the doctor's patients.
+     */
+    public List<MedicalRecordIndex.Reference> searchMedicalRecordsOfDoctor(String doctorId, String query) {
+        Set<String> patientIds = new HashSet<>();
+        for (Appointment appointment : getAppointmentsByDoctorId(doctorId)) {
+            patientIds.add(appointment.getPatientId());
         }
-        sb.append(SEPARATOR);
-
-        // Serialize Treatments using '^' as the separator
-        if (record.getPastTreatments() != null && !record.getPastTreatments().isEmpty()) {
-            String treatments = record.getPastTreatments().stream()
-                .map(Treatment::serialize)
-                .collect(Collectors.joining("^")); // Ensure '^' is used here
-            sb.append(treatments);
-        } else {
-            sb.append("NULL");
+        List<MedicalRecordIndex.Reference> matches = new ArrayList<>();
+        for (MedicalRecordIndex.Reference reference : medicalRecordIndex.search(query)) {
+            if (patientIds.contains(reference.getPatientId())) {
+                matches.add(reference);
+            }
         }
-        // No Assigned Doctor ID field
-        // sb.append(SEPARATOR).append(record.getAssignedDoctorId() != null ? record.getAssignedDoctorId() : "NULL");
+        return matches;
+    }
 
-        return sb.toString();
+    /**
+     * Gets the cache of medical records, including its hit, miss, eviction and write-back counts.
+     *
+     * @return The medical record cache
+     */
+    public MedicalRecordCache getMedicalRecordCache() {
+        return medicalRecordCache;
     }
     
 
@@ -812,35 +1758,110 @@ public class TextDB {
      * @return The MedicalRecord object, or null if not found.
      */
     public MedicalRecord getMedicalRecordByPatientId(String patientId) {
-        for (MedicalRecord record : medicalRecords) {
-            if (record.getPatientID().equals(patientId)) {
-                return record;
+        if (!medicalRecordStore.contains(patientId)) {
+            return null;
+        }
+        try {
+            return medicalRecordCache.get(patientId);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Records a new treatment for a patient with one append to their treatment log.
+     *
+     * The treatment is applied to the cached record of the patient, not to the given
+     * copy, which may have been evicted and reloaded while a menu held it; a change
+     * applied only to a stale copy would be lost when the cached one is written back.
+     *
+     * @param record    The patient's medical record.
+     * @param treatment The treatment to add.
+     * @throws IOException If the treatment log cannot be written; the record is then unchanged.
+     */
+    public void addTreatment(MedicalRecord record, Treatment treatment) throws IOException {
+        synchronized (medicalRecordLock) {
+            MedicalRecord current = getCurrentMedicalRecord(record.getPatientID());
+            if (current != null) {
+                int position = treatmentLog.addTreatment(current, treatment);
+                medicalRecordIndex.addTreatment(current.getPatientID(), position, treatment);
             }
         }
-        return null;
     }
 
     /**
-     * Updates an existing MedicalRecord in the list and persists the changes.
+     * Changes the status of a prescription with one append to the patient's treatment log.
+     * As for addTreatment, the change is applied to the cached record of the patient.
+     *
+     * @param record       The patient's medical record.
+     * @param treatment    Position of the treatment in the record's past treatments.
+     * @param prescription Position of the prescription in the treatment.
+     * @param status       The new status.
+     * @throws IOException If the treatment log cannot be written; the record is then unchanged.
+     */
+    public void updatePrescriptionStatus(MedicalRecord record, int treatment, int prescription, String status) throws IOException {
+        synchronized (medicalRecordLock) {
+            MedicalRecord current = getCurrentMedicalRecord(record.getPatientID());
+            if (current != null) {
+                treatmentLog.setPrescriptionStatus(current, treatment, prescription, status);
+            }
+        }
+    }
+
+    /**
+     * Gets the cached record of a patient, loading it if needed, reporting a missing record.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return The record, or null if the store holds none for the patient.
+     * @throws IOException If the record cannot be loaded.
+     */
+    private MedicalRecord getCurrentMedicalRecord(String patientId) throws IOException {
+        MedicalRecord current = medicalRecordStore.contains(patientId) ? medicalRecordCache.get(patientId) : null;
+        if (current == null) {
+            System.err.println("Medical record for patient ID " + patientId + " not found.");
+        }
+        return current;
+    }
+
+    /**
+     * Updates an existing MedicalRecord in the cache and logs it to the write-ahead log.
+     * It is written to the store in full, which also compacts the patient's treatment log,
+     * when it is evicted or by the next flush.
+     *
+     * Treatments only change through the treatment log, so they are taken from the
+     * cached record; a caller holding a copy from before an eviction cannot drop them.
      *
      * @param updatedRecord The updated MedicalRecord object.
      * @throws IOException If an I/O error occurs during saving.
      */
     public void updateMedicalRecord(MedicalRecord updatedRecord) throws IOException {
-        boolean found = false;
-        for (int i = 0; i < medicalRecords.size(); i++) {
-            if (medicalRecords.get(i).getPatientID().equals(updatedRecord.getPatientID())) {
-                medicalRecords.set(i, updatedRecord);
-                found = true;
-                break;
-            }
-        }
-    
-        if (found) {
-            saveMedicalRecordsToFile("med_records.txt");
-        } else {
+        if (!medicalRecordStore.contains(updatedRecord.getPatientID())) {
             System.err.println("Medical record for patient ID " + updatedRecord.getPatientID() + " not found.");
+            return;
+        }
+        synchronized (medicalRecordLock) {
+            MedicalRecord record = withTreatmentsOf(updatedRecord, medicalRecordCache.get(updatedRecord.getPatientID()));
+            medicalRecordCache.markDirty(record);
+            medicalRecordIndex.index(record);
+            log(WriteAheadLog.RecordType.MEDICAL_RECORD_PUT, RecordCodec.encodeMedicalRecord(record));
+        }
+    }
+
+    /**
+     * Combines a record changed outside the treatment log with the treatments of the
+     * patient's current record.
+     *
+     * @param changed The changed record.
+     * @param current The current record, or null if there is none.
+     * @return The changed record with the current treatments.
+     */
+    private static MedicalRecord withTreatmentsOf(MedicalRecord changed, MedicalRecord current) {
+        if (current == null || current == changed) {
+            return changed;
         }
+        return new MedicalRecord(changed.getPatientID(), changed.getName(), changed.getDateOfBirth(), changed.getGender(),
+                changed.getContactInformation(), changed.getBloodType(), changed.getPastDiagnoses(), current.getPastTreatments());
     }
     
     
@@ -853,9 +1874,49 @@ public class TextDB {
      * @return List of appointments for the specified doctor.
      */
     public List<Appointment> getAppointmentsByDoctorId(String doctorId) {
-        return appointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctorId))
-                .collect(Collectors.toList());
+        return appointmentIndex.getByDoctor(doctorId);
+    }
+
+    /**
+     * Retrieves appointments of a specific doctor with a given status.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param status   The status to match.
+     * @return List of the doctor's appointments with that status.
+     */
+    public List<Appointment> getAppointmentsByDoctorIdAndStatus(String doctorId, AppointmentStatus status) {
+        return appointmentIndex.getByDoctorAndStatus(doctorId, status);
+    }
+
+    /**
+     * Counts the appointments with a given status.
+     *
+     * @param status The status to count.
+     * @return Number of appointments with that status.
+     */
+    public int countAppointmentsByStatus(AppointmentStatus status) {
+        return appointmentIndex.countByStatus(status);
+    }
+
+    /**
+     * Counts the appointments of a specific doctor with a given status.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param status   The status to count.
+     * @return Number of the doctor's appointments with that status.
+     */
+    public int countAppointmentsByDoctorIdAndStatus(String doctorId, AppointmentStatus status) {
+        return appointmentIndex.countByDoctorAndStatus(doctorId, status);
+    }
+
+    /**
+     * Retrieves appointments associated with a specific patient by their ID.
+     *
+     * @param patientId The ID of the patient.
+     * @return List of appointments for the specified patient.
+     */
+    public List<Appointment> getAppointmentsByPatientId(String patientId) {
+        return appointmentIndex.getByPatient(patientId);
     }
     
     /**
@@ -865,9 +1926,7 @@ public class TextDB {
      * @return List of pending appointments for the specified doctor.
      */
     public List<Appointment> getPendingAppointmentsByDoctorId(String doctorId) {
-        return appointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctorId) && appt.getStatus().equalsIgnoreCase("Pending"))
-                .collect(Collectors.toList());
+        return appointmentIndex.getByDoctorAndStatus(doctorId, AppointmentStatus.PENDING);
     }
     
     /**
@@ -878,10 +1937,9 @@ public class TextDB {
      */
     public List<Appointment> getUpcomingAppointmentsByDoctorId(String doctorId) {
         LocalDateTime now = LocalDateTime.now();
-        return appointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctorId) &&
-                                appt.getTimeSlot().getStartTime().isAfter(now) &&
-                                !appt.getStatus().equalsIgnoreCase("Declined"))
+        return appointmentIndex.getByDoctorFrom(doctorId, now.toLocalDate()).stream()
+                .filter(appt -> appt.getTimeSlot().getStartTime().isAfter(now) &&
+                                appt.getStatus() != AppointmentStatus.DECLINED)
                 .collect(Collectors.toList());
     }
     
@@ -892,23 +1950,98 @@ public class TextDB {
      *
      * @param updatedAppt The appointment with updated details.
      * @throws IOException If an I/O error occurs while saving appointments or schedules.
+     * @throws IllegalArgumentException If the appointment may not change from its stored status to the new one;
+     *                                  nothing is indexed or logged in that case.
      */
     public void updateAppointment(Appointment updatedAppt) throws IOException {
-        for (int i = 0; i < appointments.size(); i++) {
-            if (appointments.get(i).getId() == updatedAppt.getId()) {
-                appointments.set(i, updatedAppt);
-                // Update TimeSlot availability based on status
-                if (updatedAppt.getStatus().equalsIgnoreCase("Scheduled")) {
-                    // Slot already marked as unavailable during request
-                    // No action needed
-                } else if (updatedAppt.getStatus().equalsIgnoreCase("Declined")) {
-                    // Make the TimeSlot available again
-                    updatedAppt.getTimeSlot().setAvailable(true);
+        // Locks the doctor-day the appointment leaves as well as the one it moves to
+        List<ReentrantLock> locks = lockAppointment(updatedAppt.getId(),
+                new StripedLocks.Key(updatedAppt.getDoctorId(), updatedAppt.getDate()));
+        try {
+            Appointment current = appointmentIndex.get(updatedAppt.getId());
+            if (current != null) {
+                checkTransition(updatedAppt, appointmentIndex.getIndexedStatus(current), updatedAppt.getStatus());
+                String heldDoctorId = appointmentIndex.getIndexedDoctorId(current);
+                TimeSlot held = appointmentIndex.getHeldSlot(current);
+                if (current == updatedAppt) {
+                    appointmentIndex.refresh(updatedAppt); // Changed in place by the caller
+                } else {
+                    replaceAppointment(current, updatedAppt);
                 }
-                saveAppointmentsToFile("appts.txt");
-                saveSchedulesToFile("schedules.txt"); // Save updated TimeSlot availability
-                break;
+                // The index refresh above frees the slot of a declined or rescheduled appointment
+                log(WriteAheadLog.RecordType.APPOINTMENT_PUT, serializeAppointment(updatedAppt));
+                backfill(heldDoctorId, held);
+            }
+        } finally {
+            StripedLocks.unlock(locks);
+        }
+    }
+
+    /**
+     * Moves an appointment to another doctor and time slot and marks it rescheduled.
+     * The new slot is checked and claimed under its doctor-day lock, as in addAppointment,
+     * so a reschedule never takes a slot that another appointment holds.
+     *
+     * @param appointmentId The unique ID of the appointment to reschedule.
+     * @param doctor        The doctor of the new slot.
+     * @param timeSlot      The new time slot.
+     * @return True if the appointment was moved, false if it does not exist or the slot is taken;
+     *         the appointment is left unchanged in that case.
+     * @throws IOException If the change cannot be logged.
+     * @throws IllegalArgumentException If the appointment may not be rescheduled from its stored status.
+     */
+    public boolean rescheduleAppointment(int appointmentId, Doctor doctor, TimeSlot timeSlot) throws IOException {
+        // Locks the doctor-day the appointment leaves as well as the one it moves to
+        List<ReentrantLock> locks = lockAppointment(appointmentId,
+                new StripedLocks.Key(doctor.getHospitalID(), timeSlot.getDate()));
+        try {
+            Appointment appointment = appointmentIndex.get(appointmentId);
+            if (appointment == null) {
+                return false;
+            }
+            checkTransition(appointment, appointmentIndex.getIndexedStatus(appointment), AppointmentStatus.RESCHEDULED);
+            String heldDoctorId = appointmentIndex.getIndexedDoctorId(appointment);
+            TimeSlot held = appointmentIndex.getHeldSlot(appointment);
+            boolean ownSlot = held != null && held.equals(timeSlot) && heldDoctorId.equals(doctor.getHospitalID());
+            if (!ownSlot && !isAppointmentSlotAvailable(timeSlot.getDate(), doctor, timeSlot)) {
+                return false;
+            }
+
+            String previousDoctorId = appointment.getDoctorId();
+            TimeSlot previousTimeSlot = appointment.getTimeSlot();
+            AppointmentStatus previousStatus = appointment.getStatus();
+            appointment.setDoctorId(doctor.getHospitalID());
+            appointment.setTimeSlot(timeSlot);
+            appointment.setStatus(AppointmentStatus.RESCHEDULED);
+            appointmentIndex.refresh(appointment); // Releases the old slot and holds the new one
+            try {
+                log(WriteAheadLog.RecordType.APPOINTMENT_PUT, serializeAppointment(appointment));
+            } catch (IOException e) {
+                // Moves the appointment back, so memory still matches the log
+                appointment.setDoctorId(previousDoctorId);
+                appointment.setTimeSlot(previousTimeSlot);
+                appointment.setStatus(previousStatus);
+                appointmentIndex.refresh(appointment);
+                throw e;
             }
+            backfill(heldDoctorId, held);
+            return true;
+        } finally {
+            StripedLocks.unlock(locks);
+        }
+    }
+
+    /**
+     * Checks that an appointment may change from one status to another.
+     *
+     * @param appointment The appointment being changed.
+     * @param from        The stored status of the appointment.
+     * @param to          The new status.
+     * @throws IllegalArgumentException If the change is not allowed.
+     */
+    private static void checkTransition(Appointment appointment, AppointmentStatus from, AppointmentStatus to) {
+        if (!from.canTransitionTo(to)) {
+            throw new IllegalArgumentException("Appointment " + appointment.getId() + " cannot change from " + from + " to " + to + ".");
         }
     }
 
@@ -924,11 +2057,13 @@ public class TextDB {
      * @throws IOException If an I/O error occurs.
      */
     public void saveMedicationInventory(String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        for (Medication med : medications) {
-            lines.add(serializeMedication(med));
+        synchronized (DataFile.MEDICATIONS.writeLock) {
+            List<String> lines = new ArrayList<>();
+            for (Medication med : copyOf(medications)) {
+                lines.add(serializeMedication(med));
+            }
+            write(filename, lines);
         }
-        write(filename, lines);
     }
 
     private String serializeMedication(Medication medication) {
@@ -956,15 +2091,17 @@ public class TextDB {
      */
     public void updateMedication(Medication updatedMedication) throws IOException {
         boolean found = false;
-        for (int i = 0; i < medications.size(); i++) {
-            if (medications.get(i).getName().equalsIgnoreCase(updatedMedication.getName())) {
-                medications.set(i, updatedMedication);
-                found = true;
-                break;
+        synchronized (medications) {
+            for (int i = 0; i < medications.size(); i++) {
+                if (medications.get(i).getName().equalsIgnoreCase(updatedMedication.getName())) {
+                    medications.set(i, updatedMedication);
+                    found = true;
+                    break;
+                }
             }
         }
         if (found) {
-            saveMedicationInventory("inventory.txt");
+            log(WriteAheadLog.RecordType.MEDICATION_PUT, serializeMedication(updatedMedication));
         } else {
             System.err.println("Medication " + updatedMedication.getName() + " not found in inventory.");
         }
@@ -977,21 +2114,55 @@ public class TextDB {
      * @throws IOException If an I/O error occurs.
      */
     public void saveReplenishmentRequests(String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        for (ReplenishmentRequest request : replenishmentRequests) {
-            lines.add(request.serialize());
+        synchronized (DataFile.REPLENISHMENT_REQUESTS.writeLock) {
+            List<String> lines = new ArrayList<>();
+            for (ReplenishmentRequest request : copyOf(replenishmentRequests)) {
+                lines.add(request.serialize());
+            }
+            write(filename, lines);
         }
-        write(filename, lines);
     }
 
     /**
-     * Adds a new replenishment request.
+     * Adds a new replenishment request and logs the pending requests to the write-ahead log.
      *
      * @param request The ReplenishmentRequest object to add.
+     * @throws IOException If the log record cannot be written.
      */
     public void addReplenishmentRequest(ReplenishmentRequest request) throws IOException {
-        replenishmentRequests.add(request);
-        saveReplenishmentRequests("replenishment_requests.txt");
+        synchronized (replenishmentRequests) {
+            replenishmentRequests.add(request);
+            logReplenishmentRequests();
+        }
+    }
+
+    /**
+     * Removes a processed replenishment request and logs the pending requests to the write-ahead log.
+     *
+     * @param request The ReplenishmentRequest object to remove.
+     * @throws IOException If the log record cannot be written.
+     */
+    public void removeReplenishmentRequest(ReplenishmentRequest request) throws IOException {
+        synchronized (replenishmentRequests) {
+            if (replenishmentRequests.remove(request)) {
+                logReplenishmentRequests();
+            }
+        }
+    }
+
+    /**
+     * Logs every pending replenishment request as one record. Requests have no key to
+     * replace by, so the whole list is logged; the caller holds the list's lock, so
+     * records are logged in the order the list changed.
+     *
+     * @throws IOException If the log record cannot be written.
+     */
+    private void logReplenishmentRequests() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (ReplenishmentRequest pending : replenishmentRequests) {
+            lines.add(pending.serialize());
+        }
+        log(WriteAheadLog.RecordType.REPLENISHMENT_REQUESTS_PUT, String.join(SEPARATOR, lines));
     }
 
 
@@ -0,0 +1,288 @@
+package db;
+
+import items.Prescription;
+import items.medical_records.MedicalRecord;
+import items.medical_records.Treatment;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * TreatmentLog
+ * Append-only log of treatment changes, one file per patient.
+ *
+ * Recording a treatment or changing a prescription status appends one small line to
+ * the patient's log instead of rewriting the whole medical record. A patient's record
+ * is rebuilt by folding the log over the record held in MedicalRecordStore each time it
+ * is read. Compaction writes the folded record to the store and deletes the log, which
+ * bounds its growth.
+ *
+ * Each line is code|checksum|payload, where checksum is the CRC32 (hex) of code|payload:
+ * T|checksum|position|treatment adds a treatment, serialized as in med_records.txt, at
+ * the given position of the treatment list;
+ * S|checksum|treatment|prescription|status sets the status of a prescription, both
+ * given by position.
+ *
+ * A treatment whose position is already taken in the record is part of it, since
+ * compaction wrote it there before the log could be deleted, and is skipped; replaying
+ * a status is harmless. A crash during compaction therefore never duplicates treatments.
+ * A torn or corrupt line ends the log; it and anything after it are dropped on open.
+ * An entry that does not fit the record it is folded into is reported and skipped.
+ */
+public class TreatmentLog {
+    public static final int COMPACTION_THRESHOLD = Integer.getInteger("hms.treatmentLogCompaction", 32); /**< Entries after which a patient's log is compacted. */
+
+    private static final String TREATMENT = "T"; /**< Code of a treatment entry. */
+    private static final String STATUS = "S"; /**< Code of a prescription status entry. */
+    private static final String SUFFIX = ".log"; /**< Suffix of the log files. */
+
+    private final Path directory; /**< Directory holding one log per patient. */
+    private final Map<String, Integer> entryCounts = new HashMap<>(); /**< Entries in each patient's log, for patients with a log. */
+
+    /**
+     * Constructs a log kept in the given directory.
+     *
+     * @param directory Name of the log directory.
+     */
+    public TreatmentLog(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Finds the patients with a log and drops torn or corrupt tails.
+     *
+     * @throws IOException If a log cannot be read or repaired.
+     */
+    public synchronized void open() throws IOException {
+        entryCounts.clear();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String patientId = URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()), StandardCharsets.UTF_8);
+                List<String> lines = LineReader.readLines(file.toString());
+                int valid = 0;
+                while (valid < lines.size() && parse(lines.get(valid)) != null) {
+                    valid++;
+                }
+                if (valid < lines.size()) {
+                    System.err.println("Dropping " + (lines.size() - valid) + " corrupt treatment log entries of patient " + patientId + ".");
+                    DurableFileWriter.write(file.toString(), lines.subList(0, valid));
+                }
+                if (valid > 0) {
+                    entryCounts.put(patientId, valid);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a patient's record from the store and folds their log into it. Both happen
+     * under the log's lock, so a concurrent compaction cannot fall in between.
+     *
+     * @param store     The store holding the record.
+     * @param patientId The patient's hospital ID.
+     * @return The record, or null if the store holds none for the patient.
+     * @throws IOException If the record or the log cannot be read.
+     */
+    public synchronized MedicalRecord read(MedicalRecordStore store, String patientId) throws IOException {
+        MedicalRecord record = store.get(patientId);
+        if (record == null || !entryCounts.containsKey(patientId)) {
+            return record;
+        }
+        for (String line : LineReader.readLines(pathOf(record.getPatientID()).toString())) {
+            String[] entry = parse(line);
+            if (entry == null || !apply(entry[0], entry[1], record)) {
+                System.err.println("Skipping treatment log entry that does not fit the record of patient " + patientId + ": " + line);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Records a new treatment: appends it to the log, then to the record.
+     *
+     * @param record    The patient's medical record.
+     * @param treatment The treatment to add.
+     * @return Position of the treatment in the record's past treatments.
+     * @throws IOException If the log cannot be written; the record is then unchanged.
+     */
+    public synchronized int addTreatment(MedicalRecord record, Treatment treatment) throws IOException {
+        int position = record.getPastTreatments() == null ? 0 : record.getPastTreatments().size();
+        append(record.getPatientID(), TREATMENT, position + TextDB.SEPARATOR + RecordCodec.encodeTreatment(treatment));
+        record.addTreatment(treatment);
+        return position;
+    }
+
+    /**
+     * Changes the status of a prescription: appends the change to the log, then applies it.
+     *
+     * @param record       The patient's medical record.
+     * @param treatment    Position of the treatment in the record.
+     * @param prescription Position of the prescription in the treatment.
+     * @param status       The new status.
+     * @throws IOException If the log cannot be written; the record is then unchanged.
+     * @throws IndexOutOfBoundsException If no prescription is at the given position.
+     */
+    public synchronized void setPrescriptionStatus(MedicalRecord record, int treatment, int prescription, String status) throws IOException {
+        Prescription target = record.getPastTreatments().get(treatment).getAllPrescribedMedicine().get(prescription);
+        append(record.getPatientID(), STATUS, treatment + TextDB.SEPARATOR + prescription + TextDB.SEPARATOR + status);
+        target.setStatus(status);
+    }
+
+    /**
+     * Writes a record to the store in full and deletes the patient's log, which the
+     * record now includes.
+     *
+     * @param record The patient's medical record, with the log folded in.
+     * @param store  The store receiving the record.
+     * @throws IOException If the record cannot be written or the log cannot be deleted.
+     */
+    public synchronized void compact(MedicalRecord record, MedicalRecordStore store) throws IOException {
+        store.put(record);
+        String patientId = record.getPatientID();
+        if (entryCounts.remove(patientId) != null) {
+            Files.deleteIfExists(pathOf(patientId));
+        }
+    }
+
+    /**
+     * Gets the patients whose log has reached a number of entries.
+     *
+     * @param threshold Minimum number of entries.
+     * @return IDs of the patients due for compaction.
+     */
+    public synchronized List<String> getPatientsToCompact(int threshold) {
+        List<String> due = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : entryCounts.entrySet()) {
+            if (entry.getValue() >= threshold) {
+                due.add(entry.getKey());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Checks whether a patient has entries not yet compacted into their stored record.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return True if the patient has a log.
+     */
+    public synchronized boolean hasLog(String patientId) {
+        return entryCounts.containsKey(patientId);
+    }
+
+    /**
+     * Gets the number of entries in a patient's log.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return Number of entries not yet compacted.
+     */
+    public synchronized int size(String patientId) {
+        return entryCounts.getOrDefault(patientId, 0);
+    }
+
+    /**
+     * Splits a log line into its code and payload, verifying the checksum.
+     *
+     * @param line The log line.
+     * @return The code and the payload, or null if the line is torn or corrupt.
+     */
+    private static String[] parse(String line) {
+        int first = line.indexOf('|');
+        int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        String code = line.substring(0, first);
+        String payload = line.substring(second + 1);
+        if (!line.substring(first + 1, second).equals(checksum(code, payload))) {
+            return null;
+        }
+        return new String[] {code, payload};
+    }
+
+    /**
+     * Applies one log entry to a record.
+     *
+     * @param code    Entry code.
+     * @param payload Entry payload.
+     * @param record  The patient's record.
+     * @return False if the entry does not fit the record.
+     */
+    private static boolean apply(String code, String payload, MedicalRecord record) {
+        try {
+            int separator = payload.indexOf('|');
+            int position = Integer.parseInt(payload.substring(0, separator));
+            List<Treatment> treatments = record.getPastTreatments();
+            int size = treatments == null ? 0 : treatments.size();
+            if (code.equals(TREATMENT)) {
+                if (position > size) {
+                    return false;
+                }
+                if (position == size) {
+                    record.addTreatment(RecordCodec.decodeTreatment(payload.substring(separator + 1)));
+                }
+                return true;
+            }
+            if (code.equals(STATUS)) {
+                int next = payload.indexOf('|', separator + 1);
+                int prescription = Integer.parseInt(payload.substring(separator + 1, next));
+                treatments.get(position).getAllPrescribedMedicine().get(prescription).setStatus(payload.substring(next + 1));
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends one entry to a patient's log, creating the log if needed.
+     *
+     * @param patientId The patient's hospital ID.
+     * @param code      Entry code.
+     * @param payload   Entry payload.
+     * @throws IOException If the log cannot be written.
+     */
+    private void append(String patientId, String code, String payload) throws IOException {
+        Files.createDirectories(directory);
+        String line = code + TextDB.SEPARATOR + checksum(code, payload) + TextDB.SEPARATOR + payload + "\n";
+        try (FileChannel channel = FileChannel.open(pathOf(patientId), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            DurableFileWriter.force(channel);
+        }
+        entryCounts.merge(patientId, 1, Integer::sum);
+    }
+
+    private Path pathOf(String patientId) {
+        return directory.resolve(URLEncoder.encode(patientId, StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    private static String checksum(String code, String payload) {
+        CRC32 crc = new CRC32();
+        crc.update((code + TextDB.SEPARATOR + payload).getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
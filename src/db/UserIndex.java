@@ -0,0 +1,118 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import user_classes.User;
+
+/**
+ * UserIndex
+ * Hash indexes over the user list of TextDB.
+ *
+ * Users are indexed by exact hospital ID, and per role (the user's class name) by
+ * case-insensitive hospital ID, so both getUserByHospitalID and login lookups take
+ * constant time. When several users share a key, the one that comes first in the
+ * user list wins, matching the linear scans the index replaces.
+ */
+public class UserIndex {
+    private final Map<String, User> byId = new HashMap<>(); /**< Users by exact hospital ID. */
+    private final Map<String, Map<String, User>> byRole = new HashMap<>(); /**< Users by role, then by lower-case hospital ID. */
+    private final Map<String, List<User>> membersByRole = new HashMap<>(); /**< Users of each role, in user list order. */
+
+    /**
+     * Rebuilds the index from a user list.
+     *
+     * @param users Users in list order.
+     */
+    public void rebuild(List<User> users) {
+        byId.clear();
+        byRole.clear();
+        membersByRole.clear();
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    /**
+     * Adds a user appended to the end of the user list.
+     *
+     * @param user The new user.
+     */
+    public void add(User user) {
+        String role = roleKey(user.getClass().getSimpleName());
+        byId.putIfAbsent(user.getHospitalID(), user);
+        byRole.computeIfAbsent(role, key -> new LinkedHashMap<>())
+                .putIfAbsent(idKey(user.getHospitalID()), user);
+        membersByRole.computeIfAbsent(role, key -> new ArrayList<>()).add(user);
+    }
+
+    /**
+     * Replaces a user in place, keeping its position in the user list.
+     *
+     * @param previous The user being replaced.
+     * @param user     The replacement, with the same hospital ID.
+     */
+    public void replace(User previous, User user) {
+        if (byId.get(previous.getHospitalID()) == previous) {
+            byId.put(user.getHospitalID(), user);
+        }
+
+        String role = roleKey(previous.getClass().getSimpleName());
+        Map<String, User> roleIndex = byRole.get(role);
+        if (roleIndex != null && roleIndex.get(idKey(previous.getHospitalID())) == previous) {
+            roleIndex.put(idKey(user.getHospitalID()), user);
+        }
+        List<User> members = membersByRole.get(role);
+        if (members != null) {
+            int position = members.indexOf(previous);
+            if (position >= 0) {
+                members.set(position, user);
+            }
+        }
+    }
+
+    /**
+     * Gets a user by exact hospital ID.
+     *
+     * @param hospitalID Hospital ID to look up.
+     * @return The matching user, or null if none exists.
+     */
+    public User get(String hospitalID) {
+        return byId.get(hospitalID);
+    }
+
+    /**
+     * Gets a user of a role by hospital ID, ignoring case in both.
+     *
+     * @param role       Role name, such as "Doctor".
+     * @param hospitalID Hospital ID to look up.
+     * @return The matching user, or null if none exists.
+     */
+    public User get(String role, String hospitalID) {
+        Map<String, User> roleIndex = byRole.get(roleKey(role));
+        return roleIndex == null ? null : roleIndex.get(idKey(hospitalID));
+    }
+
+    /**
+     * Gets every user of a role.
+     *
+     * @param role Role name, ignoring case.
+     * @return Unmodifiable list of the users of that role, in user list order.
+     */
+    public List<User> getByRole(String role) {
+        List<User> members = membersByRole.get(roleKey(role));
+        return members == null ? Collections.emptyList() : Collections.unmodifiableList(members);
+    }
+
+    private static String roleKey(String role) {
+        return role.toLowerCase(Locale.ROOT);
+    }
+
+    private static String idKey(String hospitalID) {
+        return hospitalID.toLowerCase(Locale.ROOT);
+    }
+}
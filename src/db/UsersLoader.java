@@ -43,11 +43,8 @@ public class UsersLoader extends DataLoader<User> {
      */
     @Override
     public void loadData() throws IOException {
-        List<String> lines = read(filePath);
         users.clear();
-        for (String line : lines) {
-            users.add(deserialize(line));
-        }
+        LineReader.forEachLine(filePath, line -> users.add(deserialize(line)));
     }
 
     /**
@@ -83,14 +80,25 @@ public class UsersLoader extends DataLoader<User> {
             throw new IllegalArgumentException("Invalid user data: " + userData);
         }
 
-        String hospitalID = fields[0];
-        String password = fields[1];
-        String name = fields[2];
         LocalDate dateOfBirth = LocalDate.parse(fields[3], DATE_FORMATTER);
-        String gender = fields[4];
-        String role = fields[5].toLowerCase();
+        return createUser(fields[0], fields[1], fields[2], dateOfBirth, fields[4], fields[5]);
+    }
 
-        switch (role) {
+    /**
+     * Creates the User subclass matching a role.
+     *
+     * @param hospitalID  Hospital ID of the user.
+     * @param password    Password of the user.
+     * @param name        Name of the user.
+     * @param dateOfBirth Date of birth of the user.
+     * @param gender      Gender of the user.
+     * @param role        Role name, case-insensitive.
+     * @return New User of the matching subclass.
+     * @throws IllegalArgumentException If the role is unknown.
+     */
+    static User createUser(String hospitalID, String password, String name, LocalDate dateOfBirth, String gender, String role) {
+        String roleName = role.toLowerCase();
+        switch (roleName) {
             case "administrator":
                 return new Administrator(hospitalID, password, name, dateOfBirth, gender);
             case "doctor":
@@ -100,7 +108,7 @@ public class UsersLoader extends DataLoader<User> {
             case "pharmacist":
                 return new Pharmacist(hospitalID, password, name, dateOfBirth, gender);
             default:
-                throw new IllegalArgumentException("Unknown role: " + role);
+                throw new IllegalArgumentException("Unknown role: " + roleName);
         }
     }
 
@@ -130,4 +138,16 @@ public class UsersLoader extends DataLoader<User> {
                 user.getGender(),
                 user.getRole());
     }
+
+    /**
+     * Hands the loaded User objects over to the caller without copying them.
+     *
+     * @return Mutable list of the loaded User objects.
+     */
+    @Override
+    List<User> detachData() {
+        List<User> loaded = users;
+        users = new ArrayList<>();
+        return loaded;
+    }
 }
@@ -0,0 +1,298 @@
+package db;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Waitlist
+ * Patients waiting for a slot with a doctor to become free.
+ *
+ * Each request is filed under every date of its preferred range, in a priority queue
+ * per doctor and date. Requests made earlier come first; among requests made at the
+ * same time, the one whose range ends sooner comes first. Matching a freed slot
+ * therefore polls a single queue, in O(log n).
+ *
+ * A request that is withdrawn or matched stays in the queues of its other dates
+ * until it reaches their head, where it is dropped.
+ *
+ * Requests are stored one per line as sequence|patientId|doctorId|from|to|requestedAt,
+ * the format of both waitlist.txt and the waitlist records of the write-ahead log.
+ */
+public class Waitlist {
+    public static final int MAX_RANGE_DAYS = 90; /**< Maximum number of dates a request may cover. */
+
+    /**
+     * A patient waiting for a slot with a doctor within a range of dates.
+     */
+    public static final class Request {
+        private final long sequence;           /**< Order in which the request was added, used to break ties. */
+        private final String patientId;        /**< The waiting patient's hospital ID. */
+        private final String doctorId;         /**< The doctor's hospital ID. */
+        private final LocalDate from;          /**< First acceptable date. */
+        private final LocalDate to;            /**< Last acceptable date. */
+        private final LocalDateTime requestedAt; /**< When the patient joined the waitlist. */
+        private boolean active = true;         /**< False once the request is withdrawn or matched. */
+
+        private Request(long sequence, String patientId, String doctorId, LocalDate from, LocalDate to, LocalDateTime requestedAt) {
+            this.sequence = sequence;
+            this.patientId = patientId;
+            this.doctorId = doctorId;
+            this.from = from;
+            this.to = to;
+            this.requestedAt = requestedAt;
+        }
+
+        /**
+         * Gets the number that identifies the request in the waitlist.
+         * @return The sequence number.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets the waiting patient's hospital ID.
+         * @return The patient ID.
+         */
+        public String getPatientId() {
+            return patientId;
+        }
+
+        /**
+         * Gets the doctor's hospital ID.
+         * @return The doctor ID.
+         */
+        public String getDoctorId() {
+            return doctorId;
+        }
+
+        /**
+         * Gets the first acceptable date.
+         * @return The first date of the range.
+         */
+        public LocalDate getFrom() {
+            return from;
+        }
+
+        /**
+         * Gets the last acceptable date.
+         * @return The last date of the range.
+         */
+        public LocalDate getTo() {
+            return to;
+        }
+
+        /**
+         * Gets when the patient joined the waitlist.
+         * @return The request time.
+         */
+        public LocalDateTime getRequestedAt() {
+            return requestedAt;
+        }
+
+        /**
+         * Checks whether the request is still waiting.
+         * @return False once the request is withdrawn or matched.
+         */
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    private static final Comparator<Request> PRIORITY = Comparator.comparing((Request request) -> request.requestedAt)
+            .thenComparing(request -> request.to)
+            .thenComparingLong(request -> request.sequence); /**< Earliest request first, then the most urgent range. */
+
+    private final Map<String, Map<LocalDate, PriorityQueue<Request>>> queues = new HashMap<>(); /**< Requests by doctor and date. */
+    private final Map<Long, Request> active = new TreeMap<>(); /**< Waiting requests in order of addition. */
+    private long nextSequence; /**< Sequence number of the next request. */
+
+    /**
+     * Adds a patient to a doctor's waitlist.
+     *
+     * @param patientId   The patient's hospital ID.
+     * @param doctorId    The doctor's hospital ID.
+     * @param from        First acceptable date.
+     * @param to          Last acceptable date.
+     * @param requestedAt When the patient joined the waitlist.
+     * @return The new request.
+     * @throws IllegalArgumentException If the range is empty or longer than MAX_RANGE_DAYS.
+     */
+    public synchronized Request add(String patientId, String doctorId, LocalDate from, LocalDate to, LocalDateTime requestedAt) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Waitlist range starts after it ends: " + from + " to " + to);
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Waitlist range may cover at most " + MAX_RANGE_DAYS + " days: " + from + " to " + to);
+        }
+
+        Request request = new Request(nextSequence++, patientId, doctorId, from, to, requestedAt);
+        file(request);
+        return request;
+    }
+
+    /**
+     * Puts a request back on the waitlist under its own sequence number, for requests
+     * loaded from disk and requests whose match could not be recorded.
+     *
+     * @param request The request to reinstate.
+     */
+    public synchronized void restore(Request request) {
+        if (active.containsKey(request.sequence)) {
+            return;
+        }
+        nextSequence = Math.max(nextSequence, request.sequence + 1);
+        file(request);
+    }
+
+    /**
+     * Withdraws a request.
+     *
+     * @param request The request to withdraw.
+     * @return True if the request was still waiting.
+     */
+    public synchronized boolean remove(Request request) {
+        if (!request.active) {
+            return false;
+        }
+        deactivate(request);
+        return true;
+    }
+
+    /**
+     * Withdraws a request by its sequence number.
+     *
+     * @param sequence Sequence number of the request.
+     * @return True if the request was still waiting.
+     */
+    public synchronized boolean remove(long sequence) {
+        Request request = active.get(sequence);
+        return request != null && remove(request);
+    }
+
+    /**
+     * Takes the first waiting request of a doctor that accepts a date.
+     *
+     * @param doctorId The doctor's hospital ID.
+     * @param date     The date of the freed slot.
+     * @return The matched request, no longer waiting, or null if no request accepts the date.
+     */
+    public synchronized Request poll(String doctorId, LocalDate date) {
+        Map<LocalDate, PriorityQueue<Request>> dates = queues.get(doctorId);
+        if (dates == null) {
+            return null;
+        }
+        PriorityQueue<Request> queue = dates.get(date);
+        Request match = null;
+        while (queue != null && !queue.isEmpty() && match == null) {
+            Request head = queue.poll();
+            if (head.active) {
+                match = head;
+            }
+        }
+        if (queue != null && queue.isEmpty()) {
+            dates.remove(date);
+            if (dates.isEmpty()) {
+                queues.remove(doctorId);
+            }
+        }
+        if (match != null) {
+            deactivate(match);
+        }
+        return match;
+    }
+
+    /**
+     * Gets the waiting requests of a patient.
+     *
+     * @param patientId The patient's hospital ID.
+     * @return The patient's waiting requests, in order of addition.
+     */
+    public synchronized List<Request> getByPatient(String patientId) {
+        List<Request> result = new ArrayList<>();
+        for (Request request : active.values()) {
+            if (request.patientId.equals(patientId)) {
+                result.add(request);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets every waiting request.
+     *
+     * @return The waiting requests, in order of addition.
+     */
+    public synchronized List<Request> getAll() {
+        return new ArrayList<>(active.values());
+    }
+
+    /**
+     * Gets the number of waiting requests.
+     * @return Number of requests not yet withdrawn or matched.
+     */
+    public synchronized int size() {
+        return active.size();
+    }
+
+    /**
+     * Serializes a request into a single line.
+     *
+     * @param request The request.
+     * @return sequence|patientId|doctorId|from|to|requestedAt
+     */
+    public static String serialize(Request request) {
+        return String.join(TextDB.SEPARATOR,
+                String.valueOf(request.sequence),
+                request.patientId,
+                request.doctorId,
+                request.from.toString(),
+                request.to.toString(),
+                request.requestedAt.toString());
+    }
+
+    /**
+     * Parses a line written by serialize. The request is not on any waitlist until it is restored.
+     *
+     * @param line The serialized request.
+     * @return The parsed request.
+     * @throws IllegalArgumentException If the line is malformed.
+     */
+    public static Request parse(String line) {
+        String[] parts = line.split("\\|", -1);
+        if (parts.length != 6) {
+            throw new IllegalArgumentException("Invalid waitlist request: " + line);
+        }
+        Request request = new Request(Long.parseLong(parts[0]), parts[1], parts[2],
+                LocalDate.parse(parts[3]), LocalDate.parse(parts[4]), LocalDateTime.parse(parts[5]));
+        request.active = false;
+        return request;
+    }
+
+    /**
+     * Files a request under each date of its range and marks it waiting.
+     *
+     * @param request The request.
+     */
+    private void file(Request request) {
+        request.active = true;
+        Map<LocalDate, PriorityQueue<Request>> dates = queues.computeIfAbsent(request.doctorId, id -> new HashMap<>());
+        for (LocalDate date = request.from; !date.isAfter(request.to); date = date.plusDays(1)) {
+            dates.computeIfAbsent(date, day -> new PriorityQueue<>(PRIORITY)).add(request);
+        }
+        active.put(request.sequence, request);
+    }
+
+    private void deactivate(Request request) {
+        request.active = false;
+        active.remove(request.sequence);
+    }
+}
@@ -0,0 +1,322 @@
+package db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog
+ * Append-only log of the mutations applied to TextDB.
+ *
+ * Every mutation is appended as a single line of the form
+ * sequence|type|checksum|payload, where checksum is the CRC32 (hex) of
+ * sequence|type|payload. The .txt data files act as checkpointed snapshots:
+ * on startup the log is replayed on top of them, and on checkpoint the data
+ * files are rewritten and the records they cover are dropped from the log.
+ *
+ * Every append is written to the file before it returns, so a record survives a
+ * process crash as soon as the mutation it describes is reported. Forcing the file
+ * to the storage device follows the DurableFileWriter fsync policy: on every append
+ * under ALWAYS, or batched by sync() under INTERVAL.
+ */
+public class WriteAheadLog {
+
+    /**
+     * Kinds of records stored in the log, each with a short code used on disk.
+     */
+    public enum RecordType {
+        APPOINTMENT_PUT("AP"),      /**< Payload is a serialized appointment (insert or replace by ID). */
+        APPOINTMENT_DELETE("AD"),   /**< Payload is an appointment ID. */
+        MEDICAL_RECORD_PUT("MR"),   /**< Payload is a serialized medical record (replace by patient ID, keeping treatments from the treatment log). */
+        SCHEDULE_PUT("SC"),         /**< Payload is a schedules.txt line for one doctor and date. */
+        MEDICATION_PUT("MD"),       /**< Payload is a serialized medication (replace by name). */
+        USER_PUT("US"),             /**< Payload is a serialized user (replace by hospital ID). */
+        REPLENISHMENT_REQUESTS_PUT("RR"), /**< Payload is every pending replenishment request, separated by | (replaces them all). */
+        WAITLIST_PUT("WP"),         /**< Payload is a serialized waitlist request (insert by sequence number). */
+        WAITLIST_DELETE("WD"),      /**< Payload is the sequence number of a withdrawn or matched waitlist request. */
+        APPOINTMENT_ID_RESERVE("AI"); /**< Payload is the first appointment ID not yet reserved. */
+
+        private final String code; /**< Code written to the log file. */
+
+        RecordType(String code) {
+            this.code = code;
+        }
+
+        /**
+         * Gets the on-disk code of this record type.
+         * @return The record type code.
+         */
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * Looks up a record type by its on-disk code.
+         *
+         * @param code Code read from the log file.
+         * @return The matching RecordType, or null if the code is unknown.
+         */
+        public static RecordType fromCode(String code) {
+            for (RecordType type : values()) {
+                if (type.code.equals(code)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Callback used to apply replayed records to the in-memory data.
+     */
+    public interface Replayer {
+        void apply(RecordType type, String payload);
+    }
+
+    private final Path path;                          /**< Location of the log file. */
+    private long nextSequence = 1;                    /**< Sequence number of the next appended record. */
+    private int recordCount;                          /**< Number of records since the last checkpoint. */
+    private final EnumSet<RecordType> pendingTypes = EnumSet.noneOf(RecordType.class); /**< Record types since the last checkpoint. */
+    private boolean unforced;                         /**< Whether records were written since the file was last forced. */
+
+    /**
+     * Constructs a WriteAheadLog backed by the given file.
+     *
+     * @param fileName Name of the log file.
+     */
+    public WriteAheadLog(String fileName) {
+        this.path = Paths.get(fileName);
+    }
+
+    /**
+     * Replays every valid record in the log, in sequence order.
+     *
+     * Replay stops at the first record that is incomplete, out of sequence or fails
+     * its checksum (for example a write torn by a crash); the log is truncated to the
+     * last valid record so that later appends continue from a consistent state.
+     *
+     * @param replayer Callback that applies each record.
+     * @return Number of records replayed.
+     * @throws IOException If the log cannot be read or truncated.
+     */
+    public synchronized int replay(Replayer replayer) throws IOException {
+        recordCount = 0;
+        pendingTypes.clear();
+        nextSequence = 1;
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        byte[] bytes = Files.readAllBytes(path);
+        int offset = 0;
+        int validLength = 0;
+        while (offset < bytes.length) {
+            int end = offset;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                break; // Last line was never terminated, so it was not fully written
+            }
+            String line = new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+            if (!replayLine(line, replayer)) {
+                System.err.println("Write-ahead log corrupted after record " + (nextSequence - 1) + ", discarding the remainder.");
+                break;
+            }
+            offset = end + 1;
+            validLength = offset;
+        }
+
+        if (validLength < bytes.length) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return recordCount;
+    }
+
+    /**
+     * Validates and applies a single log line.
+     *
+     * @param line     Line read from the log.
+     * @param replayer Callback that applies the record.
+     * @return True if the record was valid and applied, false otherwise.
+     */
+    private boolean replayLine(String line, Replayer replayer) {
+        int first = line.indexOf('|');
+        int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+        int third = second < 0 ? -1 : line.indexOf('|', second + 1);
+        if (third < 0) {
+            return false;
+        }
+
+        long sequence;
+        try {
+            sequence = Long.parseLong(line.substring(0, first));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        String code = line.substring(first + 1, second);
+        String checksum = line.substring(second + 1, third);
+        String payload = line.substring(third + 1);
+        RecordType type = RecordType.fromCode(code);
+
+        if (type == null || sequence != nextSequence || !checksum.equals(checksum(sequence, code, payload))) {
+            return false;
+        }
+
+        replayer.apply(type, payload);
+        nextSequence++;
+        recordCount++;
+        pendingTypes.add(type);
+        return true;
+    }
+
+    /**
+     * Appends a record to the end of the log file. The record is written before this
+     * method returns and forced to disk immediately under the ALWAYS fsync policy,
+     * or by the next sync otherwise.
+     *
+     * @param type    Type of the record.
+     * @param payload Single-line payload of the record.
+     * @throws IOException If the record cannot be written; the log is left as it was.
+     */
+    public synchronized void append(RecordType type, String payload) throws IOException {
+        if (payload.indexOf('\n') >= 0 || payload.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Write-ahead log payload must be a single line: " + payload);
+        }
+        long sequence = nextSequence;
+        String line = sequence + TextDB.SEPARATOR + type.getCode() + TextDB.SEPARATOR
+                + checksum(sequence, type.getCode(), payload) + TextDB.SEPARATOR + payload + "\n";
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long start = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (DurableFileWriter.getPolicy() == DurableFileWriter.FsyncPolicy.ALWAYS) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                channel.truncate(start); // Drop a partial record so the next append does not follow a torn one
+                throw e;
+            }
+        }
+
+        unforced = DurableFileWriter.getPolicy() != DurableFileWriter.FsyncPolicy.ALWAYS;
+        nextSequence++;
+        recordCount++;
+        pendingTypes.add(type);
+    }
+
+    /**
+     * Forces the records written since the last sync to disk in one call, unless the
+     * fsync policy is NEVER.
+     *
+     * @throws IOException If the log file cannot be forced.
+     */
+    public synchronized void sync() throws IOException {
+        if (!unforced || DurableFileWriter.getPolicy() == DurableFileWriter.FsyncPolicy.NEVER || !Files.exists(path)) {
+            unforced = false;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        unforced = false;
+    }
+
+    /**
+     * Computes the checksum stored with a record.
+     *
+     * @param sequence Sequence number of the record.
+     * @param code     Record type code.
+     * @param payload  Record payload.
+     * @return CRC32 of sequence|code|payload as a hexadecimal string.
+     */
+    private static String checksum(long sequence, String code, String payload) {
+        CRC32 crc = new CRC32();
+        crc.update((sequence + TextDB.SEPARATOR + code + TextDB.SEPARATOR + payload).getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Gets the number of records appended since the last checkpoint.
+     * @return Number of records in the log.
+     */
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    /**
+     * Gets the record types appended since the last checkpoint.
+     * @return Unmodifiable copy of the pending record types.
+     */
+    public synchronized Set<RecordType> pendingTypes() {
+        return Collections.unmodifiableSet(EnumSet.copyOf(pendingTypes));
+    }
+
+    /**
+     * Marks the current end of the log. Records appended before the mark are the ones
+     * a checkpoint started now can cover.
+     *
+     * @return Sequence number of the next record to be appended.
+     */
+    public synchronized long mark() {
+        return nextSequence;
+    }
+
+    /**
+     * Drops the records before a mark once the data files have been checkpointed.
+     * Records appended since the mark are kept, renumbered from 1, so a checkpoint
+     * can run while other threads keep logging.
+     *
+     * @param mark Value returned by mark() before the data files were written.
+     * @throws IOException If the log file cannot be rewritten.
+     */
+    public synchronized void truncate(long mark) throws IOException {
+        StringBuilder kept = new StringBuilder();
+        long sequence = 1;
+        int count = 0;
+        EnumSet<RecordType> types = EnumSet.noneOf(RecordType.class);
+        if (Files.exists(path)) {
+            for (String line : LineReader.readLines(path.toString())) {
+                int first = line.indexOf('|');
+                int second = line.indexOf('|', first + 1);
+                int third = line.indexOf('|', second + 1);
+                if (Long.parseLong(line.substring(0, first)) < mark) {
+                    continue;
+                }
+                String code = line.substring(first + 1, second);
+                String payload = line.substring(third + 1);
+                kept.append(sequence).append(TextDB.SEPARATOR).append(code).append(TextDB.SEPARATOR)
+                        .append(checksum(sequence, code, payload)).append(TextDB.SEPARATOR).append(payload).append('\n');
+                sequence++;
+                count++;
+                types.add(RecordType.fromCode(code));
+            }
+        }
+        if (count == 0) {
+            Files.deleteIfExists(path);
+        } else {
+            DurableFileWriter.write(path.toString(), kept.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        unforced = false; // Kept records were rewritten through DurableFileWriter
+        nextSequence = sequence;
+        recordCount = count;
+        pendingTypes.clear();
+        pendingTypes.addAll(types);
+    }
+}
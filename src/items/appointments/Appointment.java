@@ -17,7 +17,7 @@ public class Appointment implements mainAppointmentsInterface {
     private String patientId;     /**< Identifier for the patient */ 
     private String doctorId;      /**< Identifier for the doctor */ 
     private TimeSlot timeSlot;    /**< Time slot for the appointment */ 
-    private String status;        /**< Current status of the appointment */ 
+    private AppointmentStatus status; /**< Current status of the appointment */ 
     private String outcomeRecord; /**< Record of the appointment outcome */ 
 
     /****************
@@ -34,7 +34,7 @@ public class Appointment implements mainAppointmentsInterface {
      * @param status The current status of the appointment.
      * @param outcomeRecord Record of the appointment outcome.
      */
-    public Appointment(int id, String patientId, String doctorId, TimeSlot timeSlot, String status, String outcomeRecord) {
+    public Appointment(int id, String patientId, String doctorId, TimeSlot timeSlot, AppointmentStatus status, String outcomeRecord) {
         this.id = id;
         this.patientId = patientId;
         this.doctorId = doctorId;
@@ -99,7 +99,7 @@ public class Appointment implements mainAppointmentsInterface {
      * Gets the current status of the appointment.
      * @return The status of the appointment.
      */
-    public String getStatus() {
+    public AppointmentStatus getStatus() {
         return status;
     }
 
@@ -107,7 +107,7 @@ public class Appointment implements mainAppointmentsInterface {
      * Sets the status of the appointment.
      * @param status The new status.
      */
-    public void setStatus(String status) {
+    public void setStatus(AppointmentStatus status) {
         this.status = status;
     }
 
@@ -132,7 +132,7 @@ public class Appointment implements mainAppointmentsInterface {
      * @return The date of the appointment as a LocalDate.
      */
     public LocalDate getDate() {
-        return timeSlot.getStartTime().toLocalDate();
+        return timeSlot.getDate();
     }
 
     /**
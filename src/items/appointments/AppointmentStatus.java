@@ -0,0 +1,97 @@
+package items.appointments;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * AppointmentStatus
+ * The statuses an appointment can be in, and the changes allowed between them.
+ *
+ * Each status is written to the data files under its label, exactly as the free-form
+ * status strings were. Requested, Pending, Scheduled, Confirmed and Rescheduled
+ * appointments hold their time slot; Completed, Cancelled and Declined ones do not
+ * and are final.
+ */
+public enum AppointmentStatus {
+    REQUESTED("Requested", true),     /**< Requested by the patient, awaiting the doctor */
+    PENDING("Pending", true),         /**< Awaiting the doctor */
+    SCHEDULED("Scheduled", true),     /**< Booked */
+    CONFIRMED("Confirmed", true),     /**< Accepted by the doctor */
+    RESCHEDULED("Rescheduled", true), /**< Moved to another slot by the patient */
+    COMPLETED("Completed", false),    /**< Took place and has an outcome record */
+    CANCELLED("Cancelled", false),    /**< Cancelled or declined by the doctor */
+    DECLINED("Declined", false);      /**< Declined by the doctor */
+
+    private final String label;          /**< Name of the status in the data files and menus */
+    private final boolean occupiesSlot;  /**< Whether an appointment in this status holds its time slot */
+    private Set<AppointmentStatus> next; /**< Statuses this status may change to */
+
+    static {
+        Set<AppointmentStatus> open = EnumSet.of(CONFIRMED, SCHEDULED, RESCHEDULED, COMPLETED, CANCELLED, DECLINED);
+        REQUESTED.next = open;
+        PENDING.next = open;
+        SCHEDULED.next = open;
+        RESCHEDULED.next = open;
+        CONFIRMED.next = EnumSet.of(RESCHEDULED, COMPLETED, CANCELLED);
+        COMPLETED.next = EnumSet.noneOf(AppointmentStatus.class);
+        CANCELLED.next = EnumSet.noneOf(AppointmentStatus.class);
+        DECLINED.next = EnumSet.noneOf(AppointmentStatus.class);
+    }
+
+    AppointmentStatus(String label, boolean occupiesSlot) {
+        this.label = label;
+        this.occupiesSlot = occupiesSlot;
+    }
+
+    /**
+     * Gets the name of the status as written in the data files
+     * @return Returns the label of the status
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Checks whether an appointment in this status holds its time slot
+     * @return True if the slot cannot be booked by another appointment
+     */
+    public boolean occupiesSlot() {
+        return occupiesSlot;
+    }
+
+    /**
+     * Checks whether an appointment may change from this status to another.
+     * Keeping the same status is always allowed.
+     *
+     * @param status The new status
+     * @return True if the change is allowed
+     */
+    public boolean canTransitionTo(AppointmentStatus status) {
+        return status == this || next.contains(status);
+    }
+
+    /**
+     * Parses a status from its label.
+     *
+     * @param label The label, ignoring case
+     * @return The status
+     * @throws IllegalArgumentException If the label names no status
+     */
+    public static AppointmentStatus fromString(String label) {
+        for (AppointmentStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Invalid appointment status: " + label);
+    }
+
+    /**
+     * Provides the label of the status.
+     * @return The label of the status
+     */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
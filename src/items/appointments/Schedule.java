@@ -3,17 +3,150 @@ package items.appointments;
 import items.appointments.schedule_interface.mainScheduleInterface;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
 /**
  * Schedule
  * The Schedule class manages a doctor's availability across different dates.
+ *
+ * Each date is stored as a SlotBitmap when its slots share one length and start on
+ * 15-minute boundaries in ascending order, which covers the 30-minute slots loaded
+ * from schedules.txt; any other list of slots is kept as given.
+ *
+ * A weekly template may supply recurring availability. It is expanded only when a
+ * date is asked for, and a date set explicitly always takes precedence over it.
+ *
+ * Every read and change is synchronized on the schedule, and reads return copies,
+ * so bookings on other threads never see a date half set. A caller holding that
+ * lock can also iterate the dates without them changing underneath.
  */
 public class Schedule implements mainScheduleInterface {
-    // Mapping from date to list of available TimeSlots
-    private Map<LocalDate, List<TimeSlot>> availability; /**< Map to store availability of time slots keyed by date */
+    /**
+     * Availability on one date: a bitmap, or the original list when no bitmap fits.
+     */
+    private static final class Day {
+        private final SlotBitmap bitmap;    /**< Slots of the date, or null if they are kept as a list */
+        private final List<TimeSlot> slots; /**< Slots of the date when no bitmap fits, otherwise null */
+
+        private Day(SlotBitmap bitmap, List<TimeSlot> slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private List<TimeSlot> toTimeSlots() {
+            return bitmap != null ? bitmap.toTimeSlots() : new ArrayList<>(slots);
+        }
+    }
+
+    /**
+     * Map view of the availability, rendering the slots of a date when it is read.
+     * Iteration walks a copy of the dates taken when the iterator is created.
+     */
+    private final class AvailabilityView extends AbstractMap<LocalDate, List<TimeSlot>> {
+        @Override
+        public Set<Map.Entry<LocalDate, List<TimeSlot>>> entrySet() {
+            return new AbstractSet<Map.Entry<LocalDate, List<TimeSlot>>>() {
+                @Override
+                public Iterator<Map.Entry<LocalDate, List<TimeSlot>>> iterator() {
+                    Iterator<Map.Entry<LocalDate, Day>> days;
+                    synchronized (Schedule.this) {
+                        days = new ArrayList<>(availability.entrySet()).iterator();
+                    }
+                    return new Iterator<Map.Entry<LocalDate, List<TimeSlot>>>() {
+                        private LocalDate current; /**< Date returned by the last call to next */
+
+                        @Override
+                        public boolean hasNext() {
+                            return days.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<LocalDate, List<TimeSlot>> next() {
+                            Map.Entry<LocalDate, Day> day = days.next();
+                            current = day.getKey();
+                            return new AbstractMap.SimpleImmutableEntry<>(day.getKey(), day.getValue().toTimeSlots());
+                        }
+
+                        @Override
+                        public void remove() {
+                            AvailabilityView.this.remove(current);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return AvailabilityView.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<LocalDate> keySet() {
+            synchronized (Schedule.this) {
+                return Collections.unmodifiableSet(new LinkedHashSet<>(availability.keySet()));
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (Schedule.this) {
+                return availability.size();
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            synchronized (Schedule.this) {
+                return availability.containsKey(key);
+            }
+        }
+
+        @Override
+        public List<TimeSlot> get(Object key) {
+            synchronized (Schedule.this) {
+                Day day = availability.get(key);
+                return day == null ? null : day.toTimeSlots();
+            }
+        }
+
+        @Override
+        public List<TimeSlot> put(LocalDate date, List<TimeSlot> timeSlots) {
+            synchronized (Schedule.this) {
+                List<TimeSlot> previous = get(date);
+                setAvailability(date, timeSlots);
+                return previous;
+            }
+        }
+
+        @Override
+        public List<TimeSlot> remove(Object key) {
+            synchronized (Schedule.this) {
+                Day day = availability.remove(key);
+                dates.remove(key);
+                version++;
+                return day == null ? null : day.toTimeSlots();
+            }
+        }
+    }
+
+    // Mapping from date to available TimeSlots
+    private Map<LocalDate, Day> availability; /**< Map to store availability of time slots keyed by date */
+    private final NavigableSet<LocalDate> dates = new TreeSet<>(); /**< Dates with availability, in ascending order */
+    private WeeklyTemplate weeklyTemplate; /**< Recurring availability, or null if there is none */
+    private long version; /**< Incremented on every change, so cached results can tell they are stale */
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); /**< Formatter for date */
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm"); /**< Formatter for time */
 
@@ -38,8 +171,11 @@ public class Schedule implements mainScheduleInterface {
      * @param date      The date for which to set availability
      * @param timeSlots List of TimeSlot objects representing available times
      */
-    public void setAvailability(LocalDate date, List<TimeSlot> timeSlots) {
-        availability.put(date, new ArrayList<>(timeSlots)); // Store the provided time slots for the specified date
+    public synchronized void setAvailability(LocalDate date, List<TimeSlot> timeSlots) {
+        SlotBitmap bitmap = SlotBitmap.of(date, timeSlots);
+        availability.put(date, bitmap != null ? new Day(bitmap, null) : new Day(null, intern(timeSlots)));
+        dates.add(date);
+        version++;
     }
 
     /**
@@ -48,17 +184,121 @@ public class Schedule implements mainScheduleInterface {
      * @param date The date for which to retrieve availability
      * @return List of available TimeSlot objects, or an empty list if none are set
      */
-    public List<TimeSlot> getAvailableTimeSlots(LocalDate date) {
-        return availability.getOrDefault(date, new ArrayList<>()); // Return available time slots or an empty list if not found
+    public synchronized List<TimeSlot> getAvailableTimeSlots(LocalDate date) {
+        Day day = resolve(date);
+        return day != null ? day.toTimeSlots() : new ArrayList<>(); // Return available time slots or an empty list if not found
+    }
+
+    /**
+     * Retrieves the TimeSlots of a specific date that are not occupied.
+     *
+     * @param date     The date for which to retrieve availability
+     * @param occupied Booked time slots; a slot is free unless an equal slot is booked
+     * @return List of free TimeSlot objects, in the order they were set
+     */
+    public synchronized List<TimeSlot> getAvailableTimeSlots(LocalDate date, Collection<TimeSlot> occupied) {
+        Day day = resolve(date);
+        if (day == null) {
+            return new ArrayList<>();
+        }
+        if (day.bitmap != null) {
+            return day.bitmap.andNot(day.bitmap.occupancy(occupied)).toTimeSlots();
+        }
+        Set<TimeSlot> booked = new HashSet<>(occupied);
+        List<TimeSlot> free = new ArrayList<>();
+        for (TimeSlot slot : day.slots) {
+            if (!booked.contains(slot)) {
+                free.add(slot);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Checks whether a TimeSlot is set on a specific date, without rendering the date's slots.
+     *
+     * @param date The date to look at
+     * @param slot The time slot to look for
+     * @return True if a slot with the same start and end is set on the date
+     */
+    public synchronized boolean hasTimeSlot(LocalDate date, TimeSlot slot) {
+        Day day = resolve(date);
+        if (day == null) {
+            return false;
+        }
+        return day.bitmap != null ? day.bitmap.contains(slot) : day.slots.contains(slot);
+    }
+
+    /**
+     * Retrieves the dates with availability within a range.
+     *
+     * @param from The first date of the range
+     * @param to   The last date of the range
+     * @return Unmodifiable copy of the dates in the range, in ascending order
+     */
+    public synchronized NavigableSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Collections.emptyNavigableSet();
+        }
+        NavigableSet<LocalDate> withTemplate = new TreeSet<>(dates.subSet(from, true, to, true));
+        if (weeklyTemplate == null) {
+            return Collections.unmodifiableNavigableSet(withTemplate);
+        }
+
+        LocalDate first = weeklyTemplate.getValidFrom() != null && weeklyTemplate.getValidFrom().isAfter(from) ? weeklyTemplate.getValidFrom() : from;
+        LocalDate last = weeklyTemplate.getValidTo() != null && weeklyTemplate.getValidTo().isBefore(to) ? weeklyTemplate.getValidTo() : to;
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            if (weeklyTemplate.covers(date)) {
+                withTemplate.add(date);
+            }
+        }
+        return Collections.unmodifiableNavigableSet(withTemplate);
+    }
+
+    /**
+     * Retrieves the bitmap of a specific date.
+     *
+     * @param date The date for which to retrieve availability
+     * @return The bitmap of the date, or null if no availability is set or it is kept as a list
+     */
+    public synchronized SlotBitmap getBitmap(LocalDate date) {
+        Day day = resolve(date);
+        return day != null ? day.bitmap : null;
+    }
+
+    /**
+     * Gets the recurring weekly availability
+     * @return Returns the weekly template, or null if there is none
+     */
+    public synchronized WeeklyTemplate getWeeklyTemplate() {
+        return weeklyTemplate;
+    }
+
+    /**
+     * Sets the recurring weekly availability
+     * @param weeklyTemplate The weekly template, or null to remove it
+     */
+    public synchronized void setWeeklyTemplate(WeeklyTemplate weeklyTemplate) {
+        this.weeklyTemplate = weeklyTemplate;
+        version++;
+    }
+
+    /**
+     * Gets the version of the schedule
+     * @return Returns a number that changes whenever the availability changes
+     */
+    public synchronized long getVersion() {
+        return version;
     }
 
     /**
      * Retrieves the entire availability map.
+     * Only dates set explicitly are included; dates covered by the weekly template are not.
      *
-     * @return Map of dates to lists of available TimeSlots
+     * @return Map of dates to lists of available TimeSlots, rendered when read
      */
     public Map<LocalDate, List<TimeSlot>> getAvailability() {
-        return availability; // Return the entire availability map
+        return new AvailabilityView(); // Return a view of the entire availability map
     }
 
     /**
@@ -66,14 +306,50 @@ public class Schedule implements mainScheduleInterface {
      *
      * @param availability Map of dates to lists of available TimeSlots
      */
-    public void setAvailabilityMap(Map<LocalDate, List<TimeSlot>> availability) {
-        this.availability = availability; // Update the availability map with the provided one
+    public synchronized void setAvailabilityMap(Map<LocalDate, List<TimeSlot>> availability) {
+        this.availability = new HashMap<>();
+        this.dates.clear();
+        version++;
+        for (Map.Entry<LocalDate, List<TimeSlot>> entry : availability.entrySet()) {
+            setAvailability(entry.getKey(), entry.getValue()); // Update the availability map with the provided one
+        }
     }
 
     /**********
      * Methods *
      **********/
 
+    /**
+     * Looks up the availability of a date: the date set explicitly, otherwise the weekly template.
+     *
+     * @param date The date to look up
+     * @return The availability of the date, or null if there is none
+     */
+    private synchronized Day resolve(LocalDate date) {
+        Day day = availability.get(date);
+        if (day == null && weeklyTemplate != null) {
+            SlotBitmap bitmap = weeklyTemplate.expand(date);
+            if (bitmap != null) {
+                day = new Day(bitmap, null);
+            }
+        }
+        return day;
+    }
+
+    /**
+     * Copies a list of time slots, replacing each slot with its shared instance.
+     *
+     * @param timeSlots The time slots
+     * @return A new list of the shared TimeSlot objects
+     */
+    private static List<TimeSlot> intern(List<TimeSlot> timeSlots) {
+        List<TimeSlot> interned = new ArrayList<>(timeSlots.size());
+        for (TimeSlot slot : timeSlots) {
+            interned.add(slot.intern());
+        }
+        return interned;
+    }
+
     /**
      * Provides a string representation of the Schedule.
      *
@@ -83,8 +359,8 @@ public class Schedule implements mainScheduleInterface {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Schedule:\n");
-        for (Map.Entry<LocalDate, List<TimeSlot>> entry : availability.entrySet()) {
-            sb.append("Date: ").append(entry.getKey().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"))).append("\n");
+        for (Map.Entry<LocalDate, List<TimeSlot>> entry : getAvailability().entrySet()) {
+            sb.append("Date: ").append(entry.getKey().format(DATE_FORMATTER)).append("\n");
             for (TimeSlot slot : entry.getValue()) {
                 sb.append("  ").append(slot.getStartTime().toLocalTime().format(TIME_FORMATTER))
                 .append(" - ").append(slot.getEndTime().toLocalTime().format(TIME_FORMATTER))
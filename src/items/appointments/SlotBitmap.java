@@ -0,0 +1,228 @@
+package items.appointments;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * SlotBitmap
+ * Compact representation of a doctor's time slots on one date.
+ *
+ * The day is divided into 96 cells of 15 minutes, and the slots are stored as a
+ * bitset of the cells in which a slot starts, together with the slot length shared
+ * by every slot of the day. Availability minus occupancy is a bitwise AND NOT of
+ * two bitsets; TimeSlot objects are only created when the slots are rendered.
+ */
+public final class SlotBitmap {
+    public static final int CELL_MINUTES = 15; /**< Length of a cell in minutes */
+    public static final int CELLS_PER_DAY = 24 * 60 / CELL_MINUTES; /**< Number of cells in a day */
+    private static final long MINUTES_PER_DAY = 24 * 60; /**< Number of minutes in a day */
+    private static final int WORDS = (CELLS_PER_DAY + 63) / 64; /**< Number of longs holding the bits of a day */
+
+    private final LocalDate date; /**< Date of the slots */
+    private final int slotCells;  /**< Length of every slot, in cells */
+    private final long[] starts;  /**< Bit i is set if a slot starts in cell i */
+
+    /****************
+     * Constructors *
+     ****************/
+
+    private SlotBitmap(LocalDate date, int slotCells, long[] starts) {
+        this.date = date;
+        this.slotCells = slotCells;
+        this.starts = starts;
+    }
+
+    /**
+     * Builds the bitmap of a list of time slots.
+     *
+     * @param date  The date of the slots
+     * @param slots The time slots, in the order they were set
+     * @return The bitmap, or null if the slots cannot be represented exactly: slots of
+     *         different lengths, starts that are not on a cell boundary of the date, or
+     *         slots that are not in strictly ascending order
+     */
+    public static SlotBitmap of(LocalDate date, List<TimeSlot> slots) {
+        long[] starts = new long[WORDS];
+        if (slots.isEmpty()) {
+            return new SlotBitmap(date, 1, starts);
+        }
+
+        int slotCells = lengthInCells(slots.get(0));
+        if (slotCells <= 0) {
+            return null;
+        }
+        int previous = -1;
+        for (TimeSlot slot : slots) {
+            int cell = startCell(date, slot);
+            if (cell <= previous || lengthInCells(slot) != slotCells) {
+                return null;
+            }
+            starts[cell >>> 6] |= 1L << cell;
+            previous = cell;
+        }
+        return new SlotBitmap(date, slotCells, starts);
+    }
+
+    /**
+     * Builds a bitmap from slot start bits.
+     *
+     * @param date      The date of the slots
+     * @param slotCells Length of every slot, in cells
+     * @param starts    Bit i is set if a slot starts in cell i; copied
+     * @return The bitmap
+     */
+    static SlotBitmap of(LocalDate date, int slotCells, long[] starts) {
+        return new SlotBitmap(date, slotCells, Arrays.copyOf(starts, WORDS));
+    }
+
+    /***********************
+     * Getters and Setters *
+     ***********************/
+
+    /**
+     * Gets the date of the slots
+     * @return Returns the date of the slots
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Gets the length of every slot in cells
+     * @return Returns the slot length in cells
+     */
+    public int getSlotCells() {
+        return slotCells;
+    }
+
+    /**
+     * Checks if the day has no slots
+     * @return True if no slot is set
+     */
+    public boolean isEmpty() {
+        for (long word : starts) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of slots
+     * @return Returns the number of slots
+     */
+    public int size() {
+        int count = 0;
+        for (long word : starts) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**********
+     * Methods *
+     **********/
+
+    /**
+     * Builds the occupancy bitset of this day: the cells in which one of the given
+     * slots starts, counting only slots equal to a slot of this day's shape.
+     *
+     * @param occupied Booked time slots
+     * @return Bits of the cells in which an occupied slot starts
+     */
+    public long[] occupancy(Collection<TimeSlot> occupied) {
+        long[] bits = new long[WORDS];
+        for (TimeSlot slot : occupied) {
+            int cell = startCell(date, slot);
+            if (cell >= 0 && lengthInCells(slot) == slotCells) {
+                bits[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the slots of this day that are not occupied.
+     *
+     * @param occupied Occupancy bitset from occupancy(...)
+     * @return A new bitmap of the free slots
+     */
+    public SlotBitmap andNot(long[] occupied) {
+        long[] free = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            free[i] = starts[i] & ~occupied[i];
+        }
+        return new SlotBitmap(date, slotCells, free);
+    }
+
+    /**
+     * Checks whether a slot starts in a cell.
+     *
+     * @param cell Cell index from 0 to CELLS_PER_DAY - 1
+     * @return True if a slot starts in the cell
+     */
+    public boolean startsAt(int cell) {
+        return (starts[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks whether a slot equal to the given one is set.
+     *
+     * @param slot The time slot to look for
+     * @return True if a slot with the same start and end is set
+     */
+    public boolean contains(TimeSlot slot) {
+        int cell = startCell(date, slot);
+        return cell >= 0 && lengthInCells(slot) == slotCells && startsAt(cell);
+    }
+
+    /**
+     * Renders the slots as TimeSlot objects, in ascending order.
+     *
+     * @return List of available TimeSlot objects
+     */
+    public List<TimeSlot> toTimeSlots() {
+        List<TimeSlot> slots = new ArrayList<>(size());
+        long midnight = date.toEpochDay() * MINUTES_PER_DAY;
+        for (int word = 0; word < WORDS; word++) {
+            long bits = starts[word];
+            while (bits != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                long start = midnight + (long) cell * CELL_MINUTES;
+                slots.add(TimeSlot.ofEpochMinutes(start, start + (long) slotCells * CELL_MINUTES));
+                bits &= bits - 1;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Gets the cell in which a slot starts on a date.
+     *
+     * @return The cell index, or -1 if the slot does not start on a cell boundary of the date
+     */
+    private static int startCell(LocalDate date, TimeSlot slot) {
+        long minute = slot.getStartMinute() - date.toEpochDay() * MINUTES_PER_DAY;
+        if (minute < 0 || minute >= MINUTES_PER_DAY || minute % CELL_MINUTES != 0) {
+            return -1;
+        }
+        return (int) (minute / CELL_MINUTES);
+    }
+
+    /**
+     * Gets the length of a slot in cells.
+     *
+     * @return The length, or -1 if it is not a positive whole number of cells
+     */
+    private static int lengthInCells(TimeSlot slot) {
+        long length = slot.getEndMinute() - slot.getStartMinute();
+        if (length <= 0 || length % CELL_MINUTES != 0) {
+            return -1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, length / CELL_MINUTES);
+    }
+}
@@ -1,17 +1,75 @@
 package items.appointments;
 
+import db.RecordCodec;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * TimeSlot
  * The TimeSlot class represents a specific time interval, such as an appointment slot.
+ *
+ * A slot is immutable and stores its bounds as minutes since 1970-01-01T00:00, so
+ * comparing two slots compares two pairs of longs. Whether a slot can be booked is
+ * not part of the slot: it follows from the doctor's Schedule and the booked
+ * appointments. Slots kept for a long time can be shared through intern, whose
+ * table is a ConcurrentHashMap, so loaders parsing chunks in parallel do not
+ * contend on a lock.
  */
-public class TimeSlot {
-    private LocalDateTime startTime; /**< Start time of the time slot */
-    private LocalDateTime endTime;   /**< End time of the time slot */
-    private boolean isAvailable;      /**< Availability status of the time slot */
+public final class TimeSlot {
+    /**
+     * Bounds of an interned slot. The table is keyed by bounds rather than by the slot,
+     * so the table itself never keeps a canonical slot alive.
+     */
+    private static final class Bounds {
+        private final long startMinute; /**< Start of the slot in epoch minutes */
+        private final long endMinute;   /**< End of the slot in epoch minutes */
+
+        private Bounds(long startMinute, long endMinute) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Bounds)) return false;
+            Bounds bounds = (Bounds) o;
+            return startMinute == bounds.startMinute && endMinute == bounds.endMinute;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(startMinute * 31 + endMinute);
+        }
+    }
+
+    /**
+     * Weak reference to a canonical slot that remembers its table key, so the entry
+     * can be removed once the slot has been collected.
+     */
+    private static final class Canonical extends WeakReference<TimeSlot> {
+        private final Bounds bounds; /**< Key of the entry holding this reference */
+
+        private Canonical(TimeSlot slot, Bounds bounds) {
+            super(slot, COLLECTED);
+            this.bounds = bounds;
+        }
+    }
+
+    private static final int MINUTES_PER_DAY = 24 * 60; /**< Number of minutes in a day */
+    private static final ConcurrentHashMap<Bounds, Canonical> INTERNED = new ConcurrentHashMap<>(); /**< Canonical instance of every interned slot */
+    private static final ReferenceQueue<TimeSlot> COLLECTED = new ReferenceQueue<>(); /**< Canonical slots that have been collected */
+
+    private final long startMinute; /**< Start of the time slot in epoch minutes */
+    private final long endMinute;   /**< End of the time slot in epoch minutes */
+    private static final DateTimeFormatter SLOT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm"); /**< Formatter for the bounds of a serialized slot */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm"); /**< Formatter for displayed times */
 
     /****************
      * Constructors *
@@ -20,14 +78,28 @@ public class TimeSlot {
     /**
      * Constructor for TimeSlot.
      *
-     * @param startTime   Start time of the slot
-     * @param endTime     End time of the slot
-     * @param isAvailable Availability status of the slot
+     * @param startTime Start time of the slot, in whole minutes
+     * @param endTime   End time of the slot, in whole minutes
+     * @throws IllegalArgumentException If a bound has seconds or nanoseconds
      */
-    public TimeSlot(LocalDateTime startTime, LocalDateTime endTime, boolean isAvailable) {
-        this.startTime = startTime;
-        this.endTime = endTime;
-        this.isAvailable = isAvailable;
+    public TimeSlot(LocalDateTime startTime, LocalDateTime endTime) {
+        this(toEpochMinute(startTime), toEpochMinute(endTime));
+    }
+
+    private TimeSlot(long startMinute, long endMinute) {
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    /**
+     * Creates a TimeSlot from epoch minutes.
+     *
+     * @param startMinute Start of the slot in minutes since 1970-01-01T00:00
+     * @param endMinute   End of the slot in minutes since 1970-01-01T00:00
+     * @return TimeSlot object
+     */
+    public static TimeSlot ofEpochMinutes(long startMinute, long endMinute) {
+        return new TimeSlot(startMinute, endMinute);
     }
 
     /***********************
@@ -39,15 +111,7 @@ public class TimeSlot {
      * @return Returns the start time of the timeslot
      */
     public LocalDateTime getStartTime() {
-        return startTime;
-    }
-
-    /**
-     * Sets the start time of the timeslot
-     * @param startTime Start time of the timeslot
-     */
-    public void setStartTime(LocalDateTime startTime) { 
-        this.startTime = startTime;
+        return LocalDateTime.ofEpochSecond(startMinute * 60, 0, ZoneOffset.UTC);
     }
 
     /**
@@ -55,31 +119,31 @@ public class TimeSlot {
      * @return Returns the end time of the timeslot
      */
     public LocalDateTime getEndTime() {
-        return endTime;
+        return LocalDateTime.ofEpochSecond(endMinute * 60, 0, ZoneOffset.UTC);
     }
 
     /**
-     * Sets the end time of the timeslot
-     * @param endTime End time of the timeslot
+     * Gets the start of the timeslot in epoch minutes
+     * @return Returns the start in minutes since 1970-01-01T00:00
      */
-    public void setEndTime(LocalDateTime endTime) { 
-        this.endTime = endTime;
+    public long getStartMinute() {
+        return startMinute;
     }
 
     /**
-     * Checks if the timeslot is available
-     * @return availability of the timeslot
+     * Gets the end of the timeslot in epoch minutes
+     * @return Returns the end in minutes since 1970-01-01T00:00
      */
-    public boolean isAvailable() {
-        return isAvailable;
+    public long getEndMinute() {
+        return endMinute;
     }
 
     /**
-     * Sets availability of the timeslot
-     * @param available Availability
+     * Gets the date on which the timeslot starts
+     * @return Returns the start date of the timeslot
      */
-    public void setAvailable(boolean available) { 
-        isAvailable = available;
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(Math.floorDiv(startMinute, MINUTES_PER_DAY));
     }
 
     /**********
@@ -93,22 +157,20 @@ public class TimeSlot {
      * @return TimeSlot object
      */
     public static TimeSlot parse(String timeSlotString) {
-        boolean debug = false; // Debug flag for tracing parsing
-
         timeSlotString = timeSlotString.trim(); // Trim leading and trailing whitespace
 
-        // Split the time slot string into start and end parts based on the defined pattern
-        String[] parts = timeSlotString.split("(?<=\\d{2}T\\d{2}:\\d{2})-(?=\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2})");
-        
-        // Debugging output
-        if (debug) {
-            System.out.println("Parsing time slot string: " + timeSlotString);
-            System.out.println("Split parts length: " + parts.length);
-            for (int i = 0; i < parts.length; i++) {
-                System.out.println("Part " + i + ": '" + parts[i] + "'");
+        // Fast path for the "yyyy-MM-ddTHH:mm-yyyy-MM-ddTHH:mm" form written by RecordCodec
+        if (timeSlotString.length() == 33 && timeSlotString.charAt(16) == '-') {
+            LocalDateTime start = RecordCodec.parseDateTime(timeSlotString, 0);
+            LocalDateTime end = RecordCodec.parseDateTime(timeSlotString, 17);
+            if (start != null && end != null) {
+                return new TimeSlot(start, end).intern();
             }
         }
 
+        // Split the time slot string into start and end parts based on the defined pattern
+        String[] parts = timeSlotString.split("(?<=\\d{2}T\\d{2}:\\d{2})-(?=\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2})");
+
         // Check if the split resulted in exactly two parts
         if (parts.length != 2) {
             throw new IllegalArgumentException("Invalid time slot format: " + timeSlotString); // Error for invalid format
@@ -117,28 +179,53 @@ public class TimeSlot {
         // Trim each part to remove any leading or trailing whitespace
         String startTimeString = parts[0].trim();
         String endTimeString = parts[1].trim();
-        
-        // Debugging output
-        if (debug) {
-            System.out.println("Start time part: '" + startTimeString + "'");
-            System.out.println("End time part: '" + endTimeString + "'");
-        }
-
-        // Define the date-time formatter for parsing
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
 
         // Parse the start and end times
-        LocalDateTime startTime = LocalDateTime.parse(startTimeString, formatter);
-        LocalDateTime endTime = LocalDateTime.parse(endTimeString, formatter);
-        
-        // Debugging output
-        if (debug) {
-            System.out.println("Parsed start time: " + startTime);
-            System.out.println("Parsed end time: " + endTime);
+        LocalDateTime startTime = LocalDateTime.parse(startTimeString, SLOT_FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(endTimeString, SLOT_FORMATTER);
+
+        return new TimeSlot(startTime, endTime).intern(); // Return the shared TimeSlot object
+    }
+
+    /**
+     * Gets the shared instance of this slot, so that equal slots kept by schedules and
+     * appointments are stored once. Instances no longer referenced elsewhere are released.
+     * Lookups take no lock; two threads interning the same new slot agree on one instance.
+     *
+     * @return The canonical TimeSlot equal to this one
+     */
+    public TimeSlot intern() {
+        expungeCollected();
+        Bounds bounds = new Bounds(startMinute, endMinute);
+        while (true) {
+            Canonical reference = INTERNED.get(bounds);
+            TimeSlot canonical = reference != null ? reference.get() : null;
+            if (canonical != null) {
+                return canonical;
+            }
+            Canonical mine = new Canonical(this, bounds);
+            if (reference == null ? INTERNED.putIfAbsent(bounds, mine) == null : INTERNED.replace(bounds, reference, mine)) {
+                return this;
+            }
         }
+    }
 
-        boolean isAvailable = false; // Default availability status (could be modified later)
-        return new TimeSlot(startTime, endTime, isAvailable); // Return a new TimeSlot object
+    /**
+     * Removes the table entries of canonical slots that have been collected.
+     */
+    private static void expungeCollected() {
+        Reference<? extends TimeSlot> reference;
+        while ((reference = COLLECTED.poll()) != null) {
+            Canonical collected = (Canonical) reference;
+            INTERNED.remove(collected.bounds, collected);
+        }
+    }
+
+    private static long toEpochMinute(LocalDateTime time) {
+        if (time.getSecond() != 0 || time.getNano() != 0) {
+            throw new IllegalArgumentException("Time slot bounds must be whole minutes: " + time);
+        }
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
     }
 
     /**
@@ -148,8 +235,8 @@ public class TimeSlot {
      */
     @Override
     public String toString() {
-        return startTime.toLocalTime().format(DateTimeFormatter.ofPattern("HH:mm")) +
-               " - " + endTime.toLocalTime().format(DateTimeFormatter.ofPattern("HH:mm")); // Format the start and end time
+        return getStartTime().toLocalTime().format(TIME_FORMATTER) +
+               " - " + getEndTime().toLocalTime().format(TIME_FORMATTER); // Format the start and end time
     }
 
     /**
@@ -160,13 +247,12 @@ public class TimeSlot {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true; // Check reference equality
-        if (o == null || getClass() != o.getClass()) return false; // Check for null and class type
+        if (!(o instanceof TimeSlot)) return false; // Check for null and class type
 
         TimeSlot timeSlot = (TimeSlot) o; // Cast to TimeSlot
 
         // Compare start and end times for equality
-        if (!Objects.equals(startTime, timeSlot.startTime)) return false;
-        return Objects.equals(endTime, timeSlot.endTime);
+        return startMinute == timeSlot.startMinute && endMinute == timeSlot.endMinute;
     }
 
     /**
@@ -175,6 +261,6 @@ public class TimeSlot {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(startTime, endTime); // Generate hash code based on start and end times
+        return Long.hashCode(startMinute * 31 + endMinute); // Generate hash code based on start and end times
     }
 }
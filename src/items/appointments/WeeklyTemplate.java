@@ -0,0 +1,262 @@
+package items.appointments;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * WeeklyTemplate
+ * Recurring weekly availability of a doctor, such as Monday to Friday 09:00-17:00.
+ *
+ * The template stores the ranges of each day of the week, an optional period in
+ * which it applies and the dates it does not apply to. A date is expanded into
+ * 30-minute slots only when it is asked for, exactly as a schedules.txt range of
+ * that date would be, so recurring availability costs one line of storage instead
+ * of one line per date.
+ */
+public class WeeklyTemplate {
+    public static final String MARKER = "WEEKLY"; /**< Second field of a template line in schedules.txt */
+    private static final int SLOT_MINUTES = 30; /**< Length of an expanded slot in minutes */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); /**< Formatter for dates */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm"); /**< Formatter for times */
+
+    private final Map<DayOfWeek, int[]> ranges; /**< Start and end minute of day of each range, in pairs, per day of the week */
+    private final Map<DayOfWeek, long[]> starts; /**< Slot start cells of each day of the week */
+    private final LocalDate validFrom; /**< First date the template applies to, or null if unbounded */
+    private final LocalDate validTo;   /**< Last date the template applies to, or null if unbounded */
+    private final NavigableSet<LocalDate> exceptions; /**< Dates the template does not apply to */
+
+    /****************
+     * Constructors *
+     ****************/
+
+    /**
+     * Constructor for WeeklyTemplate.
+     *
+     * @param ranges     Start and end minute of day of each range, in consecutive pairs, per day of the week
+     * @param validFrom  First date the template applies to, or null if unbounded
+     * @param validTo    Last date the template applies to, or null if unbounded
+     * @param exceptions Dates the template does not apply to
+     * @throws IllegalArgumentException If a range is empty or not on a 15-minute boundary
+     */
+    public WeeklyTemplate(Map<DayOfWeek, int[]> ranges, LocalDate validFrom, LocalDate validTo, Collection<LocalDate> exceptions) {
+        this.ranges = new EnumMap<>(DayOfWeek.class);
+        this.starts = new EnumMap<>(DayOfWeek.class);
+        for (Map.Entry<DayOfWeek, int[]> entry : ranges.entrySet()) {
+            int[] dayRanges = entry.getValue();
+            if (dayRanges.length % 2 != 0) {
+                throw new IllegalArgumentException("Ranges of " + entry.getKey() + " must be start and end pairs.");
+            }
+            long[] dayStarts = new long[(SlotBitmap.CELLS_PER_DAY + 63) / 64];
+            for (int i = 0; i < dayRanges.length; i += 2) {
+                int start = dayRanges[i];
+                int end = dayRanges[i + 1];
+                if (start < 0 || end >= 24 * 60 || start >= end
+                        || start % SlotBitmap.CELL_MINUTES != 0 || end % SlotBitmap.CELL_MINUTES != 0) {
+                    throw new IllegalArgumentException("Invalid template range on " + entry.getKey() + ": " + start + "-" + end);
+                }
+                for (int slot = start; slot + SLOT_MINUTES <= end; slot += SLOT_MINUTES) {
+                    int cell = slot / SlotBitmap.CELL_MINUTES;
+                    dayStarts[cell >>> 6] |= 1L << cell;
+                }
+            }
+            this.ranges.put(entry.getKey(), dayRanges.clone());
+            this.starts.put(entry.getKey(), dayStarts);
+        }
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+        this.exceptions = new TreeSet<>(exceptions);
+    }
+
+    /***********************
+     * Getters and Setters *
+     ***********************/
+
+    /**
+     * Gets the ranges of a day of the week
+     * @param day The day of the week
+     * @return Start and end minute of day of each range, in pairs; empty if the day has none
+     */
+    public int[] getRanges(DayOfWeek day) {
+        int[] dayRanges = ranges.get(day);
+        return dayRanges != null ? dayRanges.clone() : new int[0];
+    }
+
+    /**
+     * Gets the first date the template applies to
+     * @return Returns the first date, or null if unbounded
+     */
+    public LocalDate getValidFrom() {
+        return validFrom;
+    }
+
+    /**
+     * Gets the last date the template applies to
+     * @return Returns the last date, or null if unbounded
+     */
+    public LocalDate getValidTo() {
+        return validTo;
+    }
+
+    /**
+     * Checks if the template has no ranges on any day of the week
+     * @return True if the template never gives availability
+     */
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * Gets the dates the template does not apply to
+     * @return Returns an unmodifiable set of the excepted dates
+     */
+    public NavigableSet<LocalDate> getExceptions() {
+        return Collections.unmodifiableNavigableSet(exceptions);
+    }
+
+    /**********
+     * Methods *
+     **********/
+
+    /**
+     * Checks whether the template gives availability on a date.
+     *
+     * @param date The date to check
+     * @return True if the date is in the valid period, not excepted, and its day of the week has slots
+     */
+    public boolean covers(LocalDate date) {
+        if ((validFrom != null && date.isBefore(validFrom)) || (validTo != null && date.isAfter(validTo))) {
+            return false;
+        }
+        return starts.containsKey(date.getDayOfWeek()) && !exceptions.contains(date);
+    }
+
+    /**
+     * Expands the template on a date.
+     *
+     * @param date The date to expand
+     * @return The 30-minute slots of the date, or null if the template does not cover it
+     */
+    public SlotBitmap expand(LocalDate date) {
+        if (!covers(date)) {
+            return null;
+        }
+        return SlotBitmap.of(date, SLOT_MINUTES / SlotBitmap.CELL_MINUTES, starts.get(date.getDayOfWeek()));
+    }
+
+    /**
+     * Serializes the template.
+     *
+     * Format: MON=09:00-12:00,13:00-17:00;TUE=...|validFrom|validTo|date1,date2
+     * with NULL for an empty field.
+     *
+     * @return Serialized template
+     */
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<DayOfWeek, int[]> entry : ranges.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(entry.getKey().name(), 0, 3).append('=');
+            int[] dayRanges = entry.getValue();
+            for (int i = 0; i < dayRanges.length; i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(formatMinute(dayRanges[i])).append('-').append(formatMinute(dayRanges[i + 1]));
+            }
+        }
+        if (sb.length() == 0) {
+            sb.append("NULL");
+        }
+        sb.append('|').append(validFrom != null ? validFrom.format(DATE_FORMATTER) : "NULL");
+        sb.append('|').append(validTo != null ? validTo.format(DATE_FORMATTER) : "NULL");
+        sb.append('|');
+        if (exceptions.isEmpty()) {
+            sb.append("NULL");
+        } else {
+            boolean first = true;
+            for (LocalDate exception : exceptions) {
+                sb.append(first ? "" : ",").append(exception.format(DATE_FORMATTER));
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a template from its serialized fields.
+     *
+     * @param fields The four fields written by serialize
+     * @return WeeklyTemplate object
+     * @throws IllegalArgumentException If the fields are malformed
+     */
+    public static WeeklyTemplate parse(String[] fields) {
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Invalid weekly template: " + String.join("|", fields));
+        }
+
+        Map<DayOfWeek, int[]> ranges = new EnumMap<>(DayOfWeek.class);
+        if (!fields[0].equals("NULL")) {
+            for (String day : fields[0].split(";")) {
+                int equals = day.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid weekly template day: " + day);
+                }
+                String[] dayRanges = day.substring(equals + 1).split(",");
+                int[] minutes = new int[dayRanges.length * 2];
+                for (int i = 0; i < dayRanges.length; i++) {
+                    String[] times = dayRanges[i].split("-");
+                    if (times.length != 2) {
+                        throw new IllegalArgumentException("Invalid time slot format: " + dayRanges[i]);
+                    }
+                    minutes[2 * i] = LocalTime.parse(times[0], TIME_FORMATTER).toSecondOfDay() / 60;
+                    minutes[2 * i + 1] = LocalTime.parse(times[1], TIME_FORMATTER).toSecondOfDay() / 60;
+                }
+                ranges.put(parseDay(day.substring(0, equals)), minutes);
+            }
+        }
+
+        LocalDate validFrom = fields[1].equals("NULL") ? null : LocalDate.parse(fields[1], DATE_FORMATTER);
+        LocalDate validTo = fields[2].equals("NULL") ? null : LocalDate.parse(fields[2], DATE_FORMATTER);
+        NavigableSet<LocalDate> exceptions = new TreeSet<>();
+        if (!fields[3].equals("NULL")) {
+            for (String date : fields[3].split(",")) {
+                exceptions.add(LocalDate.parse(date, DATE_FORMATTER));
+            }
+        }
+        return new WeeklyTemplate(ranges, validFrom, validTo, exceptions);
+    }
+
+    private static DayOfWeek parseDay(String name) {
+        String prefix = name.trim().toUpperCase(Locale.ROOT);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (prefix.length() >= 3 && day.name().startsWith(prefix)) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("Invalid day of week: " + name);
+    }
+
+    private static String formatMinute(int minute) {
+        return LocalTime.ofSecondOfDay(minute * 60L).format(TIME_FORMATTER);
+    }
+
+    /**
+     * Provides a string representation of the WeeklyTemplate.
+     * @return String representation of the template
+     */
+    @Override
+    public String toString() {
+        return "WeeklyTemplate{" + serialize() + '}';
+    }
+}
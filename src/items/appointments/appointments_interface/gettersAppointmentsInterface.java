@@ -1,5 +1,6 @@
 package items.appointments.appointments_interface;
 
+import items.appointments.AppointmentStatus;
 import items.appointments.TimeSlot;
 import java.time.LocalDate;
 
@@ -8,7 +9,7 @@ public interface gettersAppointmentsInterface {
     public String getPatientId();
     public String getDoctorId();
     public TimeSlot getTimeSlot();
-    public String getStatus();
+    public AppointmentStatus getStatus();
     public String getOutcomeRecord();
     public LocalDate getDate();
 }
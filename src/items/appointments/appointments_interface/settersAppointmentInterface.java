@@ -1,10 +1,11 @@
 package items.appointments.appointments_interface;
 
+import items.appointments.AppointmentStatus;
 import items.appointments.TimeSlot;
 
 public interface settersAppointmentInterface {
     public void setDoctorId(String doctorId);
     public void setTimeSlot(TimeSlot timeSlot);
-    public void setStatus(String status);
+    public void setStatus(AppointmentStatus status);
     public void setOutcomeRecord(String outcomeRecord);
 }
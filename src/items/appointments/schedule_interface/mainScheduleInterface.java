@@ -2,6 +2,7 @@ package items.appointments.schedule_interface;
 
 import items.appointments.TimeSlot;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -9,6 +10,8 @@ public interface mainScheduleInterface{
 
     public void setAvailability(LocalDate date, List<TimeSlot> timeSlots);
     public List<TimeSlot> getAvailableTimeSlots(LocalDate date);
+    public List<TimeSlot> getAvailableTimeSlots(LocalDate date, Collection<TimeSlot> occupied);
+    public boolean hasTimeSlot(LocalDate date, TimeSlot slot);
     public Map<LocalDate, List<TimeSlot>> getAvailability();
     public void setAvailabilityMap(Map<LocalDate, List<TimeSlot>> availability); 
     public String toString();
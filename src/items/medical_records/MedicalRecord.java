@@ -1,5 +1,6 @@
 package items.medical_records;
 
+import db.RecordCodec;
 import items.Prescription;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -12,6 +13,10 @@ import java.util.List;
  *
  * The MedicalRecord class stores details about a patient's personal and medical information,
  * including diagnoses, treatments, and contact information.
+ *
+ * Records read from storage keep their diagnoses and treatments encoded until the lists
+ * are first accessed, so patients whose history is never viewed are never parsed and an
+ * unchanged record is written back from the encoded text.
  */
 public class MedicalRecord {
     private String patientID; /**< Unique identifier for the patient */
@@ -22,6 +27,8 @@ public class MedicalRecord {
     private String bloodType; /**< Blood type of the patient */
     private List<Diagnosis> pastDiagnoses; /**< List of past diagnoses */
     private List<Treatment> pastTreatments; /**< List of past treatments */
+    private String encodedDiagnoses; /**< Diagnoses as stored, until first accessed; null once parsed */
+    private String encodedTreatments; /**< Treatments as stored, until first accessed; null once parsed */
 
     /****************
      * Constructors *
@@ -73,6 +80,28 @@ public class MedicalRecord {
         this.pastTreatments = pastTreatments;
     }
 
+    /**
+     * Constructs a MedicalRecord whose diagnoses and treatments are parsed on first access.
+     *
+     * @param patientID          Unique identifier for the patient.
+     * @param name               Full name of the patient.
+     * @param dateOfBirth        Date of birth.
+     * @param gender             Gender of the patient.
+     * @param contactInformation Contact information (phone number, email).
+     * @param bloodType          Blood type of the patient.
+     * @param encodedDiagnoses   Diagnoses in med_records.txt format, or null if there are none.
+     * @param encodedTreatments  Treatments in med_records.txt format, or null if there are none.
+     */
+    public MedicalRecord(String patientID, String name, LocalDate dateOfBirth, String gender,
+                        ContactInformation contactInformation, String bloodType,
+                        String encodedDiagnoses, String encodedTreatments) {
+        this(patientID, name, dateOfBirth, gender, contactInformation, bloodType,
+                encodedDiagnoses == null ? new ArrayList<>() : null,
+                encodedTreatments == null ? new ArrayList<>() : null);
+        this.encodedDiagnoses = encodedDiagnoses;
+        this.encodedTreatments = encodedTreatments;
+    }
+
     /***********************
      * Getters and Setters *
      ***********************/
@@ -174,35 +203,59 @@ public class MedicalRecord {
     }
 
     /**
-     * Gets the list of past diagnoses.
+     * Gets the list of past diagnoses, parsing them on first access.
      * @return List of past diagnoses.
      */
-    public List<Diagnosis> getPastDiagnoses() {
+    public synchronized List<Diagnosis> getPastDiagnoses() {
+        if (encodedDiagnoses != null) {
+            pastDiagnoses = RecordCodec.decodeDiagnoses(encodedDiagnoses);
+            encodedDiagnoses = null;
+        }
         return pastDiagnoses;
     }
 
+    /**
+     * Gets the diagnoses as stored if they have not been parsed yet.
+     * @return The encoded diagnoses, or null once they have been accessed.
+     */
+    public synchronized String getEncodedDiagnoses() {
+        return encodedDiagnoses;
+    }
+
     /**
      * Adds a diagnosis to the patient's medical record.
      * @param diagnosis Diagnosis object to add.
      */
     public void addDiagnosis(Diagnosis diagnosis) {
-        this.pastDiagnoses.add(diagnosis);
+        getPastDiagnoses().add(diagnosis);
     }
 
     /**
-     * Gets the list of past treatments.
+     * Gets the list of past treatments, parsing them on first access.
      * @return List of past treatments.
      */
-    public List<Treatment> getPastTreatments() {
+    public synchronized List<Treatment> getPastTreatments() {
+        if (encodedTreatments != null) {
+            pastTreatments = RecordCodec.decodeTreatments(encodedTreatments);
+            encodedTreatments = null;
+        }
         return pastTreatments;
     }
 
+    /**
+     * Gets the treatments as stored if they have not been parsed yet.
+     * @return The encoded treatments, or null once they have been accessed.
+     */
+    public synchronized String getEncodedTreatments() {
+        return encodedTreatments;
+    }
+
     /**
      * Adds a treatment to the medical record.
      * @param treatment The Treatment object to add.
      */
-    public void addTreatment(Treatment treatment) {
-        if (this.pastTreatments == null) {
+    public synchronized void addTreatment(Treatment treatment) {
+        if (getPastTreatments() == null) {
             this.pastTreatments = new ArrayList<>();
         }
         this.pastTreatments.add(treatment);
@@ -217,12 +270,13 @@ public class MedicalRecord {
      * @param prescription Prescription object to add.
      */
     public void addPrescription(Prescription prescription) {
-        if (this.pastTreatments.isEmpty()) {
+        List<Treatment> treatments = getPastTreatments();
+        if (treatments.isEmpty()) {
             Treatment treatment = new Treatment();
             treatment.addPrescription(prescription);
-            this.pastTreatments.add(treatment);
+            treatments.add(treatment);
         } else {
-            this.pastTreatments.get(this.pastTreatments.size() - 1).addPrescription(prescription);
+            treatments.get(treatments.size() - 1).addPrescription(prescription);
         }
     }
     
@@ -237,6 +291,8 @@ public class MedicalRecord {
      */
     public void display() {
         DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        List<Diagnosis> pastDiagnoses = getPastDiagnoses();
+        List<Treatment> pastTreatments = getPastTreatments();
         System.out.println("--------------------------------------------------");
         System.out.println("               Medical Record");
         System.out.println("--------------------------------------------------");
@@ -284,8 +340,8 @@ public class MedicalRecord {
                 ", gender='" + gender + '\'' +
                 ", contactInformation=" + contactInformation +
                 ", bloodType='" + bloodType + '\'' +
-                ", pastDiagnoses=" + pastDiagnoses +
-                ", pastTreatments=" + pastTreatments +
+                ", pastDiagnoses=" + getPastDiagnoses() +
+                ", pastTreatments=" + getPastTreatments() +
                 '}';
     }
 
@@ -1,5 +1,6 @@
 package items.medical_records;
 
+import db.RecordCodec;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -170,29 +171,7 @@ public class Treatment {
      * @return Serialized string representation of the Treatment
      */
     public String serialize() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(serviceType != null ? serviceType : "NULL").append(";"); // Append service type
-        sb.append(dateOfAppointment != null ? dateOfAppointment.format(DateTimeFormatter.ISO_LOCAL_DATE) : "NULL").append(";"); // Append date of appointment
-        
-        // Serialize Prescribed Medications
-        if (allPrescribedMedicine != null && !allPrescribedMedicine.isEmpty()) {
-            String meds = String.join(",",
-                    allPrescribedMedicine.stream()
-                            .map(p -> p.getMedicationName() + ":" + p.getStatus())
-                            .toArray(String[]::new));
-            sb.append(meds); // Append serialized medications
-        } else {
-            sb.append("NULL"); // Indicate no medications prescribed
-        }
-        sb.append(";");
-
-        // Serialize Treatment Comments (escape semicolons)
-        sb.append(treatmentComments != null ? treatmentComments.replace(";", "\\;") : "NULL").append(";");
-
-        // Serialize Doctor ID
-        sb.append(doctorId != null ? doctorId : "NULL"); // Append doctor's ID
-
-        return sb.toString(); // Return the serialized string
+        return RecordCodec.encodeTreatment(this);
     }
 
     /**
@@ -205,36 +184,7 @@ public class Treatment {
      * @return Treatment object
      */
     public static Treatment deserialize(String data) {
-        String[] parts = data.split(";", -1); // -1 to include trailing empty strings
-        if (parts.length != 5) {
-            throw new IllegalArgumentException("Invalid Treatment data: " + data); // Validate the expected format
-        }
-
-        String serviceType = parts[0].equals("NULL") ? null : parts[0]; // Parse service type
-        LocalDate dateOfAppointment = parts[1].equals("NULL") ? null : LocalDate.parse(parts[1], DateTimeFormatter.ISO_LOCAL_DATE); // Parse date of appointment
-        String medsPart = parts[2]; // Store medications part
-        String treatmentComments = parts[3].equals("NULL") ? "" : parts[3].replace("\\;", ";"); // Parse treatment comments
-        String doctorId = parts[4].equals("NULL") ? null : parts[4]; // Parse doctor's ID
-
-        // Create a new Treatment object and set its fields
-        Treatment treatment = new Treatment();
-        treatment.setServiceType(serviceType);
-        treatment.setDateOfAppointment(dateOfAppointment);
-        treatment.setTreatmentComments(treatmentComments);
-        treatment.setDoctorId(doctorId);
-
-        // Deserialize prescribed medications if present
-        if (!medsPart.equals("NULL") && !medsPart.trim().isEmpty()) {
-            String[] meds = medsPart.split(","); // Split medications
-            for (String med : meds) {
-                String[] medParts = med.split(":"); // Split medication name and status
-                if (medParts.length == 2) {
-                    treatment.addPrescription(new Prescription(medParts[0], medParts[1])); // Add each prescription
-                }
-            }
-        }
-
-        return treatment; // Return the deserialized Treatment object
+        return RecordCodec.decodeTreatment(data);
     }
 
     /**
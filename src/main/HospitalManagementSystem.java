@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.List;
 import java.util.Scanner;
 import menus.*;
 import user_classes.*;
@@ -63,7 +62,7 @@ public final class HospitalManagementSystem {
                 case 5:
                     // Save Changes
                     try {
-                        TextDB.saveToFile("users.txt");
+                        textDB.flush();
                         System.out.println("Changes saved successfully!");
                     } catch (IOException e) {
                         System.out.println("Error saving user file: " + e.getMessage());
@@ -151,7 +150,7 @@ public final class HospitalManagementSystem {
         System.out.print("Enter Password: ");
         String inputPass = scanner.nextLine();
 
-        User user = getUserByRoleAndID(textDB.getUsers(), role, inputHospitalID);
+        User user = textDB.getUserByRoleAndHospitalID(role, inputHospitalID);
         
         if (user != null) {
             String hashedInputPassword = hashPassword(inputHospitalID, inputPass);
@@ -182,24 +181,6 @@ public final class HospitalManagementSystem {
         */
     }
 
-    /**
-     * Retrieves a user by role and hospital ID.
-     * 
-     * @param userList    List of all users in the system.
-     * @param role        Role of the user to find.
-     * @param hospitalID  Hospital ID of the user to find.
-     * @return            User object if a match is found, null otherwise.
-     */
-    private static User getUserByRoleAndID(List<User> userList, String role, String hospitalID) {
-        for (User user : userList) {
-            if (user.getClass().getSimpleName().equalsIgnoreCase(role) &&
-                user.getHospitalID().equalsIgnoreCase(hospitalID)) {
-                return user; // Return the matching user
-            }
-        }
-        return null; // No matching user found
-    }
-
     /**
      * Navigates to the appropriate menu based on the user's role.
      * 
@@ -596,8 +596,7 @@ public final class AdministratorMenu {
         }
 
         // Remove the processed request
-        requests.remove(choice);
-        textDB.saveReplenishmentRequests("replenishment_requests.txt");
+        textDB.removeReplenishmentRequest(selectedRequest);
     }
 
     
@@ -3,13 +3,17 @@ package menus;
 import db.TextDB;
 import items.*;
 import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
 import items.appointments.Schedule;
 import items.appointments.TimeSlot;
+import items.appointments.WeeklyTemplate;
 import items.medical_records.MedicalRecord;
 import items.medical_records.Treatment;
 import java.io.IOException;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -55,6 +59,7 @@ public final class DoctorMenu {
             System.out.println("5. Accept or Decline Appointment Requests");
             System.out.println("6. View Upcoming Appointments");
             System.out.println("7. Record Appointment Outcome");
+            System.out.println("8. Set Weekly Availability Template");
             System.out.println("0. Logout");
             System.out.print("Enter your choice: ");
 
@@ -82,6 +87,9 @@ public final class DoctorMenu {
                 case 7:
                     recordAppointmentOutcome(scanner, doctor);
                     break;
+                case 8:
+                    setWeeklyTemplate(scanner, doctor);
+                    break;
                 case 0:
                     back = true;
                     System.out.println("Logging out...");
@@ -189,8 +197,7 @@ public final class DoctorMenu {
         treatment.setDoctorId(doctor.getHospitalID());
 
         // Add the new Treatment to the Medical Record
-        record.addTreatment(treatment);
-        textDB.updateMedicalRecord(record);
+        textDB.addTreatment(record, treatment);
 
         System.out.println("Medical record updated successfully.");
     }
@@ -211,10 +218,141 @@ public final class DoctorMenu {
                                    " - " + slot.getEndTime().toLocalTime().format(TIME_FORMATTER));
             }
         }
+        WeeklyTemplate template = schedule.getWeeklyTemplate();
+        if (template != null) {
+            System.out.println("Weekly availability:");
+            printWeeklyTemplate(template);
+        }
         System.out.println();
         viewUpcomingAppointments(doctor);
     }
 
+    /**
+     * Defines or edits the doctor's recurring weekly availability. Each prompt shows the
+     * current value, which is kept when the input is left blank.
+     *
+     * @param scanner Scanner object for user input
+     * @param doctor  The currently logged-in doctor
+     * @throws IOException If an I/O error occurs during data saving
+     */
+    private void setWeeklyTemplate(Scanner scanner, Doctor doctor) throws IOException {
+        WeeklyTemplate current = doctor.getSchedule().getWeeklyTemplate();
+        if (current != null) {
+            System.out.println("Current weekly availability:");
+            printWeeklyTemplate(current);
+            System.out.print("Enter 'clear' to remove the weekly template, or press Enter to edit it: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("clear")) {
+                doctor.setWeeklyTemplate(null);
+                System.out.println("Weekly template removed.");
+                return;
+            }
+        } else {
+            System.out.println("No weekly template set.");
+        }
+
+        List<String> days = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String ranges = current != null ? formatRanges(current.getRanges(day)) : "";
+            System.out.print("Enter time ranges for " + day + " (HH:mm-HH:mm, separated by commas, '-' for none) ["
+                    + (ranges.isEmpty() ? "none" : ranges) + "]: ");
+            String input = readOrKeep(scanner, ranges);
+            if (!input.isEmpty()) {
+                days.add(day.name().substring(0, 3) + "=" + input);
+            }
+        }
+
+        String from = current != null && current.getValidFrom() != null ? current.getValidFrom().format(DATE_FORMATTER) : "";
+        System.out.print("Enter the first date the template applies to (yyyy-MM-dd, '-' for no limit) [" + (from.isEmpty() ? "no limit" : from) + "]: ");
+        from = readOrKeep(scanner, from);
+
+        String to = current != null && current.getValidTo() != null ? current.getValidTo().format(DATE_FORMATTER) : "";
+        System.out.print("Enter the last date the template applies to (yyyy-MM-dd, '-' for no limit) [" + (to.isEmpty() ? "no limit" : to) + "]: ");
+        to = readOrKeep(scanner, to);
+
+        String exceptions = current != null ? current.getExceptions().stream().map(date -> date.format(DATE_FORMATTER)).collect(Collectors.joining(",")) : "";
+        System.out.print("Enter dates the template does not apply to (yyyy-MM-dd, separated by commas, '-' for none) [" + (exceptions.isEmpty() ? "none" : exceptions) + "]: ");
+        exceptions = readOrKeep(scanner, exceptions);
+
+        WeeklyTemplate template;
+        try {
+            template = WeeklyTemplate.parse(new String[] {
+                    days.isEmpty() ? "NULL" : String.join(";", days),
+                    from.isEmpty() ? "NULL" : from,
+                    to.isEmpty() ? "NULL" : to,
+                    exceptions.isEmpty() ? "NULL" : exceptions.replace(" ", "")
+            });
+        } catch (RuntimeException e) {
+            System.out.println("Invalid weekly template: " + e.getMessage());
+            return;
+        }
+        if (template.getValidFrom() != null && template.getValidTo() != null && template.getValidTo().isBefore(template.getValidFrom())) {
+            System.out.println("The last date must not be before the first date.");
+            return;
+        }
+
+        if (template.isEmpty()) {
+            doctor.setWeeklyTemplate(null);
+            System.out.println("No time ranges entered. Weekly template removed.");
+        } else {
+            doctor.setWeeklyTemplate(template);
+            System.out.println("Weekly template updated successfully.");
+        }
+    }
+
+    /**
+     * Prints the ranges, period and exceptions of a weekly template.
+     *
+     * @param template The weekly template
+     */
+    private void printWeeklyTemplate(WeeklyTemplate template) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String ranges = formatRanges(template.getRanges(day));
+            if (!ranges.isEmpty()) {
+                System.out.println("  " + day + ": " + ranges);
+            }
+        }
+        System.out.println("  From: " + (template.getValidFrom() != null ? template.getValidFrom().format(DATE_FORMATTER) : "no limit")
+                + ", to: " + (template.getValidTo() != null ? template.getValidTo().format(DATE_FORMATTER) : "no limit"));
+        if (!template.getExceptions().isEmpty()) {
+            System.out.println("  Except: " + template.getExceptions().stream()
+                    .map(date -> date.format(DATE_FORMATTER)).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * Formats the ranges of one day of a weekly template.
+     *
+     * @param ranges Start and end minute of day of each range, in pairs
+     * @return The ranges as HH:mm-HH:mm separated by commas, or an empty string if there are none
+     */
+    private static String formatRanges(int[] ranges) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(LocalTime.ofSecondOfDay(ranges[i] * 60L).format(TIME_FORMATTER))
+              .append('-')
+              .append(LocalTime.ofSecondOfDay(ranges[i + 1] * 60L).format(TIME_FORMATTER));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a line, keeping the current value when it is blank and clearing it on '-'.
+     *
+     * @param scanner Scanner object for user input
+     * @param current The current value
+     * @return The entered value, the current value, or an empty string
+     */
+    private static String readOrKeep(Scanner scanner, String current) {
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return current;
+        }
+        return input.equals("-") ? "" : input;
+    }
+
     /**
      * Sets the doctor's availability for appointments.
      *
@@ -257,8 +395,7 @@ public final class DoctorMenu {
 
                 TimeSlot slot = new TimeSlot(
                         startTime,
-                        endTime,
-                        true
+                        endTime
                 );
                 availableSlots.add(slot);
             } catch (Exception e) {
@@ -267,9 +404,8 @@ public final class DoctorMenu {
         }
 
         if (!availableSlots.isEmpty()) {
-            // Update the Doctor's schedule in TextDB to ensure persistence
+            // Doctor.setAvailability persists the new date through TextDB
             doctor.setAvailability(date, availableSlots);
-            textDB.updateDoctorSchedule(doctor.getHospitalID(), doctor.getSchedule());
             System.out.println("Availability updated successfully.");
         } else {
             System.out.println("No availability slots added.");
@@ -323,12 +459,12 @@ public final class DoctorMenu {
         switch (decision) {
             case "y":
             case "yes":
-                textDB.updateAppointmentStatus(selectedAppointment.getId(), "Confirmed");
+                textDB.updateAppointmentStatus(selectedAppointment.getId(), AppointmentStatus.CONFIRMED);
                 System.out.println("Appointment ID " + selectedAppointment.getId() + " has been accepted and scheduled.");
                 break;
             case "n":
             case "no":
-                textDB.updateAppointmentStatus(selectedAppointment.getId(), "Cancelled");
+                textDB.updateAppointmentStatus(selectedAppointment.getId(), AppointmentStatus.CANCELLED);
                 System.out.println("Appointment ID " + selectedAppointment.getId() + " has been declined.");
                 break;
             default:
@@ -342,19 +478,14 @@ public final class DoctorMenu {
      * @param doctor The currently logged-in doctor
      */
     private void viewUpcomingAppointments(Doctor doctor) {
-        // Fetch all appointments
-        List<Appointment> allAppointments = textDB.getAppointments();
+        // Fetch the doctor's confirmed appointments
+        List<Appointment> confirmedAppointments = textDB.getAppointmentsByDoctorIdAndStatus(doctor.getHospitalID(), AppointmentStatus.CONFIRMED);
 
         // Current date and time for comparison
         LocalDateTime now = LocalDateTime.now();
 
-        // Filter appointments based on:
-        // 1. Assigned to the current doctor
-        // 2. Status is "Confirmed"
-        // 3. Start time is after the current time
-        List<Appointment> upcomingAppointments = allAppointments.stream()
-                .filter(appt -> appt.getDoctorId().equals(doctor.getHospitalID()))
-                .filter(appt -> appt.getStatus().equalsIgnoreCase("Confirmed"))
+        // Keep appointments whose start time is after the current time
+        List<Appointment> upcomingAppointments = confirmedAppointments.stream()
                 .filter(appt -> appt.getTimeSlot().getStartTime().isAfter(now))
                 .sorted((a1, a2) -> a1.getTimeSlot().getStartTime().compareTo(a2.getTimeSlot().getStartTime()))
                 .collect(Collectors.toList());
@@ -387,9 +518,7 @@ public final class DoctorMenu {
     public void recordAppointmentOutcome(Scanner scanner, Doctor doctor) throws IOException {
         LocalDateTime now = LocalDateTime.now();
         // Step 1: Fetch eligible appointments
-        List<Appointment> eligibleAppointments = textDB.getAppointments().stream()
-            .filter(appt -> appt.getDoctorId().equals(doctor.getHospitalID()))
-            .filter(appt -> appt.getStatus().equalsIgnoreCase("Confirmed"))
+        List<Appointment> eligibleAppointments = textDB.getAppointmentsByDoctorIdAndStatus(doctor.getHospitalID(), AppointmentStatus.CONFIRMED).stream()
             .filter(appt -> appt.getTimeSlot().getStartTime().isBefore(now))
             .sorted((a1, a2) -> a1.getTimeSlot().getStartTime().compareTo(a2.getTimeSlot().getStartTime()))
             .collect(Collectors.toList());
@@ -477,11 +606,10 @@ public final class DoctorMenu {
             return;
         }
         treatment.setDoctorId(doctor.getHospitalID());
-        record.addTreatment(treatment);
-        textDB.updateMedicalRecord(record);
+        textDB.addTreatment(record, treatment);
 
         // Step 7: Update Appointment status to "Completed" and set outcomeRecord
-        selectedAppt.setStatus("Completed");
+        selectedAppt.setStatus(AppointmentStatus.COMPLETED);
         selectedAppt.setOutcomeRecord(treatment.serialize());
         textDB.updateAppointment(selectedAppt);
 
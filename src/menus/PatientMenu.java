@@ -1,7 +1,10 @@
 package menus;
 import HospitalNotificationSystem.NotifyDoctor;
+import db.SlotSearch;
 import db.TextDB;
+import db.Waitlist;
 import items.appointments.Appointment;
+import items.appointments.AppointmentStatus;
 import items.appointments.TimeSlot;
 import items.medical_records.MedicalRecord;
 import items.medical_records.Treatment;
@@ -13,7 +16,6 @@ import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.List;
 import java.util.Scanner;
-import java.util.stream.Collectors;
 import user_classes.Doctor;
 import user_classes.Patient;
 
@@ -25,6 +27,7 @@ public final class PatientMenu {
     private TextDB textDB;
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int EARLIEST_SLOT_LIMIT = 10;
 
     /**
      * Constructor to initialize PatientMenu with a TextDB instance.
@@ -52,6 +55,8 @@ public final class PatientMenu {
             System.out.println("7. View Appointment Status");
             System.out.println("8. View Appointment Outcome Records");
             System.out.println("9. Change Password");
+            System.out.println("10. Join Appointment Waitlist");
+            System.out.println("11. Book Earliest Available Slot");
             System.out.println("0. Log out");
             System.out.print("Enter your choice: ");
             int choice = getIntInput(scanner);
@@ -84,6 +89,12 @@ public final class PatientMenu {
                 case 9:
                     changePassword(scanner, patient);
                     break;
+                case 10:
+                    joinWaitlist(scanner, patient);
+                    break;
+                case 11:
+                    bookEarliestSlot(scanner, patient);
+                    break;
                 case 0:
                     return;
                 default:
@@ -162,9 +173,7 @@ public final class PatientMenu {
      * @param patient The patient whose appointments are being viewed.
      */
     private void viewAppointmentStatus(Patient patient) {
-        List<Appointment> appointments = textDB.getAppointments().stream()
-            .filter(appt -> appt.getPatientId().equals(patient.getHospitalID()))
-            .collect(Collectors.toList());
+        List<Appointment> appointments = textDB.getAppointmentsByPatientId(patient.getHospitalID());
 
         if (appointments.isEmpty()) {
             System.out.println("You have no appointments.");
@@ -336,6 +345,103 @@ public final class PatientMenu {
         }
     }
 
+    /**
+     * Lists the earliest free slots across all doctors up to a chosen date and books the selected one.
+     * @param scanner Scanner object for user input.
+     * @param patient The patient booking the appointment.
+     */
+    private void bookEarliestSlot(Scanner scanner, Patient patient) {
+        LocalDate to;
+        try {
+            System.out.print("Enter the last date (yyyy-MM-dd) you can attend: ");
+            to = LocalDate.parse(scanner.nextLine(), DATE_FORMATTER);
+        } catch (Exception e) {
+            System.out.println("Invalid date format. Please try again.");
+            return;
+        }
+
+        List<SlotSearch.Match> matches = textDB.findEarliestAvailableSlots(LocalDate.now(), to, EARLIEST_SLOT_LIMIT);
+        if (matches.isEmpty()) {
+            System.out.println("No available slots until " + to + ". Please choose a later date.");
+            return;
+        }
+
+        System.out.println("\nEarliest Available Appointment Slots:");
+        for (int i = 0; i < matches.size(); i++) {
+            System.out.println((i + 1) + ". " + matches.get(i).getTimeSlot() + " with Dr. " + matches.get(i).getDoctor().getName());
+        }
+
+        System.out.print("Enter the number corresponding to the time slot you want to book: ");
+        int slotIndex = getIntInput(scanner) - 1;
+
+        if (slotIndex < 0 || slotIndex >= matches.size()) {
+            System.out.println("Invalid selection. Please try again.");
+            return;
+        }
+
+        SlotSearch.Match selected = matches.get(slotIndex);
+        TimeSlot selectedSlot = selected.getTimeSlot();
+        System.out.println("You have selected " + selectedSlot + " with Dr. " + selected.getDoctor().getName());
+
+        boolean success = textDB.addAppointment(patient, selected.getDoctor(), selectedSlot.getDate(), selectedSlot);
+
+        if (!success) {
+            System.out.println("Failed to submit appointment request. Please try again.");
+        } else {
+            NotifyDoctor.getInstance().notifyDoctorUser("New Appointment request from " + patient + " on " + selectedSlot.getDate().format(DATE_FORMATTER));
+        }
+    }
+
+    /**
+     * Adds the patient to a doctor's waitlist for a range of dates. A slot of the doctor
+     * freed within the range is then requested for the patient automatically.
+     * @param scanner Scanner object for user input.
+     * @param patient The patient joining the waitlist.
+     */
+    private void joinWaitlist(Scanner scanner, Patient patient) {
+        List<Doctor> doctors = textDB.getAllDoctors();
+        if (doctors.isEmpty()) {
+            System.out.println("No doctors are currently available.");
+            return;
+        }
+
+        System.out.println("\nAvailable Doctors:");
+        for (int i = 0; i < doctors.size(); i++) {
+            System.out.println((i + 1) + ". Dr. " + doctors.get(i).getName() + " (ID: " + doctors.get(i).getHospitalID() + ")");
+        }
+
+        System.out.print("Enter the number corresponding to the doctor whose waitlist you want to join: ");
+        int doctorIndex = getIntInput(scanner) - 1;
+
+        if (doctorIndex < 0 || doctorIndex >= doctors.size()) {
+            System.out.println("Invalid selection. Please try again.");
+            return;
+        }
+        Doctor selectedDoctor = doctors.get(doctorIndex);
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            System.out.print("Enter the first date (yyyy-MM-dd) you can attend: ");
+            from = LocalDate.parse(scanner.nextLine(), DATE_FORMATTER);
+            System.out.print("Enter the last date (yyyy-MM-dd) you can attend: ");
+            to = LocalDate.parse(scanner.nextLine(), DATE_FORMATTER);
+        } catch (Exception e) {
+            System.out.println("Invalid date format. Please try again.");
+            return;
+        }
+
+        try {
+            textDB.joinWaitlist(patient, selectedDoctor, from, to);
+            System.out.println("You have joined the waitlist of Dr. " + selectedDoctor.getName() + " from " + from + " to " + to + ".");
+            System.out.println("A slot freed in that period will be requested for you automatically.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid date range. The range may cover at most " + Waitlist.MAX_RANGE_DAYS + " days.");
+        } catch (IOException e) {
+            System.out.println("Failed to join the waitlist. Please try again.");
+        }
+    }
+
     /**
      * Reschedules an existing appointment for a patient.
      * 
@@ -348,9 +454,7 @@ public final class PatientMenu {
      */
     private void rescheduleAppointment(Scanner scanner, Patient patient) {
         // Step 1: Retrieve and display the patient's appointments
-        List<Appointment> patientAppointments = textDB.getAppointments().stream()
-            .filter(appt -> appt.getPatientId().equals(patient.getHospitalID()))
-            .collect(Collectors.toList());
+        List<Appointment> patientAppointments = textDB.getAppointmentsByPatientId(patient.getHospitalID());
     
         if (patientAppointments.isEmpty()) {
             System.out.println("You have no appointments to reschedule.");
@@ -382,6 +486,10 @@ public final class PatientMenu {
             System.out.println("No such appointment found. Please check the Appointment ID and try again.");
             return;
         }
+        if (!appointmentToReschedule.getStatus().canTransitionTo(AppointmentStatus.RESCHEDULED)) {
+            System.out.println("A " + appointmentToReschedule.getStatus() + " appointment cannot be rescheduled.");
+            return;
+        }
     
         // Step 4: Choose a new date
         System.out.print("Enter the new date for the appointment (yyyy-MM-dd): ");
@@ -478,16 +586,14 @@ public final class PatientMenu {
     
         // Step 9: Proceed with rescheduling
         try {
-            // Create a new TimeSlot object (assuming TimeSlot is mutable)
-            TimeSlot newTimeSlot = new TimeSlot(selectedSlot.getStartTime(), selectedSlot.getEndTime(), false);
-    
-            // Update the appointment details
-            appointmentToReschedule.setDoctorId(selectedDoctor.getHospitalID());
-            appointmentToReschedule.setTimeSlot(newTimeSlot);
-            appointmentToReschedule.setStatus("Rescheduled");
+            // Create a new TimeSlot object
+            TimeSlot newTimeSlot = new TimeSlot(selectedSlot.getStartTime(), selectedSlot.getEndTime());
     
-            // Update the appointment in TextDB
-            textDB.updateAppointment(appointmentToReschedule);
+            // Move the appointment in TextDB, which checks the slot is still free while claiming it
+            if (!textDB.rescheduleAppointment(appointmentToReschedule.getId(), selectedDoctor, newTimeSlot)) {
+                System.out.println("The selected time slot is no longer available. Please try again.");
+                return;
+            }
     
             System.out.println("Appointment rescheduled successfully to " + newDate + " at " + newTimeSlot + ".");
             NotifyDoctor.getInstance().notifyDoctorUser("Appointment rescheduled from " + patient + " on " + newDate + "at" + newTimeSlot);
@@ -509,9 +615,7 @@ public final class PatientMenu {
      */
     private void cancelAppointment(Scanner scanner, Patient patient) {
         // Step 1: Retrieve and display the patient's appointments
-        List<Appointment> patientAppointments = textDB.getAppointments().stream()
-            .filter(appt -> appt.getPatientId().equals(patient.getHospitalID()))
-            .collect(Collectors.toList());
+        List<Appointment> patientAppointments = textDB.getAppointmentsByPatientId(patient.getHospitalID());
     
         if (patientAppointments.isEmpty()) {
             System.out.println("You have no appointments to cancel.");
@@ -170,8 +170,7 @@ public final class PharmacistMenu {
             return;
         }
 
-        selectedPrescription.setStatus(newStatus);
-        textDB.updateMedicalRecord(record);
+        textDB.updatePrescriptionStatus(record, treatmentChoice, prescriptionChoice, newStatus);
         System.out.println("Prescription status updated successfully.");
     }
 
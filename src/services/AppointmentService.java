@@ -37,8 +37,8 @@ public class AppointmentService {
      * that only past appointments (before the current date) are returned.
      */
     public static List<Appointment> getPastAppointments(Patient patient) {
-        return textDB.getAppointments().stream()
-                .filter(appointment -> appointment.getPatientId().equals(patient.getHospitalID()) && appointment.isPast())
+        return textDB.getAppointmentsByPatientId(patient.getHospitalID()).stream()
+                .filter(Appointment::isPast)
                 .collect(Collectors.toList());
     }
 
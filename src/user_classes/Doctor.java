@@ -1,13 +1,16 @@
 package user_classes;
 
+import db.MedicalRecordIndex;
 import db.TextDB;
 import items.appointments.Schedule;
 import items.appointments.TimeSlot;
+import items.appointments.WeeklyTemplate;
 import items.medical_records.MedicalRecord;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Doctor
@@ -18,7 +21,8 @@ import java.util.List;
  */
 public class Doctor extends User {
     private List<String> patientIds; ///< List of patient hospital IDs assigned to the doctor
-    private Schedule schedule;       ///< Doctor's schedule for managing availability
+    private Schedule schedule;       ///< Doctor's schedule for managing availability, or null until it is loaded
+    private Supplier<Schedule> scheduleLoader; ///< Builds the schedule on first access, or null if it is already set
 
     /**
      * Constructs a Doctor object with the specified attributes.
@@ -86,10 +90,14 @@ public class Doctor extends User {
     }
 
     /**
-     * Gets the doctor's schedule.
+     * Gets the doctor's schedule, loading it first if it has not been loaded yet.
      * @return Schedule object representing the doctor's availability
      */
-    public Schedule getSchedule() {
+    public synchronized Schedule getSchedule() {
+        if (scheduleLoader != null) {
+            schedule = scheduleLoader.get();
+            scheduleLoader = null;
+        }
         return schedule;
     }
 
@@ -97,8 +105,18 @@ public class Doctor extends User {
      * Sets the doctor's schedule.
      * @param schedule Schedule object to set
      */
-    public void setSchedule(Schedule schedule) {
+    public synchronized void setSchedule(Schedule schedule) {
         this.schedule = schedule;
+        this.scheduleLoader = null;
+    }
+
+    /**
+     * Defers loading the doctor's schedule until it is first accessed.
+     * @param scheduleLoader Builds the schedule; called at most once
+     */
+    public synchronized void setScheduleLoader(Supplier<Schedule> scheduleLoader) {
+        this.schedule = null;
+        this.scheduleLoader = scheduleLoader;
     }
 
     /**
@@ -114,6 +132,17 @@ public class Doctor extends User {
         return TextDB.getInstance().getMedicalRecordByPatientId(patientId);
     }
 
+    /**
+     * Searches the medical records of the doctor's patients, meaning patients with an
+     * appointment with the doctor, for a diagnosis, treatment or medication.
+     *
+     * @param query Words that must all occur in the same diagnosis or treatment; a word ending in '*' is a prefix
+     * @return The matching diagnoses and treatments, by patient and position in the medical record
+     */
+    public List<MedicalRecordIndex.Reference> searchPatientMedicalRecords(String query) {
+        return TextDB.getInstance().searchMedicalRecordsOfDoctor(getHospitalID(), query);
+    }
+
     /**
      * Updates the MedicalRecord of a specific patient.
      *
@@ -136,9 +165,19 @@ public class Doctor extends User {
      * @throws IOException If an I/O error occurs during the update
      */
     public void setAvailability(LocalDate date, List<TimeSlot> availability) throws IOException {
-        schedule.setAvailability(date, availability);
+        getSchedule().setAvailability(date, availability);
         // Update the schedule in TextDB
-        TextDB.getInstance().updateDoctorSchedule(this.hospitalID, this.schedule);
+        TextDB.getInstance().updateDoctorAvailability(this.hospitalID, date);
+    }
+
+    /**
+     * Sets the doctor's recurring weekly availability.
+     *
+     * @param template The weekly template, or null to remove it
+     * @throws IOException If an I/O error occurs while saving the schedule
+     */
+    public void setWeeklyTemplate(WeeklyTemplate template) throws IOException {
+        TextDB.getInstance().updateDoctorWeeklyTemplate(this.hospitalID, template);
     }
 
     /**
@@ -148,7 +187,7 @@ public class Doctor extends User {
      * @return List of available TimeSlot objects
      */
     public List<TimeSlot> getAvailableTimeSlots(LocalDate date) {
-        return schedule.getAvailableTimeSlots(date);
+        return getSchedule().getAvailableTimeSlots(date);
     }
 
     /**
@@ -163,7 +202,7 @@ public class Doctor extends User {
                 ", dateOfBirth=" + dateOfBirth +
                 ", gender='" + gender + '\'' +
                 ", patientIds=" + patientIds +
-                ", schedule=" + schedule;
+                ", schedule=" + getSchedule();
     }
 
     /**
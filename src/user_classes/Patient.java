@@ -14,14 +14,13 @@ import java.time.LocalDate;
  * record and requesting appointments.
  */
 public class Patient extends User {
-    private MedicalRecord medicalRecord; ///< The medical record associated with the patient
 
     /**
      * Constructs a Patient object with the specified attributes.
      * 
      * Upon creation, this constructor checks if a medical record exists
-     * for the patient in the database. If it exists, the record is loaded;
-     * otherwise, a new record is created and saved.
+     * for the patient in the database. If it does not, a new record is
+     * created and saved. The record itself is only loaded when requested.
      *
      * @param hospitalID  Unique identifier for the patient within the hospital
      * @param password    Password for authentication
@@ -33,18 +32,13 @@ public class Patient extends User {
         super(hospitalID, password, name, dateOfBirth, gender);
         this.role = "Patient";
         
-        // Load existing medical record from the TextDB if it exists
         TextDB textDB = TextDB.getInstance();
-        MedicalRecord existingRecord = textDB.getMedicalRecordByPatientId(hospitalID);
-
-        if (existingRecord != null) {
-            this.medicalRecord = existingRecord;
-        } else {
+        if (!textDB.hasMedicalRecord(hospitalID)) {
             // If no record exists, create a new medical record without contact information
-            this.medicalRecord = new MedicalRecord(hospitalID, name, dateOfBirth, gender, new ContactInformation("", ""));
+            MedicalRecord medicalRecord = new MedicalRecord(hospitalID, name, dateOfBirth, gender, new ContactInformation("", ""));
             try {
                 // Save the new record to the database
-                textDB.addMedicalRecord(this.medicalRecord);
+                textDB.addMedicalRecord(medicalRecord);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -106,10 +100,10 @@ public class Patient extends User {
     }
 
     /**
-     * Retrieves the patient's medical record.
+     * Retrieves the patient's medical record from the TextDB.
      * @return The MedicalRecord object associated with the patient
      */
     public MedicalRecord getMedicalRecord() {
-        return medicalRecord;
+        return TextDB.getInstance().getMedicalRecordByPatientId(getHospitalID());
     }
 }